@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the conversions {@link RedisUtils} runs on every operation. Run with:
+ *
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec
+ * </pre>
+ *
+ * The gc profiler, enabled by default, reports the allocation rate next to the throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisUtilsBenchmark
+{
+    public static enum PayloadShape
+    {
+        SHORT_STRING, UTF8_TEXT, BYTE_ARRAY, POJO_1KB, POJO_1MB;
+    }
+
+    public static class OrderLine implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final String sku;
+        private final int quantity;
+        private final double price;
+
+        public OrderLine(final String sku, final int quantity, final double price)
+        {
+            this.sku = sku;
+            this.quantity = quantity;
+            this.price = price;
+        }
+    }
+
+    public static class Order implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final long id;
+        private final String customer;
+        private final List<OrderLine> lines = new ArrayList<OrderLine>();
+
+        public Order(final long id, final String customer)
+        {
+            this.id = id;
+            this.customer = customer;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Payload
+    {
+        @Param
+        public PayloadShape shape;
+
+        public Serializable value;
+        public byte[] serialized;
+        public RedisTaggedSerializer taggedSerializer = new RedisTaggedSerializer();
+        public byte[] taggedSerialized;
+
+        @Setup(Level.Trial)
+        public void setup()
+        {
+            final Random random = new Random(42L);
+
+            switch (shape)
+            {
+                case SHORT_STRING :
+                    value = "session:4f1c2a";
+                    break;
+                case UTF8_TEXT :
+                    value = newUtf8Text(1024);
+                    break;
+                case BYTE_ARRAY :
+                    final byte[] bytes = new byte[1024];
+                    random.nextBytes(bytes);
+                    value = bytes;
+                    break;
+                case POJO_1KB :
+                    value = newOrder(1024, random);
+                    break;
+                case POJO_1MB :
+                    value = newOrder(1024 * 1024, random);
+                    break;
+            }
+
+            serialized = RedisUtils.toBytes(value);
+            taggedSerialized = taggedSerializer.serialize(value);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Keys
+    {
+        @Param({"orders", "commandes-\u00e9t\u00e9-\u6771\u4eac"})
+        public String name;
+
+        public List<String> channels;
+
+        @Setup(Level.Trial)
+        public void setup()
+        {
+            channels = Arrays.asList("news." + name, "news.art.*", "events." + name + ".*");
+        }
+    }
+
+    @Benchmark
+    public byte[] toBytes(final Payload payload)
+    {
+        return RedisUtils.toBytes(payload.value);
+    }
+
+    @Benchmark
+    public Serializable fromBytes(final Payload payload)
+    {
+        return RedisUtils.fromBytes(payload.serialized);
+    }
+
+    @Benchmark
+    public byte[] taggedSerialize(final Payload payload)
+    {
+        return payload.taggedSerializer.serialize(payload.value);
+    }
+
+    @Benchmark
+    public Serializable taggedDeserialize(final Payload payload)
+    {
+        return payload.taggedSerializer.deserialize(payload.taggedSerialized);
+    }
+
+    @Benchmark
+    public byte[] toBytesWithEncoding(final Keys keys)
+    {
+        return RedisUtils.toBytes(keys.name, "UTF-8");
+    }
+
+    @Benchmark
+    public byte[] getPartitionHashKey(final Keys keys)
+    {
+        return RedisUtils.getPartitionHashKey(keys.name);
+    }
+
+    @Benchmark
+    public byte[] getHashTaggedPartitionHashKey(final Keys keys)
+    {
+        return RedisUtils.getPartitionHashKey(keys.name, true);
+    }
+
+    @Benchmark
+    public byte[][] getPatternsFromChannels(final Keys keys)
+    {
+        return RedisUtils.getPatternsFromChannels(keys.channels);
+    }
+
+    @Benchmark
+    public byte[][] getPatterns(final Keys keys)
+    {
+        return RedisUtils.getPatterns(keys.channels);
+    }
+
+    @Benchmark
+    public byte[][] getLiteralChannels(final Keys keys)
+    {
+        return RedisUtils.getLiteralChannels(keys.channels);
+    }
+
+    private static String newUtf8Text(final int length)
+    {
+        final String words = "Gr\u00f6\u00dfe fa\u00e7ade na\u00efve \u6771\u4eac \u0395\u03bb\u03bb\u03ac\u03b4\u03b1 caf\u00e9 ";
+        final StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length)
+        {
+            sb.append(words);
+        }
+        return sb.substring(0, length);
+    }
+
+    private static Order newOrder(final int serializedSize, final Random random)
+    {
+        final Order order = new Order(random.nextLong(), "customer-" + random.nextInt(100000));
+
+        while (RedisUtils.toBytes(order).length < serializedSize)
+        {
+            // grow geometrically to reach large sizes without serializing too often
+            final int linesToAdd = Math.max(1, order.lines.size() / 2);
+            for (int i = 0; i < linesToAdd; i++)
+            {
+                order.lines.add(new OrderLine("SKU-" + random.nextInt(1000000), 1 + random.nextInt(10),
+                    random.nextInt(100000) / 100.0d));
+            }
+        }
+        return order;
+    }
+}
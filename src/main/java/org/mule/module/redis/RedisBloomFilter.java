@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter over byte arrays, sized for an expected number of entries and false
+ * positive rate: {@link #mightContain(byte[])} never returns false for a value that has been
+ * {@link #put(byte[])}, and returns true for other values with about the configured probability,
+ * as long as no more than the expected number of entries have been added.
+ */
+public class RedisBloomFilter
+{
+    private static final double LN_2 = Math.log(2.0d);
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedEntries the number of entries the filter is sized for.
+     * @param falsePositiveRate the false positive rate once expectedEntries entries have been added.
+     */
+    public RedisBloomFilter(final long expectedEntries, final double falsePositiveRate)
+    {
+        if (expectedEntries < 1L)
+        {
+            throw new IllegalArgumentException("Expected entries must be strictly positive, got: " + expectedEntries);
+        }
+
+        if ((falsePositiveRate <= 0.0d) || (falsePositiveRate >= 1.0d))
+        {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1, got: "
+                                               + falsePositiveRate);
+        }
+
+        // the optimal sizes for the expected entries, in whole 64 bits words
+        final long optimalBitCount = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (LN_2 * LN_2));
+        final long wordCount = (optimalBitCount + 63L) / 64L;
+        if (wordCount > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Bloom filter too large for " + expectedEntries + " entries");
+        }
+
+        words = new AtomicLongArray((int) wordCount);
+        bitCount = wordCount * 64L;
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEntries * LN_2));
+    }
+
+    public void put(final byte[] value)
+    {
+        final long hash = hash(value);
+        final int hash1 = (int) hash;
+        final int hash2 = (int) (hash >>> 32);
+
+        for (int i = 1; i <= hashCount; i++)
+        {
+            final long bit = getBit(hash1, hash2, i);
+            final int index = (int) (bit >>> 6);
+            final long mask = 1L << bit;
+
+            long word = words.get(index);
+            while (((word & mask) == 0L) && (!words.compareAndSet(index, word, word | mask)))
+            {
+                word = words.get(index);
+            }
+        }
+    }
+
+    /**
+     * @return false if the value has definitely not been added, true if it probably has.
+     */
+    public boolean mightContain(final byte[] value)
+    {
+        final long hash = hash(value);
+        final int hash1 = (int) hash;
+        final int hash2 = (int) (hash >>> 32);
+
+        for (int i = 1; i <= hashCount; i++)
+        {
+            final long bit = getBit(hash1, hash2, i);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0L)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitCount()
+    {
+        return bitCount;
+    }
+
+    public int getHashCount()
+    {
+        return hashCount;
+    }
+
+    private long getBit(final int hash1, final int hash2, final int i)
+    {
+        // the i-th hash is derived from two independent ones (Kirsch and Mitzenmacher)
+        long combined = hash1 + (long) i * hash2;
+        if (combined < 0L)
+        {
+            combined = ~combined;
+        }
+        return combined % bitCount;
+    }
+
+    private static long hash(final byte[] value)
+    {
+        // FNV-1a, with the MurmurHash3 finalizer to spread its bits over the whole 64 bits
+        long hash = 0xcbf29ce484222325L;
+        for (final byte b : value)
+        {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
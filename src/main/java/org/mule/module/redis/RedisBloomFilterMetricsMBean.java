@@ -0,0 +1,30 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+/**
+ * Effectiveness of the object store Bloom filters: absent keys are answered without a round trip
+ * to Redis, probable hits are checked in Redis and turn out to be false positives if they are
+ * missing. The false positive rate is the share of the keys missing from Redis that the filters
+ * didn't recognize as absent.
+ */
+public interface RedisBloomFilterMetricsMBean
+{
+    int getPartitions();
+
+    long getAbsentKeys();
+
+    long getProbableHits();
+
+    long getFalsePositives();
+
+    double getFalsePositiveRate();
+
+    long getRebuilds();
+}
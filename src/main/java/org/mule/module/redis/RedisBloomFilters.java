@@ -0,0 +1,283 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * One {@link RedisBloomFilter} per object store partition, used to answer that a key is definitely
+ * absent without a round trip to Redis. The filter of a partition is built in the background from
+ * the keys in Redis the first time the partition is checked, then rebuilt periodically to forget
+ * removed keys and learn the keys stored by other Mule instances, which are reported absent until
+ * then. Keys stored by this instance are added right after they are written, including while a
+ * rebuild is in progress.
+ */
+public abstract class RedisBloomFilters implements RedisBloomFilterMetricsMBean
+{
+    private static final Log LOGGER = LogFactory.getLog(RedisBloomFilters.class);
+
+    /**
+     * What a filter knows about a key.
+     */
+    public static enum Presence
+    {
+        ABSENT, PROBABLE, UNKNOWN;
+    }
+
+    private static final class PartitionFilter
+    {
+        // null until the first build completes
+        private volatile RedisBloomFilter current;
+        // receives the stored keys while it's being built
+        private volatile RedisBloomFilter building;
+    }
+
+    private final long expectedEntries;
+    private final double falsePositiveRate;
+    private final ConcurrentMap<String, PartitionFilter> partitionFilters = new ConcurrentHashMap<String, PartitionFilter>();
+    private final ScheduledExecutorService builder;
+
+    private final AtomicLong absentKeys = new AtomicLong();
+    private final AtomicLong probableHits = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    /**
+     * @param expectedEntries the number of keys each filter is sized for.
+     * @param falsePositiveRate the false positive rate of a filter holding expectedEntries keys.
+     */
+    public RedisBloomFilters(final long expectedEntries, final double falsePositiveRate)
+    {
+        // fails early on invalid sizes
+        new RedisBloomFilter(expectedEntries, falsePositiveRate);
+
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+
+        builder = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, "redis-object-store-bloom-filters");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Adds all the keys of a partition currently in Redis to a filter. Must read from the master,
+     * as a lagging replica would make the filter miss recently stored keys.
+     */
+    protected abstract void loadKeys(String partitionName, RedisBloomFilter filter);
+
+    /**
+     * Starts rebuilding the filters of all the checked partitions every syncInterval milliseconds.
+     */
+    public void start(final long syncInterval)
+    {
+        builder.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (final String partitionName : partitionFilters.keySet())
+                {
+                    rebuild(partitionName);
+                }
+            }
+        }, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+
+        LOGGER.info(String.format("Object store Bloom filters started, expected entries: %d, false positive rate: %s, sync interval: %dms",
+            expectedEntries, falsePositiveRate, syncInterval));
+    }
+
+    public void stop()
+    {
+        builder.shutdownNow();
+    }
+
+    /**
+     * @return {@link Presence#UNKNOWN} while the filter of the partition is being built for the first
+     *         time, otherwise whether the key is definitely absent or probably present.
+     */
+    public Presence check(final String partitionName, final byte[] key)
+    {
+        PartitionFilter partitionFilter = partitionFilters.get(partitionName);
+
+        if (partitionFilter == null)
+        {
+            final PartitionFilter newPartitionFilter = new PartitionFilter();
+            partitionFilter = partitionFilters.putIfAbsent(partitionName, newPartitionFilter);
+
+            if (partitionFilter == null)
+            {
+                partitionFilter = newPartitionFilter;
+                scheduleRebuild(partitionName);
+            }
+        }
+
+        final RedisBloomFilter filter = partitionFilter.current;
+        if (filter == null)
+        {
+            return Presence.UNKNOWN;
+        }
+
+        if (!filter.mightContain(key))
+        {
+            absentKeys.incrementAndGet();
+            return Presence.ABSENT;
+        }
+        return Presence.PROBABLE;
+    }
+
+    /**
+     * Records whether a key the filter found {@link Presence#PROBABLE} exists in Redis.
+     */
+    public void recordProbableHit(final boolean exists)
+    {
+        (exists ? probableHits : falsePositives).incrementAndGet();
+    }
+
+    /**
+     * Adds a key to the filter of its partition. Must be called after the key has been written to
+     * Redis, so that a rebuild either finds it in Redis or receives it here.
+     */
+    public void put(final String partitionName, final byte[] key)
+    {
+        final PartitionFilter partitionFilter = partitionFilters.get(partitionName);
+
+        if (partitionFilter == null)
+        {
+            // the first check will build the filter from Redis
+            return;
+        }
+
+        // building first: once it's null, any completed rebuild is the current filter
+        final RedisBloomFilter building = partitionFilter.building;
+        if (building != null)
+        {
+            building.put(key);
+        }
+
+        final RedisBloomFilter current = partitionFilter.current;
+        if (current != null)
+        {
+            current.put(key);
+        }
+    }
+
+    /**
+     * Forgets the filter of a partition, for instance because it has been disposed.
+     */
+    public void remove(final String partitionName)
+    {
+        partitionFilters.remove(partitionName);
+    }
+
+    @Override
+    public int getPartitions()
+    {
+        return partitionFilters.size();
+    }
+
+    @Override
+    public long getAbsentKeys()
+    {
+        return absentKeys.get();
+    }
+
+    @Override
+    public long getProbableHits()
+    {
+        return probableHits.get();
+    }
+
+    @Override
+    public long getFalsePositives()
+    {
+        return falsePositives.get();
+    }
+
+    @Override
+    public double getFalsePositiveRate()
+    {
+        final long falsePositiveCount = falsePositives.get();
+        final long missingKeys = absentKeys.get() + falsePositiveCount;
+        return missingKeys == 0L ? 0.0d : (double) falsePositiveCount / missingKeys;
+    }
+
+    @Override
+    public long getRebuilds()
+    {
+        return rebuilds.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("partitions: %d, absent keys: %d, probable hits: %d, false positives: %d, rebuilds: %d",
+            getPartitions(), getAbsentKeys(), getProbableHits(), getFalsePositives(), getRebuilds());
+    }
+
+    private void scheduleRebuild(final String partitionName)
+    {
+        builder.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                rebuild(partitionName);
+            }
+        });
+    }
+
+    /**
+     * Builds a new filter from the keys in Redis and makes it current. Runs on the builder thread
+     * only, so rebuilds of a partition never overlap.
+     */
+    private void rebuild(final String partitionName)
+    {
+        final PartitionFilter partitionFilter = partitionFilters.get(partitionName);
+        if (partitionFilter == null)
+        {
+            return;
+        }
+
+        // keys stored from now on are either found by the walk or added by put
+        final RedisBloomFilter filter = new RedisBloomFilter(expectedEntries, falsePositiveRate);
+        partitionFilter.building = filter;
+
+        try
+        {
+            loadKeys(partitionName, filter);
+            partitionFilter.current = filter;
+            rebuilds.incrementAndGet();
+        }
+        catch (final RuntimeException re)
+        {
+            // the current filter, if any, is still valid
+            LOGGER.warn("Failed to build the Bloom filter of object store partition: " + partitionName, re);
+        }
+        finally
+        {
+            partitionFilter.building = null;
+        }
+    }
+}
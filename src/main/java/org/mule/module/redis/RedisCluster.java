@@ -0,0 +1,270 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.pool.impl.GenericObjectPool.Config;
+import org.mule.module.redis.RedisUtils.RedisAction;
+import org.mule.util.StringUtils;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Routes {@link RedisAction}s to the nodes of a Redis Cluster, with a connection pool per node. The
+ * node serving each slot is learnt from CLUSTER SLOTS when possible, and from the MOVED redirections
+ * returned by the nodes otherwise. ASK redirections, which happen while a slot is migrating, are
+ * followed for a single action without changing the slot map.
+ */
+public class RedisCluster implements RedisKeyRouter
+{
+    public static final int SLOTS = 16384;
+
+    private static final Log LOGGER = LogFactory.getLog(RedisCluster.class);
+
+    private static final int MAX_REDIRECTIONS = 5;
+
+    private static final byte[] ASKING = SafeEncoder.encode("ASKING");
+    private static final byte[] CLUSTER = SafeEncoder.encode("CLUSTER");
+    private static final byte[] SLOTS_SUBCOMMAND = SafeEncoder.encode("SLOTS");
+
+    private static final class AskingAction<R> extends RedisAction<R>
+    {
+        private final RedisAction<R> action;
+
+        private AskingAction(final RedisAction<R> action)
+        {
+            super(action.getName());
+            this.action = action;
+        }
+
+        @Override
+        public R run()
+        {
+            RedisUtils.sendRawCommand(redis, ASKING);
+            return action.runWithJedis((Jedis) redis);
+        }
+
+        @Override
+        public boolean isConnectionReusable()
+        {
+            return action.isConnectionReusable();
+        }
+    }
+
+    private final List<String> seedNodes;
+    private final Config poolConfig;
+    private final int connectionTimeout;
+    private final String password;
+    private final RedisMetrics metrics;
+
+    private final ConcurrentMap<String, JedisPool> nodePools = new ConcurrentHashMap<String, JedisPool>();
+    private final AtomicReferenceArray<String> slotNodes = new AtomicReferenceArray<String>(SLOTS);
+
+    /**
+     * @param seedNodes some of the cluster nodes, as host:port strings.
+     * @param metrics the metrics the pools report to, null if metrics are disabled.
+     */
+    public RedisCluster(final List<String> seedNodes,
+                        final Config poolConfig,
+                        final int connectionTimeout,
+                        final String password,
+                        final RedisMetrics metrics)
+    {
+        this.seedNodes = seedNodes;
+        this.poolConfig = poolConfig;
+        this.connectionTimeout = connectionTimeout;
+        this.password = password;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Loads the slot map from the first seed node that answers CLUSTER SLOTS. Failing that, slots
+     * are learnt from redirections.
+     */
+    public void refreshSlots()
+    {
+        for (final String seedNode : seedNodes)
+        {
+            try
+            {
+                final List<Object> slotRanges = RedisUtils.run(getNodePool(seedNode), new RedisAction<List<Object>>()
+                {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public List<Object> run()
+                    {
+                        return (List<Object>) RedisUtils.sendRawCommand(redis, CLUSTER, SLOTS_SUBCOMMAND);
+                    }
+                });
+
+                for (final Object slotRange : slotRanges)
+                {
+                    final List<?> range = (List<?>) slotRange;
+                    final List<?> master = (List<?>) range.get(2);
+                    final String node = getNode(SafeEncoder.encode((byte[]) master.get(0)),
+                        ((Long) master.get(1)).intValue(), seedNode);
+
+                    for (int slot = ((Long) range.get(0)).intValue(); slot <= ((Long) range.get(1)).intValue(); slot++)
+                    {
+                        slotNodes.set(slot, node);
+                    }
+                }
+
+                LOGGER.info("Loaded Redis Cluster slots from: " + seedNode + ", masters: " + getMasterNodes());
+                return;
+            }
+            catch (final RuntimeException re)
+            {
+                LOGGER.warn("Failed to load Redis Cluster slots from: " + seedNode, re);
+            }
+        }
+    }
+
+    /**
+     * Runs the action on the node serving the slot of the key, following redirections.
+     */
+    @Override
+    public <R> R run(final byte[] key, final RedisAction<R> action)
+    {
+        final int slot = RedisUtils.getSlot(key);
+        String node = getSlotNode(slot);
+        boolean asking = false;
+
+        for (int redirections = 0;; redirections++)
+        {
+            try
+            {
+                return RedisUtils.run(getNodePool(node), asking ? new AskingAction<R>(action) : action);
+            }
+            catch (final JedisDataException jde)
+            {
+                final String[] redirection = StringUtils.split(jde.getMessage(), ' ');
+
+                if ((redirections >= MAX_REDIRECTIONS) || (redirection == null) || (redirection.length != 3)
+                    || (!"MOVED".equals(redirection[0]) && !"ASK".equals(redirection[0])))
+                {
+                    throw jde;
+                }
+
+                final String target = getNode(RedisUtils.getHost(redirection[2]),
+                    RedisUtils.getPort(redirection[2]), node);
+                asking = "ASK".equals(redirection[0]);
+
+                if (!asking)
+                {
+                    slotNodes.set(Integer.parseInt(redirection[1]), target);
+                }
+
+                node = target;
+            }
+            catch (final JedisConnectionException jce)
+            {
+                // the node may have failed over, get a fresh view of the cluster for the next actions
+                refreshSlots();
+                throw jce;
+            }
+        }
+    }
+
+    @Override
+    public Object getRoute(final byte[] key)
+    {
+        return RedisUtils.getSlot(key);
+    }
+
+    /**
+     * @return the pools of all the known master nodes.
+     */
+    @Override
+    public List<JedisPool> getPools()
+    {
+        final List<JedisPool> pools = new ArrayList<JedisPool>();
+        for (final String node : getMasterNodes())
+        {
+            pools.add(getNodePool(node));
+        }
+        return pools;
+    }
+
+    @Override
+    public void destroy()
+    {
+        for (final JedisPool nodePool : nodePools.values())
+        {
+            nodePool.destroy();
+        }
+    }
+
+    private Set<String> getMasterNodes()
+    {
+        final Set<String> masterNodes = new LinkedHashSet<String>();
+        for (int slot = 0; slot < SLOTS; slot++)
+        {
+            final String node = slotNodes.get(slot);
+            if (node != null)
+            {
+                masterNodes.add(node);
+            }
+        }
+
+        if (masterNodes.isEmpty())
+        {
+            masterNodes.addAll(seedNodes);
+        }
+        return masterNodes;
+    }
+
+    private String getSlotNode(final int slot)
+    {
+        final String node = slotNodes.get(slot);
+        // an unknown slot will be learnt from the redirection of any node
+        return node != null ? node : seedNodes.get(slot % seedNodes.size());
+    }
+
+    private JedisPool getNodePool(final String node)
+    {
+        JedisPool nodePool = nodePools.get(node);
+
+        if (nodePool == null)
+        {
+            final JedisPool newNodePool = RedisUtils.newJedisPool(poolConfig, node, connectionTimeout, password,
+                metrics);
+            nodePool = nodePools.putIfAbsent(node, newNodePool);
+            if (nodePool == null)
+            {
+                nodePool = newNodePool;
+            }
+            else
+            {
+                newNodePool.destroy();
+            }
+        }
+
+        return nodePool;
+    }
+
+    private static String getNode(final String host, final int port, final String replyingNode)
+    {
+        // nodes that don't know their own address announce an empty host
+        return (StringUtils.isBlank(host) ? RedisUtils.getHost(replyingNode) : host) + ":" + port;
+    }
+}
@@ -0,0 +1,359 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mule.module.redis.RedisUtils.QueueableRedisAction;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * Coalesces the {@link QueueableRedisAction}s run concurrently by different threads: a single writer
+ * thread sends the commands of up to batchSize pending actions at once on a shared connection, then
+ * dispatches the replies back to the waiting callers. Actions submitted while a batch is in flight
+ * are naturally grouped in the next one; a coalescing window can be configured to wait a little
+ * for more actions before writing a batch that isn't full.
+ */
+public class RedisCommandCoalescer
+{
+    private static final Log LOGGER = LogFactory.getLog(RedisCommandCoalescer.class);
+
+    private static final long IDLE_POLL_MILLIS = 500L;
+
+    private static final class PendingAction<R>
+    {
+        private final QueueableRedisAction<R> action;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private int replies;
+        private R result;
+        private RuntimeException failure;
+
+        private PendingAction(final QueueableRedisAction<R> action)
+        {
+            this.action = action;
+        }
+
+        private void queue(final Client client)
+        {
+            replies = action.queue(client);
+        }
+
+        /**
+         * @return false if the replies don't match the commands of the action, which means the
+         *         connection is out of step.
+         */
+        private boolean complete(final List<Object> actionReplies)
+        {
+            try
+            {
+                result = RedisUtils.fromReplies(action, actionReplies);
+                return true;
+            }
+            catch (final JedisConnectionException jce)
+            {
+                failure = jce;
+                return false;
+            }
+            catch (final RuntimeException re)
+            {
+                failure = re;
+                return true;
+            }
+            finally
+            {
+                done.countDown();
+            }
+        }
+
+        private void fail(final RuntimeException re)
+        {
+            if (done.getCount() == 0L)
+            {
+                // already completed or failed
+                return;
+            }
+
+            failure = re;
+            done.countDown();
+        }
+
+        private R await()
+        {
+            boolean interrupted = false;
+            while (true)
+            {
+                try
+                {
+                    done.await();
+                    break;
+                }
+                catch (final InterruptedException ie)
+                {
+                    // the commands may already be on the wire: wait for the outcome anyway
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            if (failure != null)
+            {
+                throw failure;
+            }
+            return result;
+        }
+    }
+
+    private volatile JedisPool jedisPool;
+    private final int batchSize;
+    private final long windowNanos;
+    private final BlockingQueue<PendingAction<?>> pendingActions = new LinkedBlockingQueue<PendingAction<?>>();
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param jedisPool the pool to borrow the shared connection from.
+     * @param batchSize the maximum number of actions written at once.
+     * @param windowMicros how long to wait for more actions before writing a batch that isn't full.
+     */
+    public RedisCommandCoalescer(final JedisPool jedisPool, final int batchSize, final long windowMicros)
+    {
+        this.jedisPool = jedisPool;
+        this.batchSize = batchSize;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+
+        writer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                writeLoop();
+            }
+        }, "redis-command-coalescer");
+        writer.setDaemon(true);
+    }
+
+    public void start()
+    {
+        writer.start();
+        LOGGER.info(String.format("Redis command coalescing started, batch size: %d, window: %dus", batchSize,
+            TimeUnit.NANOSECONDS.toMicros(windowNanos)));
+    }
+
+    public void stop()
+    {
+        running = false;
+        writer.interrupt();
+
+        try
+        {
+            writer.join(IDLE_POLL_MILLIS);
+        }
+        catch (final InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        failPendingActions();
+    }
+
+    /**
+     * Makes the next batches use a connection from another pool, for example after a master
+     * failover. The batch in flight, if any, completes on the current connection.
+     */
+    public void setJedisPool(final JedisPool jedisPool)
+    {
+        this.jedisPool = jedisPool;
+    }
+
+    /**
+     * Submits the action to the next batch and waits for its result.
+     */
+    public <R> R run(final QueueableRedisAction<R> action)
+    {
+        final RedisMetrics metrics = RedisMetrics.of(jedisPool);
+        final long start = System.nanoTime();
+        boolean failed = true;
+
+        try
+        {
+            final PendingAction<R> pendingAction = new PendingAction<R>(action);
+            pendingActions.add(pendingAction);
+
+            if (!running)
+            {
+                failPendingActions();
+            }
+
+            final R result = pendingAction.await();
+            failed = false;
+            return result;
+        }
+        finally
+        {
+            if (metrics != null)
+            {
+                metrics.record(action.getName(), start, failed);
+            }
+        }
+    }
+
+    private void writeLoop()
+    {
+        final List<PendingAction<?>> batch = new ArrayList<PendingAction<?>>(batchSize);
+        Jedis jedis = null;
+        JedisPool borrowedFrom = null;
+
+        while (running)
+        {
+            try
+            {
+                final PendingAction<?> first = pendingActions.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null)
+                {
+                    continue;
+                }
+
+                batch.add(first);
+                collect(batch);
+
+                if ((jedis != null) && (borrowedFrom != jedisPool))
+                {
+                    borrowedFrom.returnResource(jedis);
+                    jedis = null;
+                }
+
+                if (jedis == null)
+                {
+                    borrowedFrom = jedisPool;
+                    jedis = borrowedFrom.getResource();
+                }
+
+                write(jedis.getClient(), batch);
+            }
+            catch (final InterruptedException ie)
+            {
+                // stopping, the loop condition takes care of it
+            }
+            catch (final RuntimeException re)
+            {
+                LOGGER.warn("Failed to write a batch of " + batch.size() + " coalesced actions", re);
+
+                for (final PendingAction<?> pendingAction : batch)
+                {
+                    pendingAction.fail(re);
+                }
+
+                if (jedis != null)
+                {
+                    // replies may be left on the wire: don't reuse this connection
+                    borrowedFrom.returnBrokenResource(jedis);
+                    jedis = null;
+                }
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+
+        if (jedis != null)
+        {
+            borrowedFrom.returnResource(jedis);
+        }
+
+        failPendingActions();
+    }
+
+    private void collect(final List<PendingAction<?>> batch) throws InterruptedException
+    {
+        pendingActions.drainTo(batch, batchSize - batch.size());
+
+        if (windowNanos <= 0L)
+        {
+            return;
+        }
+
+        final long deadline = System.nanoTime() + windowNanos;
+
+        while (batch.size() < batchSize)
+        {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L)
+            {
+                return;
+            }
+
+            final PendingAction<?> next = pendingActions.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null)
+            {
+                return;
+            }
+
+            batch.add(next);
+            pendingActions.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    /**
+     * Sends the commands of the batch, then reads as many replies as each action sent commands.
+     * 
+     * @throws JedisConnectionException if an action failed to send its commands or if replies
+     *             don't match the commands: the actions of the batch that aren't complete yet
+     *             must fail and the connection can't be reused.
+     */
+    private void write(final Client client, final List<PendingAction<?>> batch)
+    {
+        for (final PendingAction<?> pendingAction : batch)
+        {
+            try
+            {
+                pendingAction.queue(client);
+            }
+            catch (final RuntimeException re)
+            {
+                // some of its commands may be on the wire, uncounted: no reply can be attributed
+                pendingAction.fail(re);
+                throw new JedisConnectionException("Failed to send a coalesced action", re);
+            }
+        }
+
+        for (final PendingAction<?> pendingAction : batch)
+        {
+            if (!pendingAction.complete(RedisUtils.readReplies(client, pendingAction.replies)))
+            {
+                throw new JedisConnectionException("Unexpected replies to a coalesced action");
+            }
+        }
+    }
+
+    private void failPendingActions()
+    {
+        PendingAction<?> pendingAction;
+        while ((pendingAction = pendingActions.poll()) != null)
+        {
+            pendingAction.fail(new JedisConnectionException("Redis command coalescing has been stopped"));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+/**
+ * Latencies, in microseconds, and error count of an operation, as seen by its callers.
+ */
+public interface RedisCommandMetricsMBean
+{
+    long getCount();
+
+    long getErrors();
+
+    long getMeanLatency();
+
+    long getP50Latency();
+
+    long getP99Latency();
+
+    long getP999Latency();
+
+    long getMaxLatency();
+}
@@ -0,0 +1,26 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+/**
+ * Effectiveness of value compression: the ratio is the uncompressed size of the compressed values
+ * divided by their compressed size.
+ */
+public interface RedisCompressionMetricsMBean
+{
+    long getCompressedValues();
+
+    long getIncompressibleValues();
+
+    long getUncompressedBytes();
+
+    long getCompressedBytes();
+
+    double getCompressionRatio();
+}
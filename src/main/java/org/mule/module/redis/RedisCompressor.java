@@ -0,0 +1,258 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compresses values with Deflate when they are larger than a threshold. Compressed values start
+ * with a header that neither UTF-8 text, Java serialization nor the {@link RedisTaggedSerializer}
+ * format can start with, followed by the uncompressed length and a CRC-32 of both, so that raw
+ * binary values starting with the same bytes aren't mistaken for compressed ones: values that
+ * don't start with it are returned as-is by {@link #decompress(byte[])}, so compression can be
+ * enabled on existing data.
+ */
+public class RedisCompressor implements RedisCompressionMetricsMBean
+{
+    private static final byte[] HEADER = {(byte) 0xFF, 0x00, 'R', 'Z'};
+    // the header, the uncompressed length, then the checksum of both
+    private static final int CHECKSUM_OFFSET = HEADER.length + 4;
+    private static final int HEADER_LENGTH = CHECKSUM_OFFSET + 4;
+
+    private final int threshold;
+    private final int level;
+
+    private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>()
+    {
+        @Override
+        protected Deflater initialValue()
+        {
+            return new Deflater(level);
+        }
+    };
+
+    private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>()
+    {
+        @Override
+        protected Inflater initialValue()
+        {
+            return new Inflater();
+        }
+    };
+
+    private final AtomicLong compressedValues = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong incompressibleValues = new AtomicLong();
+
+    /**
+     * @param threshold the minimum length of the values to compress, 0 to never compress.
+     * @param level the Deflate compression level, from 1 (fastest) to 9 (smallest).
+     */
+    public RedisCompressor(final int threshold, final int level)
+    {
+        if ((level < Deflater.BEST_SPEED) || (level > Deflater.BEST_COMPRESSION))
+        {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9, got: " + level);
+        }
+
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    /**
+     * @return the compressed value if it's above the threshold and compression makes it smaller,
+     *         the value itself otherwise.
+     */
+    public byte[] compress(final byte[] value)
+    {
+        if ((threshold <= 0) || (value == null) || (value.length < Math.max(threshold, HEADER_LENGTH + 1)))
+        {
+            return value;
+        }
+
+        final Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(value);
+        deflater.finish();
+
+        // the output is no larger than the value: compression is abandoned if it doesn't save anything
+        final byte[] compressed = new byte[value.length];
+        System.arraycopy(HEADER, 0, compressed, 0, HEADER.length);
+        writeInt(compressed, HEADER.length, value.length);
+        writeInt(compressed, CHECKSUM_OFFSET, checksum(compressed));
+
+        int length = HEADER_LENGTH;
+        while ((!deflater.finished()) && (length < compressed.length))
+        {
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        if (!deflater.finished())
+        {
+            incompressibleValues.incrementAndGet();
+            return value;
+        }
+
+        compressedValues.incrementAndGet();
+        uncompressedBytes.addAndGet(value.length);
+        compressedBytes.addAndGet(length);
+        return Arrays.copyOf(compressed, length);
+    }
+
+    /**
+     * @return the uncompressed value if it has been compressed, the value itself otherwise.
+     */
+    public byte[] decompress(final byte[] value)
+    {
+        if (!isCompressed(value))
+        {
+            return value;
+        }
+
+        final int length = readInt(value, HEADER.length);
+        if (length < 0)
+        {
+            throw new IllegalArgumentException("Invalid uncompressed length: " + length);
+        }
+
+        final Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(value, HEADER_LENGTH, value.length - HEADER_LENGTH);
+
+        final byte[] uncompressed = new byte[length];
+        try
+        {
+            int inflated = 0;
+            while ((!inflater.finished()) && (inflated < length))
+            {
+                final int n = inflater.inflate(uncompressed, inflated, length - inflated);
+                if ((n == 0) && (inflater.needsInput() || inflater.needsDictionary()))
+                {
+                    break;
+                }
+                inflated += n;
+            }
+
+            if ((inflated != length) || (!inflater.finished()))
+            {
+                throw new IllegalArgumentException("Corrupted compressed value");
+            }
+        }
+        catch (final DataFormatException dfe)
+        {
+            throw new IllegalArgumentException("Corrupted compressed value", dfe);
+        }
+
+        return uncompressed;
+    }
+
+    /**
+     * @return a stream of the uncompressed bytes of a stream over a compressed value.
+     */
+    public static InputStream decompress(final InputStream stream) throws IOException
+    {
+        final byte[] header = new byte[HEADER_LENGTH];
+        if ((RedisUtils.readChunk(stream, header) < HEADER_LENGTH) || (!isCompressed(header)))
+        {
+            throw new IOException("Not a compressed value");
+        }
+
+        return new InflaterInputStream(stream);
+    }
+
+    public static boolean isCompressed(final byte[] value)
+    {
+        if ((value == null) || (value.length < HEADER_LENGTH))
+        {
+            return false;
+        }
+
+        for (int i = 0; i < HEADER.length; i++)
+        {
+            if (value[i] != HEADER[i])
+            {
+                return false;
+            }
+        }
+        return readInt(value, CHECKSUM_OFFSET) == checksum(value);
+    }
+
+    private static int checksum(final byte[] value)
+    {
+        final CRC32 crc = new CRC32();
+        crc.update(value, 0, CHECKSUM_OFFSET);
+        return (int) crc.getValue();
+    }
+
+    public int getThreshold()
+    {
+        return threshold;
+    }
+
+    @Override
+    public long getCompressedValues()
+    {
+        return compressedValues.get();
+    }
+
+    @Override
+    public long getIncompressibleValues()
+    {
+        return incompressibleValues.get();
+    }
+
+    @Override
+    public long getUncompressedBytes()
+    {
+        return uncompressedBytes.get();
+    }
+
+    @Override
+    public long getCompressedBytes()
+    {
+        return compressedBytes.get();
+    }
+
+    @Override
+    public double getCompressionRatio()
+    {
+        final long compressed = compressedBytes.get();
+        return compressed == 0L ? 1.0d : (double) uncompressedBytes.get() / compressed;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("compressed values: %d, incompressible values: %d, ratio: %.2f",
+            getCompressedValues(), getIncompressibleValues(), getCompressionRatio());
+    }
+
+    private static void writeInt(final byte[] bytes, final int offset, final int value)
+    {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(final byte[] bytes, final int offset)
+    {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+               | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -11,6 +11,14 @@ package org.mule.module.redis;
 public class RedisConstants {
     public static final String REDIS_PUBSUB_CHANNEL = "redis.pubsub.channel";
     public static final String REDIS_PUBSUB_PATTERN = "redis.pubsub.pattern";
+    public static final String REDIS_PUBSUB_BATCH_SIZE = "redis.pubsub.batch.size";
 
     public static final String OBJECTSTORE_HASH_KEY_PREFIX = "mule.objectstore.";
+
+    // not matched by the pattern of the partition hash keys
+    public static final String OBJECTSTORE_INDEX_KEY_PREFIX = "mule.objectstore-index.";
+    public static final String OBJECTSTORE_BUCKET_SEPARATOR = "#";
+
+    public static final String NEAR_CACHE_INVALIDATION_CHANNEL = "mule.redis.near-cache.invalidations";
+    public static final String SUBSCRIPTION_MANAGER_CHANNEL = "mule.redis.subscription-manager";
 }
@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.io.Serializable;
+
+/**
+ * The original format of the object store: strings are stored as UTF-8 bytes and anything else with
+ * Java serialization, which is detected when reading by the magic number Java serialization
+ * starts with.
+ */
+public class RedisJavaSerializer implements RedisSerializer
+{
+    @Override
+    public byte[] serialize(final Serializable value)
+    {
+        return RedisUtils.toBytes(value);
+    }
+
+    @Override
+    public Serializable deserialize(final byte[] bytes)
+    {
+        return RedisUtils.fromBytes(bytes);
+    }
+}
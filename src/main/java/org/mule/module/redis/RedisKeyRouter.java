@@ -0,0 +1,38 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.List;
+
+import org.mule.module.redis.RedisUtils.RedisAction;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Distributes keys over several Redis nodes, each with its own connection pool.
+ */
+public interface RedisKeyRouter
+{
+    /**
+     * Runs the action on the node in charge of the key.
+     */
+    <R> R run(byte[] key, RedisAction<R> action);
+
+    /**
+     * @return an object that is equal for keys which can be used together in a multi-key command.
+     */
+    Object getRoute(byte[] key);
+
+    /**
+     * @return the pools of all the nodes holding keys.
+     */
+    List<JedisPool> getPools();
+
+    void destroy();
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in microseconds. Values are counted in log-linear buckets: each
+ * power of two is split in 8 buckets, so percentiles are reported with at most 12.5% of error while
+ * recording a value only costs an atomic increment.
+ */
+public class RedisLatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(final long micros)
+    {
+        final long value = Math.max(0L, micros);
+
+        counts.incrementAndGet(getBucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long currentMax;
+        while ((value > (currentMax = max.get())) && (!max.compareAndSet(currentMax, value)))
+        {
+            // another thread raised the max concurrently, check again
+        }
+    }
+
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    public long getMean()
+    {
+        final long currentCount = count.get();
+        return currentCount == 0L ? 0L : sum.get() / currentCount;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the upper bound of the bucket containing the percentile, or 0 if nothing has been
+     *         recorded.
+     */
+    public long getPercentile(final double percentile)
+    {
+        final long currentCount = count.get();
+        if (currentCount == 0L)
+        {
+            return 0L;
+        }
+
+        final long rank = Math.max(1L, (long) Math.ceil(currentCount * percentile / 100.0d));
+        long seen = 0L;
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+        {
+            seen += counts.get(bucket);
+            if (seen >= rank)
+            {
+                return Math.min(getBucketUpperBound(bucket), max.get());
+            }
+        }
+
+        // values recorded while scanning
+        return max.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("count: %d, mean: %dus, p50: %dus, p99: %dus, p999: %dus, max: %dus", getCount(),
+            getMean(), getPercentile(50.0d), getPercentile(99.0d), getPercentile(99.9d), getMax());
+    }
+
+    static int getBucket(final long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long getBucketUpperBound(final int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1L;
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mule.module.redis.RedisModule.LocalCacheEviction;
+
+/**
+ * A size and time bounded in-memory cache, used to serve repeated reads without a round trip to
+ * Redis. Writers must call {@link #invalidate(Object)} when a value changes: a value read from Redis
+ * is only cached by {@link #put(Object, Object, Object)} if its key hasn't been invalidated since the
+ * {@link #startRead(Object)} that was called before reading it, so that a stale read racing with an
+ * invalidation never makes it to the cache. Invalidations of other keys don't prevent caching.
+ * <p/>
+ * With {@link LocalCacheEviction#LRU} the least recently used entry is evicted when the cache is
+ * full. With {@link LocalCacheEviction#LFU} the least frequently used of the oldest entries is
+ * evicted, which protects hot entries while still letting the cache renew itself.
+ */
+public class RedisLocalCache<K, V>
+{
+    private static final int LFU_EVICTION_SAMPLE_SIZE = 8;
+
+    private static final class CacheEntry<V>
+    {
+        private final V value;
+        private final long expiresAt;
+        private long uses;
+
+        private CacheEntry(final V value, final long expiresAt)
+        {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LocalCacheEviction eviction;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+    // the token of the reads started since the last invalidation of their key, oldest first
+    private final LinkedHashMap<K, Object> pendingReads = new LinkedHashMap<K, Object>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries the maximum number of entries held by the cache.
+     * @param ttlMillis how long an entry can be served after it has been cached, 0 for no limit.
+     * @param eviction the policy used to make room for new entries when the cache is full.
+     */
+    public RedisLocalCache(final int maxEntries, final long ttlMillis, final LocalCacheEviction eviction)
+    {
+        if (maxEntries < 1)
+        {
+            throw new IllegalArgumentException("Max entries must be strictly positive, got: " + maxEntries);
+        }
+
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.eviction = eviction;
+        // LRU relies on access ordering, LFU samples the oldest entries in insertion order
+        entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, eviction == LocalCacheEviction.LRU);
+    }
+
+    /**
+     * @return the cached value or null if it's missing or expired.
+     */
+    public synchronized V get(final K key)
+    {
+        final CacheEntry<V> entry = entries.get(key);
+
+        if (entry == null)
+        {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (isExpired(entry, System.nanoTime()))
+        {
+            entries.remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+
+        entry.uses++;
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * @return the token to pass to {@link #put(Object, Object, Object)} for a value of the key about
+     *         to be read from Redis.
+     */
+    public synchronized Object startRead(final K key)
+    {
+        Object readToken = pendingReads.get(key);
+        if (readToken == null)
+        {
+            readToken = new Object();
+            pendingReads.put(key, readToken);
+
+            if (pendingReads.size() > maxEntries)
+            {
+                // a read that never completes must not hold memory: the oldest is just not cached
+                final Iterator<K> i = pendingReads.keySet().iterator();
+                i.next();
+                i.remove();
+            }
+        }
+        return readToken;
+    }
+
+    /**
+     * Caches the value, unless its key has been invalidated since the read of the provided token
+     * started.
+     */
+    public synchronized void put(final K key, final V value, final Object readToken)
+    {
+        if (pendingReads.get(key) != readToken)
+        {
+            return;
+        }
+        pendingReads.remove(key);
+
+        final long now = System.nanoTime();
+        final long expiresAt = ttlNanos > 0L ? now + ttlNanos : Long.MAX_VALUE;
+
+        if ((entries.put(key, new CacheEntry<V>(value, expiresAt)) == null) && (entries.size() > maxEntries))
+        {
+            evict(key, now);
+        }
+    }
+
+    public synchronized void invalidate(final K key)
+    {
+        pendingReads.remove(key);
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll()
+    {
+        pendingReads.clear();
+        entries.clear();
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("size: %d/%d, hits: %d, misses: %d, evictions: %d", size(), maxEntries,
+            getHits(), getMisses(), getEvictions());
+    }
+
+    private void evict(final K addedKey, final long now)
+    {
+        final Iterator<Entry<K, CacheEntry<V>>> i = entries.entrySet().iterator();
+        Entry<K, CacheEntry<V>> victim = null;
+
+        for (int sampled = 0; i.hasNext() && sampled < LFU_EVICTION_SAMPLE_SIZE; sampled++)
+        {
+            final Entry<K, CacheEntry<V>> candidate = i.next();
+
+            if (candidate.getKey().equals(addedKey))
+            {
+                continue;
+            }
+
+            if (isExpired(candidate.getValue(), now))
+            {
+                // an expired entry is always the best victim, and it doesn't count as an eviction
+                entries.remove(candidate.getKey());
+                return;
+            }
+
+            if (eviction == LocalCacheEviction.LRU)
+            {
+                victim = candidate;
+                break;
+            }
+
+            if ((victim == null) || (candidate.getValue().uses < victim.getValue().uses))
+            {
+                victim = candidate;
+            }
+        }
+
+        entries.remove(victim.getKey());
+        evictions.incrementAndGet();
+    }
+
+    private boolean isExpired(final CacheEntry<V> entry, final long now)
+    {
+        return (entry.expiresAt != Long.MAX_VALUE) && (now - entry.expiresAt >= 0L);
+    }
+}
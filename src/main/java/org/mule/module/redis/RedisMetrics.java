@@ -0,0 +1,456 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.pool.impl.GenericObjectPool;
+import org.apache.commons.pool.impl.GenericObjectPool.Config;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Pool;
+
+/**
+ * Collects the latencies of the operations and the statistics of the connection pools of a
+ * connector configuration, and publishes them as MBeans: one for the pools and one per operation,
+ * registered the first time the operation runs.
+ */
+public class RedisMetrics implements RedisPoolMetricsMBean
+{
+    public static final String JMX_DOMAIN = "org.mule.module.redis";
+
+    private static final Log LOGGER = LogFactory.getLog(RedisMetrics.class);
+
+    private static final Field INTERNAL_POOL_FIELD = getInternalPoolField();
+
+    /**
+     * A {@link JedisPool} that reports borrow wait times and broken connections to its metrics.
+     */
+    public static class MeteredJedisPool extends JedisPool
+    {
+        private final RedisMetrics metrics;
+
+        public MeteredJedisPool(final RedisMetrics metrics,
+                                final Config poolConfig,
+                                final String host,
+                                final int port,
+                                final int connectionTimeout,
+                                final String password)
+        {
+            super(poolConfig, host, port, connectionTimeout, password);
+            this.metrics = metrics;
+            metrics.pools.add(this);
+        }
+
+        @Override
+        public Jedis getResource()
+        {
+            final long start = System.nanoTime();
+            boolean failed = true;
+
+            try
+            {
+                final Jedis jedis = super.getResource();
+                failed = false;
+                return jedis;
+            }
+            finally
+            {
+                metrics.borrowWait.record(getMicrosSince(start));
+                (failed ? metrics.borrowFailures : metrics.borrows).incrementAndGet();
+            }
+        }
+
+        @Override
+        protected void returnBrokenResourceObject(final Object resource)
+        {
+            metrics.brokenReturns.incrementAndGet();
+            super.returnBrokenResourceObject(resource);
+        }
+
+        @Override
+        public void destroy()
+        {
+            metrics.pools.remove(this);
+            super.destroy();
+        }
+
+        public RedisMetrics getMetrics()
+        {
+            return metrics;
+        }
+    }
+
+    private static final class CommandMetrics implements RedisCommandMetricsMBean
+    {
+        private final RedisLatencyHistogram latencies = new RedisLatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+
+        @Override
+        public long getCount()
+        {
+            return latencies.getCount();
+        }
+
+        @Override
+        public long getErrors()
+        {
+            return errors.get();
+        }
+
+        @Override
+        public long getMeanLatency()
+        {
+            return latencies.getMean();
+        }
+
+        @Override
+        public long getP50Latency()
+        {
+            return latencies.getPercentile(50.0d);
+        }
+
+        @Override
+        public long getP99Latency()
+        {
+            return latencies.getPercentile(99.0d);
+        }
+
+        @Override
+        public long getP999Latency()
+        {
+            return latencies.getPercentile(99.9d);
+        }
+
+        @Override
+        public long getMaxLatency()
+        {
+            return latencies.getMax();
+        }
+
+        @Override
+        public String toString()
+        {
+            return latencies + ", errors: " + errors.get();
+        }
+    }
+
+    private final String name;
+    private final MBeanServer mBeanServer;
+    private final List<MeteredJedisPool> pools = new CopyOnWriteArrayList<MeteredJedisPool>();
+    private final ConcurrentMap<String, CommandMetrics> commandMetrics = new ConcurrentHashMap<String, CommandMetrics>();
+    private final RedisLatencyHistogram borrowWait = new RedisLatencyHistogram();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong borrowFailures = new AtomicLong();
+    private final AtomicLong brokenReturns = new AtomicLong();
+
+    private final Map<String, StandardMBean> componentMBeans = new ConcurrentHashMap<String, StandardMBean>();
+
+    private volatile boolean registered;
+
+    /**
+     * @param name the name of the connector configuration, used in the names of the MBeans.
+     */
+    public RedisMetrics(final String name)
+    {
+        this(name, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public RedisMetrics(final String name, final MBeanServer mBeanServer)
+    {
+        this.name = name;
+        this.mBeanServer = mBeanServer;
+    }
+
+    /**
+     * @return the metrics of the pool, or null if it isn't metered.
+     */
+    public static RedisMetrics of(final Pool<?> pool)
+    {
+        return pool instanceof MeteredJedisPool ? ((MeteredJedisPool) pool).getMetrics() : null;
+    }
+
+    public static long getMicrosSince(final long startNanos)
+    {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records the latency of an operation, unless it has no name.
+     */
+    public void record(final String command, final long startNanos, final boolean failed)
+    {
+        if (command == null)
+        {
+            return;
+        }
+
+        final CommandMetrics metrics = getCommandMetrics(command);
+        metrics.latencies.record(getMicrosSince(startNanos));
+
+        if (failed)
+        {
+            metrics.errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Publishes the metrics of another component along with these ones, under the provided type.
+     * Must be called before {@link #register()}.
+     */
+    public <T> void addMBean(final String type, final T mBean, final Class<T> mBeanInterface)
+    {
+        try
+        {
+            componentMBeans.put(type, new StandardMBean(mBean, mBeanInterface));
+        }
+        catch (final JMException jmxe)
+        {
+            throw new IllegalArgumentException("Invalid MBean: " + mBean, jmxe);
+        }
+    }
+
+    public void register()
+    {
+        registered = true;
+        registerMBean(this, RedisPoolMetricsMBean.class, getObjectName("Pool", null));
+
+        for (final Entry<String, StandardMBean> componentMBean : componentMBeans.entrySet())
+        {
+            registerMBean(componentMBean.getValue(), getObjectName(componentMBean.getKey(), null));
+        }
+
+        for (final String command : commandMetrics.keySet())
+        {
+            registerMBean(commandMetrics.get(command), RedisCommandMetricsMBean.class,
+                getObjectName("Command", command));
+        }
+    }
+
+    public void unregister()
+    {
+        registered = false;
+        unregisterMBean(getObjectName("Pool", null));
+
+        for (final String type : componentMBeans.keySet())
+        {
+            unregisterMBean(getObjectName(type, null));
+        }
+
+        for (final String command : commandMetrics.keySet())
+        {
+            unregisterMBean(getObjectName("Command", command));
+        }
+
+        LOGGER.info("Redis metrics for " + name + ": " + this);
+    }
+
+    @Override
+    public int getNumActive()
+    {
+        int numActive = 0;
+        for (final MeteredJedisPool pool : pools)
+        {
+            numActive += getInternalPool(pool).getNumActive();
+        }
+        return numActive;
+    }
+
+    @Override
+    public int getNumIdle()
+    {
+        int numIdle = 0;
+        for (final MeteredJedisPool pool : pools)
+        {
+            numIdle += getInternalPool(pool).getNumIdle();
+        }
+        return numIdle;
+    }
+
+    @Override
+    public long getBorrows()
+    {
+        return borrows.get();
+    }
+
+    @Override
+    public long getBorrowFailures()
+    {
+        return borrowFailures.get();
+    }
+
+    @Override
+    public long getBrokenReturns()
+    {
+        return brokenReturns.get();
+    }
+
+    @Override
+    public long getMeanBorrowWait()
+    {
+        return borrowWait.getMean();
+    }
+
+    @Override
+    public long getP50BorrowWait()
+    {
+        return borrowWait.getPercentile(50.0d);
+    }
+
+    @Override
+    public long getP99BorrowWait()
+    {
+        return borrowWait.getPercentile(99.0d);
+    }
+
+    @Override
+    public long getP999BorrowWait()
+    {
+        return borrowWait.getPercentile(99.9d);
+    }
+
+    @Override
+    public long getMaxBorrowWait()
+    {
+        return borrowWait.getMax();
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("borrows: %d, borrow failures: %d, broken returns: %d, borrow wait: {%s}",
+            getBorrows(), getBorrowFailures(), getBrokenReturns(), borrowWait));
+
+        for (final String command : commandMetrics.keySet())
+        {
+            sb.append(", ").append(command).append(": {").append(commandMetrics.get(command)).append('}');
+        }
+        return sb.toString();
+    }
+
+    private CommandMetrics getCommandMetrics(final String command)
+    {
+        CommandMetrics metrics = commandMetrics.get(command);
+
+        if (metrics == null)
+        {
+            final CommandMetrics newMetrics = new CommandMetrics();
+            metrics = commandMetrics.putIfAbsent(command, newMetrics);
+
+            if (metrics == null)
+            {
+                metrics = newMetrics;
+
+                if (registered)
+                {
+                    registerMBean(metrics, RedisCommandMetricsMBean.class, getObjectName("Command", command));
+                }
+            }
+        }
+
+        return metrics;
+    }
+
+    private ObjectName getObjectName(final String type, final String command)
+    {
+        try
+        {
+            return new ObjectName(JMX_DOMAIN + ":type=" + type + ",config=" + ObjectName.quote(name)
+                                  + (command == null ? "" : ",command=" + ObjectName.quote(command)));
+        }
+        catch (final JMException jmxe)
+        {
+            throw new IllegalArgumentException("Invalid metrics name: " + name, jmxe);
+        }
+    }
+
+    private <T> void registerMBean(final T mBean, final Class<T> mBeanInterface, final ObjectName objectName)
+    {
+        try
+        {
+            registerMBean(new StandardMBean(mBean, mBeanInterface), objectName);
+        }
+        catch (final JMException jmxe)
+        {
+            LOGGER.warn("Failed to register MBean: " + objectName, jmxe);
+        }
+    }
+
+    private void registerMBean(final StandardMBean mBean, final ObjectName objectName)
+    {
+        try
+        {
+            mBeanServer.registerMBean(mBean, objectName);
+        }
+        catch (final JMException jmxe)
+        {
+            LOGGER.warn("Failed to register MBean: " + objectName, jmxe);
+        }
+    }
+
+    private void unregisterMBean(final ObjectName objectName)
+    {
+        try
+        {
+            if (mBeanServer.isRegistered(objectName))
+            {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        }
+        catch (final JMException jmxe)
+        {
+            LOGGER.warn("Failed to unregister MBean: " + objectName, jmxe);
+        }
+    }
+
+    private static GenericObjectPool getInternalPool(final Pool<?> pool)
+    {
+        try
+        {
+            return (GenericObjectPool) INTERNAL_POOL_FIELD.get(pool);
+        }
+        catch (final IllegalAccessException iae)
+        {
+            throw new IllegalStateException(iae);
+        }
+    }
+
+    private static Field getInternalPoolField()
+    {
+        // jedis doesn't expose the active and idle counts of its pools
+        try
+        {
+            final Field field = Pool.class.getDeclaredField("internalPool");
+            field.setAccessible(true);
+            return field;
+        }
+        catch (final NoSuchFieldException nsfe)
+        {
+            throw new IllegalStateException("Unsupported jedis version", nsfe);
+        }
+    }
+}
@@ -8,10 +8,34 @@
 
 package org.mule.module.redis;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -25,29 +49,37 @@ import org.apache.commons.pool.impl.GenericObjectPool.Config;
 import org.mule.RequestContext;
 import org.mule.api.MuleContext;
 import org.mule.api.MuleEvent;
+import org.mule.api.NestedProcessor;
 import org.mule.api.annotations.Configurable;
 import org.mule.api.annotations.Module;
 import org.mule.api.annotations.Processor;
 import org.mule.api.annotations.Source;
+import org.mule.api.annotations.SourceThreadingModel;
 import org.mule.api.annotations.param.Default;
 import org.mule.api.annotations.param.Optional;
 import org.mule.api.callback.SourceCallback;
+import org.mule.api.callback.StopSourceCallback;
 import org.mule.api.context.MuleContextAware;
 import org.mule.api.store.ObjectAlreadyExistsException;
 import org.mule.api.store.ObjectDoesNotExistException;
 import org.mule.api.store.ObjectStore;
 import org.mule.api.store.ObjectStoreException;
+import org.mule.api.store.PartitionableExpirableObjectStore;
 import org.mule.api.store.PartitionableObjectStore;
+import org.mule.api.transformer.TransformerException;
 import org.mule.config.i18n.MessageFactory;
+import org.mule.module.redis.RedisBloomFilters.Presence;
+import org.mule.module.redis.RedisUtils.QueueableRedisAction;
 import org.mule.module.redis.RedisUtils.RedisAction;
 import org.mule.util.StringUtils;
 
-import redis.clients.jedis.BinaryJedis;
-import redis.clients.jedis.BinaryTransaction;
+import redis.clients.jedis.BinaryClient;
+import redis.clients.jedis.Client;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
-import redis.clients.jedis.Response;
+import redis.clients.jedis.Protocol;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
 import redis.clients.util.SafeEncoder;
 
 /**
@@ -63,10 +95,38 @@ import redis.clients.util.SafeEncoder;
  */
 @SuppressWarnings("deprecation")
 @Module(name = "redis", schemaVersion = "3.4", friendlyName = "Redis", minMuleVersion = "3.4.0", description = "Redis Module")
-public class RedisModule implements PartitionableObjectStore<Serializable>, MuleContextAware
+public class RedisModule implements PartitionableExpirableObjectStore<Serializable>, MuleContextAware
 {
     private static final String FALLBACK_PARTITION_NAME = "_default";
 
+    // large enough to hold the header of compressed values
+    private static final int MIN_STREAM_CHUNK_SIZE = 16;
+
+    // KEYS: partition hash, partition index - ARGV: key, value, insertion time
+    private static final RedisScript OBJECT_STORE_STORE_SCRIPT = new RedisScript(
+        "if redis.call('HSETNX', KEYS[1], ARGV[1], ARGV[2]) == 0 then return 0 end\n"
+        + "redis.call('ZADD', KEYS[2], ARGV[3], ARGV[1])\n" + "return 1");
+
+    // KEYS: partition hash, partition index - ARGV: max insertion time, max entries, batch size
+    private static final RedisScript OBJECT_STORE_EXPIRE_SCRIPT = new RedisScript(
+        "local count = redis.call('ZCOUNT', KEYS[2], '-inf', ARGV[1])\n"
+        + "local maxEntries = tonumber(ARGV[2])\n"
+        + "if maxEntries > 0 then count = math.max(count, redis.call('ZCARD', KEYS[2]) - maxEntries) end\n"
+        + "count = math.min(count, tonumber(ARGV[3]))\n"
+        + "if count <= 0 then return {} end\n"
+        + "local keys = redis.call('ZRANGE', KEYS[2], 0, count - 1)\n"
+        + "redis.call('HDEL', KEYS[1], unpack(keys))\n"
+        + "redis.call('ZREMRANGEBYRANK', KEYS[2], 0, count - 1)\n" + "return keys");
+
+    // KEYS: partition hash, partition index - ARGV: insertion time, then key and value pairs
+    private static final RedisScript OBJECT_STORE_STORE_ALL_SCRIPT = new RedisScript(
+        "local stored = {}\n" + "for i = 2, #ARGV, 2 do\n"
+        + "  if redis.call('HSETNX', KEYS[1], ARGV[i], ARGV[i + 1]) == 1 then\n"
+        + "    redis.call('ZADD', KEYS[2], ARGV[1], ARGV[i])\n" + "    stored[#stored + 1] = 1\n"
+        + "  else\n" + "    stored[#stored + 1] = 0\n" + "  end\n" + "end\n" + "return stored");
+
+    private static final byte[] NO_MAX_INSERTION_TIME = SafeEncoder.encode("-inf");
+
     private static final Log LOGGER = LogFactory.getLog(RedisModule.class);
 
     /**
@@ -123,1181 +183,4422 @@ public class RedisModule implements PartitionableObjectStore<Serializable>, Mule
     @Optional
     private String defaultPartitionName;
 
-    private MuleContext muleContext;
-    private JedisPool jedisPool;
+    /**
+     * Converts object store values to and from bytes. The default {@link RedisJavaSerializer}
+     * uses Java serialization for anything but strings, a {@link RedisTaggedSerializer} is more
+     * compact and faster while still reading the values written by the default one.
+     */
+    @Configurable
+    @Optional
+    private RedisSerializer objectStoreSerializer = new RedisJavaSerializer();
 
-    private volatile boolean running = true;
+    /**
+     * Number of keys inspected by each SCAN or HSCAN command run by the object store to list its
+     * partitions or the keys of a partition: larger counts need fewer round trips but block the
+     * server longer for each.
+     */
+    @Configurable
+    @Optional
+    @Default("1000")
+    private int scanCount;
 
-    /*----------------------------------------------------------
-                Lifecycle Implementation
-    ----------------------------------------------------------*/
-    @PostConstruct
-    public void initializeJedis()
-    {
-        jedisPool = new JedisPool(poolConfig, host, port, connectionTimeout, password);
+    /**
+     * Minimum size in bytes of the values compressed by set, hash-set, list-push and the object
+     * store, 0 to disable compression. Compressed values are decompressed by get, multi-get,
+     * hash-get, list-pop and the object store whether compression is enabled or not.
+     */
+    @Configurable
+    @Optional
+    @Default("0")
+    private int compressionThreshold;
 
-        LOGGER.info(String.format(
-            "Redis connector ready, host: %s, port: %d, timeout: %d, password: %s, pool config: %s", host,
-            port, connectionTimeout, StringUtils.repeat("*", StringUtils.length(password)),
-            ToStringBuilder.reflectionToString(poolConfig, ToStringStyle.SHORT_PREFIX_STYLE)));
-    }
+    /**
+     * Deflate compression level, from 1 (fastest) to 9 (smallest).
+     */
+    @Configurable
+    @Optional
+    @Default("1")
+    private int compressionLevel;
 
-    @PreDestroy
-    public void destroyJedis()
-    {
-        running = false;
-        jedisPool.destroy();
-        LOGGER.info("Redis connector terminated");
-    }
+    /**
+     * Size in bytes of the chunks in which set writes stream values: a stream larger than a chunk
+     * is sent with one SET and as many APPEND commands as needed, so it is never held in memory
+     * as a whole.
+     */
+    @Configurable
+    @Optional
+    @Default("65536")
+    private int streamChunkSize;
 
-    /*----------------------------------------------------------
-                Datastructure Commands
-    ----------------------------------------------------------*/
+    /**
+     * If true, the commands of operations run concurrently by different threads are coalesced and
+     * written together on a single shared connection, instead of each operation borrowing its own
+     * connection from the pool.
+     */
+    @Configurable
+    @Optional
+    @Default("false")
+    private boolean autoPipelining;
 
     /**
-     * Set key to hold the payload. If key already holds a value, it is overwritten, regardless of
-     * its type as long as ifNotExists is false.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:set}
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:set-value}
-     * 
-     * @param key Key used to store payload
-     * @param expire Set a timeout on the specified key. After the timeout the key will be
-     *            automatically deleted by the server. A key with an associated timeout is said to
-     *            be volatile in Redis terminology.
-     * @param ifNotExists If true, then execute SETNX on the Redis server, otherwise execute SET
-     * @param value The value to set.
-     * @param muleEvent The current {@link MuleEvent}.
-     * @return If the key already exists and ifNotExists is true, null is returned. Otherwise the
-     *         message is returned.
+     * Maximum number of operations whose commands are written together when autoPipelining is
+     * enabled.
      */
-    @Processor
-    @Inject
-    public byte[] set(final String key,
-                      @Optional final Integer expire,
-                      @Optional @Default("false") final boolean ifNotExists,
-                      @Optional @Default("#[message.payloadAs(java.lang.String)]") final String value,
-                      final MuleEvent muleEvent)
-    {
-        return RedisUtils.run(jedisPool, new RedisAction<byte[]>()
-        {
-            @Override
-            public byte[] run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                byte[] valueAsBytes = RedisUtils.toBytes(value, muleEvent.getEncoding());
+    @Configurable
+    @Optional
+    @Default("100")
+    private int autoPipeliningBatchSize;
 
-                if (ifNotExists)
-                {
-                    if (redis.setnx(keyAsBytes, valueAsBytes) == 0)
-                    {
-                        valueAsBytes = null;
-                    }
-                }
-                else
-                {
-                    redis.set(keyAsBytes, valueAsBytes);
-                }
+    /**
+     * Time in microseconds to wait for more operations before writing commands that don't fill a
+     * batch, when autoPipelining is enabled. With the default of 0, operations issued while the
+     * previous batch is in flight are written together without any extra wait.
+     */
+    @Configurable
+    @Optional
+    @Default("0")
+    private long autoPipeliningWindow;
 
-                if (expire != null)
-                {
-                    redis.expire(keyAsBytes, expire);
-                }
+    /**
+     * Maximum number of values cached locally by get and hash-get, 0 to disable the near cache.
+     * Cached values are invalidated by messages that set and hash-set operations publish on an
+     * internal channel.
+     */
+    @Configurable
+    @Optional
+    @Default("0")
+    private int nearCacheMaxEntries;
 
-                return valueAsBytes;
-            }
-        });
-    }
+    /**
+     * Time in milliseconds during which a value can be served by the near cache, 0 for no limit. It
+     * bounds how stale a value can be if it's modified without the connector knowing, for example
+     * by another client or if it expires.
+     */
+    @Configurable
+    @Optional
+    @Default("60000")
+    private long nearCacheTtl;
 
     /**
-     * Get the value of the specified key. If the key does not exist null is returned.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:get}
-     * 
-     * @param key Key that will be used for GET
-     * @return A byte array with the content of the key
+     * Policy used to evict values when the near cache is full.
      */
-    @Processor
-    public byte[] get(final String key)
-    {
-        return RedisUtils.run(jedisPool, new RedisAction<byte[]>()
-        {
-            @Override
-            public byte[] run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                return redis.get(keyAsBytes);
-            }
-        });
-    }
+    @Configurable
+    @Optional
+    @Default("LRU")
+    private LocalCacheEviction nearCacheEviction;
 
     /**
-     * Test if the specified key exists.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:exists}
-     * 
-     * @param key Key that will be used for EXISTS
-     * @return A boolean that represents the existence of the key.
+     * Number of threads delivering the messages of subscriptions, 0 to deliver them on the thread
+     * reading them from Redis. The messages of a channel are always delivered in order, by the same
+     * thread, while different channels are delivered in parallel.
      */
-    @Processor
-    public Boolean exists(final String key)
-    {
-        return RedisUtils.run(jedisPool, new RedisAction<Boolean>()
-        {
-            @Override
-            public Boolean run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                return redis.exists(keyAsBytes);
-            }
-        });
-    }
+    @Configurable
+    @Optional
+    @Default("0")
+    private int pubSubWorkers;
 
     /**
-     * Increments the number stored at key by step. If the key does not exist, it is set to 0 before
-     * performing the operation. An error is returned if the key contains a value of the wrong type
-     * or contains data that can not be represented as integer.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:increment}
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:increment-step}
-     * 
-     * @param key Key that will be used for INCR.
-     * @param step Step used for the increment.
-     * @return the incremented number.
+     * If true, all the subscribe sources share a single connection, instead of each holding its own
+     * connection and thread. Messages are then read by a single thread, so slow flows should be
+     * given pubSubWorkers.
      */
-    @Processor
-    public Long increment(final String key, @Optional @Default("1") final long step)
-    {
-        return RedisUtils.run(jedisPool, new RedisAction<Long>()
-        {
-            @Override
-            public Long run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                return step == 1L ? redis.incr(keyAsBytes) : redis.incrBy(keyAsBytes, step);
-            }
-        });
-    }
+    @Configurable
+    @Optional
+    @Default("false")
+    private boolean sharedSubscriber;
 
-    // LATER add http://redis.io/commands/incrbyfloat when Jedis supports it
+    /**
+     * Maximum number of messages waiting to be delivered by each pub/sub worker.
+     */
+    @Configurable
+    @Optional
+    @Default("1000")
+    private int pubSubQueueCapacity;
 
     /**
-     * Decrements the number stored at key by step. If the key does not exist, it is set to 0 before
-     * performing the operation. An error is returned if the key contains a value of the wrong type
-     * or contains data that can not be represented as integer.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:decrement}
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:decrement-step}
-     * 
-     * @param key Key that will be used for DECR.
-     * @param step Step used for the increment.
-     * @return A byte array with the content of the key
+     * What to do with a message when the queue of its pub/sub worker is full.
      */
-    @Processor
-    public Long decrement(final String key, @Optional @Default("1") final long step)
-    {
-        return RedisUtils.run(jedisPool, new RedisAction<Long>()
-        {
-            @Override
-            public Long run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                return step == 1L ? redis.decr(keyAsBytes) : redis.decrBy(keyAsBytes, step);
-            }
-        });
-    }
+    @Configurable
+    @Optional
+    @Default("BLOCK")
+    private PubSubOverflow pubSubOverflow;
 
-    // ************** Hashes **************
+    /**
+     * Maximum number of entries cached locally for each object store partition, 0 to disable the
+     * object store cache. Stored values are cached when they are written or read, so repeated
+     * retrieve and contains calls don't need a round trip to Redis.
+     */
+    @Configurable
+    @Optional
+    @Default("0")
+    private int objectStoreCacheMaxEntries;
 
     /**
-     * Set the specified hash field to the message payload. If key does not exist, a new key holding
-     * a hash is created as long as ifNotExists is true.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:hash-set}
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:hash-set-value}
-     * 
-     * @param key Key that will be used for HSET
-     * @param field Field that will be used for HSET
-     * @param ifNotExists If true execute HSETNX otherwise HSET
-     * @param value The value to set.
-     * @param muleEvent The current {@link MuleEvent}.
-     * @return If the field already exists and ifNotExists is true, null is returned, otherwise if a
-     *         new field is created the message is returned.
+     * Time in milliseconds during which an object store entry can be served by the cache, 0 for no
+     * limit. It bounds how long an entry removed by another Mule instance can still be seen.
      */
-    @Processor(name = "hash-set")
-    @Inject
-    public byte[] setInHash(final String key,
-                            final String field,
-                            @Optional @Default("false") final boolean ifNotExists,
-                            @Optional @Default("#[message.payloadAs(java.lang.String)]") final String value,
-                            final MuleEvent muleEvent)
-    {
-        return RedisUtils.run(jedisPool, new RedisAction<byte[]>()
-        {
-            @Override
-            public byte[] run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                final byte[] fieldAsBytes = SafeEncoder.encode(field);
-                final byte[] valueAsBytes = RedisUtils.toBytes(value, muleEvent.getEncoding());
+    @Configurable
+    @Optional
+    @Default("60000")
+    private long objectStoreCacheTtl;
 
-                if (ifNotExists)
-                {
-                    if (redis.hsetnx(keyAsBytes, fieldAsBytes, valueAsBytes) == 0)
-                    {
-                        return null;
-                    }
-                }
-                else
-                {
-                    redis.hset(keyAsBytes, fieldAsBytes, valueAsBytes);
-                }
+    /**
+     * Policy used to evict entries when the cache of an object store partition is full.
+     */
+    @Configurable
+    @Optional
+    @Default("LRU")
+    private LocalCacheEviction objectStoreCacheEviction;
 
-                return valueAsBytes;
-            }
-        });
-    }
+    /**
+     * Time to live in milliseconds of the object store entries, 0 for entries that never expire.
+     * Along with objectStoreMaxEntries, enables a background reaper that removes the expired
+     * entries of all the partitions every objectStoreExpirationInterval milliseconds. Entries are
+     * only indexed by insertion time, which expiry needs, when one of them is set.
+     */
+    @Configurable
+    @Optional
+    @Default("0")
+    private long objectStoreEntryTtl;
 
     /**
-     * Get the value stored at the specified field in the hash at the specified key. If the field or
-     * the hash don't exist, null is returned.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:hash-get}
-     * 
-     * @param key Key that will be used for HGET
-     * @param field Field that will be used for HGET
-     * @return The value or null.
+     * Maximum number of entries of each object store partition, 0 for no limit: the reaper removes
+     * the oldest entries beyond this limit.
      */
-    @Processor(name = "hash-get")
-    public byte[] getFromHash(final String key, final String field)
-    {
-        return RedisUtils.run(jedisPool, new RedisAction<byte[]>()
-        {
-            @Override
-            public byte[] run()
+    @Configurable
+    @Optional
+    @Default("0")
+    private int objectStoreMaxEntries;
+
+    /**
+     * Interval in milliseconds between two runs of the object store reaper.
+     */
+    @Configurable
+    @Optional
+    @Default("60000")
+    private long objectStoreExpirationInterval;
+
+    /**
+     * Maximum number of entries removed from a partition by each expiry command, which blocks the
+     * server while it runs.
+     */
+    @Configurable
+    @Optional
+    @Default("500")
+    private int objectStoreExpiryBatchSize;
+
+    /**
+     * Maximum number of expiry commands run on a partition each time it expires: entries beyond
+     * objectStoreExpiryBatchSize * objectStoreExpiryMaxBatches are removed by the next expiries.
+     */
+    @Configurable
+    @Optional
+    @Default("20")
+    private int objectStoreExpiryMaxBatches;
+
+    /**
+     * Maximum number of entries sent in a single command by the bulk object store operations:
+     * larger batches are split into several commands, so none of them blocks the server for long.
+     */
+    @Configurable
+    @Optional
+    @Default("500")
+    private int objectStoreBulkChunkSize;
+
+    /**
+     * Number of hashes each object store partition is split into, 1 to keep each partition in a
+     * single hash. Entries are spread over the buckets by key, so a busy partition doesn't become a
+     * single huge key, and its buckets can live on different cluster nodes or shards. Must not be
+     * changed once partitions hold entries: they would be looked up in the wrong buckets.
+     */
+    @Configurable
+    @Optional
+    @Default("1")
+    private int objectStoreBuckets;
+
+    /**
+     * Number of keys each object store partition is expected to hold, 0 to disable the Bloom
+     * filters. When enabled, each checked partition gets a local Bloom filter that lets contains
+     * answer most absent keys, like the new message ids checked by idempotent filters, without a
+     * round trip to Redis.
+     */
+    @Configurable
+    @Optional
+    @Default("0")
+    private long objectStoreBloomFilterExpectedEntries;
+
+    /**
+     * False positive rate of a Bloom filter holding objectStoreBloomFilterExpectedEntries keys: the
+     * share of absent keys that are still checked in Redis. It grows if partitions hold more keys.
+     */
+    @Configurable
+    @Optional
+    @Default("0.01")
+    private double objectStoreBloomFilterFalsePositiveRate;
+
+    /**
+     * Interval in milliseconds between two rebuilds of the Bloom filters from the keys in Redis,
+     * which forget the removed keys and learn the keys stored by other Mule instances. Until the
+     * next rebuild, contains returns false for a key stored by another instance.
+     */
+    @Configurable
+    @Optional
+    @Default("60000")
+    private long objectStoreBloomFilterSyncInterval;
+
+    /**
+     * Must be true for the Bloom filters to be enabled, to acknowledge that contains returns false
+     * for the keys stored by other Mule instances until the next rebuild. Only safe if this Mule
+     * instance is the only one storing keys in the object store, or if treating such keys as new,
+     * like accepting a duplicate message in an idempotent filter, is tolerable.
+     */
+    @Configurable
+    @Optional
+    @Default("false")
+    private boolean objectStoreBloomFilterSingleWriter;
+
+    /**
+     * Nodes of a Redis Cluster, as host:port strings. If set, the connector runs in cluster mode:
+     * the other nodes are discovered from these ones, and each operation is sent to the node
+     * serving the slot of its key. Host, port, read replicas and auto-pipelining are then ignored.
+     */
+    @Configurable
+    @Optional
+    private List<String> clusterNodes;
+
+    /**
+     * Standalone Redis nodes, as host:port strings, over which keys are distributed with
+     * consistent hashing. If set, host, port, read replicas and auto-pipelining are ignored.
+     */
+    @Configurable
+    @Optional
+    private List<String> shards;
+
+    /**
+     * Redis Sentinels, as host:port strings, from which the address of the master is discovered.
+     * If set, host and port are ignored and the connector follows the master when it fails over.
+     */
+    @Configurable
+    @Optional
+    private List<String> sentinels;
+
+    /**
+     * Name under which the sentinels monitor the master.
+     */
+    @Configurable
+    @Optional
+    @Default("mymaster")
+    private String masterName;
+
+    /**
+     * Replicas, as host:port strings, to which read-only operations are routed. The password,
+     * connection timeout and pool configuration of the master are used for the replicas too. If
+     * the near cache is enabled, get and hash-get still read from the master: a lagging replica
+     * could return a value older than a write whose invalidation has already been received, and
+     * that value would be cached until it expires.
+     */
+    @Configurable
+    @Optional
+    private List<String> readReplicas;
+
+    /**
+     * How a replica is selected for each read-only operation.
+     */
+    @Configurable
+    @Optional
+    @Default("ROUND_ROBIN")
+    private ReadReplicaSelection readReplicaSelection;
+
+    /**
+     * If true, read-only operations that fail to reach a replica are retried on the master.
+     */
+    @Configurable
+    @Optional
+    @Default("false")
+    private boolean readFallbackToMaster;
+
+    /**
+     * If set, the latency of each operation and the statistics of the connection pools are
+     * collected and published as MBeans, in the org.mule.module.redis domain, with this name as
+     * their config key.
+     */
+    @Configurable
+    @Optional
+    private String metricsName;
+
+    public static enum ReadReplicaSelection
+    {
+        /**
+         * Use each replica in turn.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Use the replica with the least operations in progress.
+         */
+        LEAST_LOADED;
+    }
+
+    public static enum LocalCacheEviction
+    {
+        /**
+         * Evict the least recently used value.
+         */
+        LRU,
+
+        /**
+         * Evict the least frequently used of the oldest values.
+         */
+        LFU;
+    }
+
+    public static enum PubSubOverflow
+    {
+        /**
+         * Stop reading messages until the worker catches up: Redis buffers them meanwhile, and
+         * disconnects the subscriber if its client-output-buffer-limit is reached.
+         */
+        BLOCK,
+
+        /**
+         * Drop the oldest message waiting for the worker.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Drop the message just received.
+         */
+        DROP_NEWEST;
+    }
+
+    private MuleContext muleContext;
+    private volatile JedisPool jedisPool;
+    private RedisMetrics redisMetrics;
+    private RedisCompressor compressor;
+    private RedisSentinels redisSentinels;
+    private RedisCommandCoalescer commandCoalescer;
+    private RedisReadReplicas redisReadReplicas;
+    private RedisKeyRouter keyRouter;
+    private ExecutorService fanOutExecutor;
+    private RedisLocalCache<String, byte[]> nearCache;
+    private RedisPubSubDispatcher pubSubDispatcher;
+    private ScheduledExecutorService pubSubBatchFlusher;
+    private RedisSubscriptionManager subscriptionManager;
+    private ScheduledExecutorService objectStoreReaper;
+    private RedisBloomFilters objectStoreBloomFilters;
+    private final ConcurrentMap<String, RedisLocalCache<Serializable, byte[]>> objectStoreCaches = new ConcurrentHashMap<String, RedisLocalCache<Serializable, byte[]>>();
+
+    private final Set<RedisPubSubListener> activeListeners = Collections.synchronizedSet(new HashSet<RedisPubSubListener>());
+
+    private volatile boolean running = true;
+
+    /*----------------------------------------------------------
+                Lifecycle Implementation
+    ----------------------------------------------------------*/
+    @PostConstruct
+    public void initializeJedis()
+    {
+        if (streamChunkSize < 1)
+        {
+            throw new IllegalArgumentException("Stream chunk size must be strictly positive, got: "
+                                               + streamChunkSize);
+        }
+
+        if (scanCount < 1)
+        {
+            throw new IllegalArgumentException("Scan count must be strictly positive, got: " + scanCount);
+        }
+
+        if ((objectStoreExpiryBatchSize < 1) || (objectStoreExpiryMaxBatches < 1))
+        {
+            throw new IllegalArgumentException("Object store expiry batch size and max batches must be strictly positive, got: "
+                                               + objectStoreExpiryBatchSize + " and " + objectStoreExpiryMaxBatches);
+        }
+
+        if (objectStoreBulkChunkSize < 1)
+        {
+            throw new IllegalArgumentException("Object store bulk chunk size must be strictly positive, got: "
+                                               + objectStoreBulkChunkSize);
+        }
+
+        if (objectStoreBuckets < 1)
+        {
+            throw new IllegalArgumentException("Object store buckets must be strictly positive, got: "
+                                               + objectStoreBuckets);
+        }
+
+        if ((objectStoreBloomFilterExpectedEntries > 0L) && (!objectStoreBloomFilterSingleWriter))
+        {
+            throw new IllegalArgumentException("Object store Bloom filters miss the keys stored by other Mule instances "
+                                               + "until they are rebuilt, set objectStoreBloomFilterSingleWriter to true to use them");
+        }
+
+        compressor = new RedisCompressor(compressionThreshold, compressionLevel);
+
+        if (pubSubWorkers > 0)
+        {
+            pubSubDispatcher = new RedisPubSubDispatcher(pubSubWorkers, pubSubQueueCapacity, pubSubOverflow);
+        }
+
+        if (objectStoreBloomFilterExpectedEntries > 0L)
+        {
+            objectStoreBloomFilters = newObjectStoreBloomFilters();
+        }
+
+        if (StringUtils.isNotBlank(metricsName))
+        {
+            redisMetrics = new RedisMetrics(metricsName);
+            redisMetrics.addMBean("Compression", compressor, RedisCompressionMetricsMBean.class);
+            if (objectStoreBloomFilters != null)
+            {
+                redisMetrics.addMBean("BloomFilter", objectStoreBloomFilters, RedisBloomFilterMetricsMBean.class);
+            }
+            if (pubSubDispatcher != null)
+            {
+                redisMetrics.addMBean("PubSubDispatcher", pubSubDispatcher, RedisPubSubDispatcherMetricsMBean.class);
+            }
+            redisMetrics.register();
+        }
+
+        if (objectStoreBloomFilters != null)
+        {
+            objectStoreBloomFilters.start(objectStoreBloomFilterSyncInterval);
+        }
+
+        if (pubSubDispatcher != null)
+        {
+            pubSubDispatcher.start();
+        }
+
+        if ((objectStoreEntryTtl > 0L) || (objectStoreMaxEntries > 0))
+        {
+            startObjectStoreReaper();
+        }
+
+        if ((clusterNodes != null) && (!clusterNodes.isEmpty()))
+        {
+            final RedisCluster redisCluster = new RedisCluster(clusterNodes, poolConfig, connectionTimeout, password,
+                redisMetrics);
+            redisCluster.refreshSlots();
+            initializeKeyRouter(redisCluster, "cluster nodes: " + clusterNodes);
+            return;
+        }
+
+        if ((shards != null) && (!shards.isEmpty()))
+        {
+            initializeKeyRouter(new RedisShards(shards, poolConfig, connectionTimeout, password, redisMetrics),
+                "shards: " + shards);
+            return;
+        }
+
+        String masterAddress = host + ":" + port;
+
+        if ((sentinels != null) && (!sentinels.isEmpty()))
+        {
+            redisSentinels = new RedisSentinels(sentinels, masterName, connectionTimeout, reconnectionFrequency);
+            masterAddress = redisSentinels.discoverMasterAddress();
+        }
+
+        jedisPool = newJedisPool(masterAddress);
+
+        if (objectStoreBuckets > 1)
+        {
+            // walks and deletes the buckets of a partition, which all live on this node
+            fanOutExecutor = newFanOutExecutor(1);
+        }
+
+        if ((readReplicas != null) && (!readReplicas.isEmpty()))
+        {
+            redisReadReplicas = new RedisReadReplicas(readReplicas, readReplicaSelection, poolConfig,
+                connectionTimeout, password, redisMetrics);
+            LOGGER.info(String.format("Routing read-only operations to replicas: %s, selection: %s",
+                readReplicas, readReplicaSelection));
+        }
+
+        if (autoPipelining)
+        {
+            commandCoalescer = new RedisCommandCoalescer(jedisPool, autoPipeliningBatchSize,
+                autoPipeliningWindow);
+            commandCoalescer.start();
+        }
+
+        if (nearCacheMaxEntries > 0)
+        {
+            nearCache = new RedisLocalCache<String, byte[]>(nearCacheMaxEntries, nearCacheTtl, nearCacheEviction);
+            startNearCacheInvalidator();
+        }
+
+        if (redisSentinels != null)
+        {
+            redisSentinels.start(masterAddress, new RedisSentinels.MasterListener()
+            {
+                @Override
+                public void onMasterSwitch(final String newMasterAddress)
+                {
+                    switchMaster(newMasterAddress);
+                }
+            });
+        }
+
+        LOGGER.info(String.format(
+            "Redis connector ready, master: %s, timeout: %d, password: %s, pool config: %s", masterAddress,
+            connectionTimeout, StringUtils.repeat("*", StringUtils.length(password)),
+            ToStringBuilder.reflectionToString(poolConfig, ToStringStyle.SHORT_PREFIX_STYLE)));
+    }
+
+    /**
+     * @param nodes the number of nodes the tasks run on: a node runs its commands one at a time, so
+     *            more threads would only make the tasks wait on it.
+     */
+    private ExecutorService newFanOutExecutor(final int nodes)
+    {
+        return Executors.newFixedThreadPool(nodes, new ThreadFactory()
+        {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, "redis-fan-out-" + threadCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private JedisPool newJedisPool(final String address)
+    {
+        return RedisUtils.newJedisPool(poolConfig, address, connectionTimeout, password, redisMetrics);
+    }
+
+    /**
+     * Moves all the operations to a new master: the next ones borrow connections from a new pool
+     * while the ones in progress complete or fail on their current connection, which is discarded
+     * when returned to the old pool. Pipelines in progress fail rather than sending their next
+     * operations to the new master. Subscribers are disconnected so that they subscribe again on
+     * the new master.
+     */
+    void switchMaster(final String newMasterAddress)
+    {
+        final JedisPool oldJedisPool = jedisPool;
+        RedisPipeline.retire(oldJedisPool);
+        jedisPool = newJedisPool(newMasterAddress);
+
+        if (commandCoalescer != null)
+        {
+            commandCoalescer.setJedisPool(jedisPool);
+        }
+
+        unsubscribeActiveListeners();
+        oldJedisPool.destroy();
+    }
+
+    private void initializeKeyRouter(final RedisKeyRouter router, final String nodesDescription)
+    {
+        keyRouter = router;
+        // operations that aren't related to a key, like pub/sub, use the first node
+        jedisPool = keyRouter.getPools().get(0);
+        fanOutExecutor = newFanOutExecutor(keyRouter.getPools().size());
+
+        if (((readReplicas != null) && (!readReplicas.isEmpty())) || autoPipelining)
+        {
+            LOGGER.warn("Read replicas and auto-pipelining are not supported with several nodes, ignoring them");
+        }
+
+        // the nodes of the nested operations are only known once they run
+        LOGGER.warn("Pipeline scopes are not supported with several nodes: their operations run one by one, "
+                    + "each paying a network round trip");
+
+        if (nearCacheMaxEntries > 0)
+        {
+            nearCache = new RedisLocalCache<String, byte[]>(nearCacheMaxEntries, nearCacheTtl, nearCacheEviction);
+            startNearCacheInvalidator();
+        }
+
+        LOGGER.info(String.format("Redis connector ready, %s, timeout: %d, password: %s, pool config: %s",
+            nodesDescription, connectionTimeout, StringUtils.repeat("*", StringUtils.length(password)),
+            ToStringBuilder.reflectionToString(poolConfig, ToStringStyle.SHORT_PREFIX_STYLE)));
+    }
+
+    @PreDestroy
+    public void destroyJedis()
+    {
+        running = false;
+
+        if (objectStoreReaper != null)
+        {
+            objectStoreReaper.shutdownNow();
+        }
+
+        if (objectStoreBloomFilters != null)
+        {
+            objectStoreBloomFilters.stop();
+            LOGGER.info("Object store Bloom filter statistics: " + objectStoreBloomFilters);
+        }
+
+        if (redisSentinels != null)
+        {
+            redisSentinels.stop();
+        }
+
+        unsubscribeActiveListeners();
+
+        synchronized (this)
+        {
+            if (pubSubBatchFlusher != null)
+            {
+                pubSubBatchFlusher.shutdownNow();
+            }
+        }
+
+        if (pubSubDispatcher != null)
+        {
+            pubSubDispatcher.stop();
+            LOGGER.info("Pub/sub dispatcher statistics: " + pubSubDispatcher);
+        }
+
+        if (commandCoalescer != null)
+        {
+            commandCoalescer.stop();
+        }
+
+        if (nearCache != null)
+        {
+            LOGGER.info("Near cache statistics: " + nearCache);
+        }
+
+        if (compressor.getThreshold() > 0)
+        {
+            LOGGER.info("Compression statistics: " + compressor);
+        }
+
+        if (redisReadReplicas != null)
+        {
+            redisReadReplicas.destroy();
+        }
+
+        if (fanOutExecutor != null)
+        {
+            fanOutExecutor.shutdownNow();
+        }
+
+        if (keyRouter != null)
+        {
+            // the router owns the pools of all the nodes
+            keyRouter.destroy();
+        }
+        else
+        {
+            jedisPool.destroy();
+        }
+
+        if (redisMetrics != null)
+        {
+            redisMetrics.unregister();
+        }
+
+        LOGGER.info("Redis connector terminated");
+    }
+
+    /*----------------------------------------------------------
+                Datastructure Commands
+    ----------------------------------------------------------*/
+
+    /**
+     * Set key to hold the payload. If key already holds a value, it is overwritten, regardless of
+     * its type as long as ifNotExists is false.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:set}
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:set-value}
+     * 
+     * @param key Key used to store payload
+     * @param expire Set a timeout on the specified key. After the timeout the key will be
+     *            automatically deleted by the server. A key with an associated timeout is said to
+     *            be volatile in Redis terminology.
+     * @param ifNotExists If true, then execute SETNX on the Redis server, otherwise execute SET
+     * @param value The value to set: byte arrays, byte buffers and streams are stored as-is,
+     *            strings and any other value with the encoding of the event.
+     * @param muleEvent The current {@link MuleEvent}.
+     * @return If the key already exists and ifNotExists is true, null is returned. Otherwise the
+     *         written value is returned as a byte array, except for a stream larger than
+     *         streamChunkSize bytes: as it isn't held in memory, the stream itself is returned,
+     *         consumed.
+     * @throws Exception if the value can't be read or transformed to a string.
+     */
+    @Processor
+    @Inject
+    public Object set(final String key,
+                      @Optional final Integer expire,
+                      @Optional @Default("false") final boolean ifNotExists,
+                      @Optional @Default("#[payload]") final Object value,
+                      final MuleEvent muleEvent) throws Exception
+    {
+        if (value instanceof InputStream)
+        {
+            final InputStream stream = (InputStream) value;
+            try
+            {
+                final byte[] firstChunk = new byte[streamChunkSize];
+                final int length = RedisUtils.readChunk(stream, firstChunk);
+
+                if (length == firstChunk.length)
+                {
+                    return setStream(key, expire, ifNotExists, firstChunk, stream) == null ? null : value;
+                }
+                return setBytes(key, expire, ifNotExists, Arrays.copyOf(firstChunk, length));
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+
+        return setBytes(key, expire, ifNotExists, toBytes(value, muleEvent));
+    }
+
+    private byte[] setBytes(final String key,
+                            final Integer expire,
+                            final boolean ifNotExists,
+                            final byte[] valueAsBytes)
+    {
+        final byte[] storedValue = compress(valueAsBytes);
+
+        return run(key, new QueueableRedisAction<byte[]>("set")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+
+                if (ifNotExists)
+                {
+                    client.setnx(keyAsBytes, storedValue);
+                }
+                else
+                {
+                    client.set(keyAsBytes, storedValue);
+                }
+
+                int commands = 1;
+
+                if (expire != null)
+                {
+                    client.expire(keyAsBytes, expire);
+                    commands++;
+                }
+
+                return commands + queueNearCacheInvalidation(client, RedisUtils.getNearCacheKey(key));
+            }
+
+            @Override
+            public byte[] fromReplies(final List<Object> replies)
+            {
+                final Object setReply = RedisUtils.checkReply(replies.get(0));
+
+                if (expire != null)
+                {
+                    RedisUtils.checkReply(replies.get(1));
+                }
+
+                if (ifNotExists && ((Long) setReply) == 0)
+                {
+                    return null;
+                }
+
+                return valueAsBytes;
+            }
+        });
+    }
+
+    /**
+     * Sets the key to a stream larger than a chunk, one chunk at a time, in a MULTI block so that
+     * the partial value is never visible. Streamed values aren't compressed. With ifNotExists, the
+     * key is watched so that the block is discarded if the key is created meanwhile.
+     */
+    private Long setStream(final String key,
+                           final Integer expire,
+                           final boolean ifNotExists,
+                           final byte[] firstChunk,
+                           final InputStream stream) throws IOException
+    {
+        final IOException[] readFailure = new IOException[1];
+
+        final Long length = run(key, new RedisAction<Long>("set")
+        {
+            private boolean streaming;
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Long run()
+            {
+                if (streaming)
+                {
+                    // the stream can't be rewound to retry the operation on another node
+                    throw new JedisException("Can't resend the streamed value of key: " + key);
+                }
+
+                final Client client = redis.getClient();
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+
+                if (ifNotExists)
+                {
+                    client.watch(keyAsBytes);
+                    client.exists(keyAsBytes);
+                    final List<Object> replies = RedisUtils.readReplies(client, 2);
+                    RedisUtils.checkReply(replies.get(0));
+
+                    if (RedisUtils.toBooleanReply(replies.get(1)))
+                    {
+                        client.unwatch();
+                        RedisUtils.checkReply(client.getOne());
+                        return null;
+                    }
+                }
+
+                streaming = true;
+                client.multi();
+                client.set(keyAsBytes, firstChunk);
+                int commands = 2;
+                long length = firstChunk.length;
+
+                try
+                {
+                    // the chunk is written to the socket by the time append returns, so it's reused
+                    int read;
+                    while ((read = RedisUtils.readChunk(stream, firstChunk)) > 0)
+                    {
+                        final byte[] chunk = read == firstChunk.length ? firstChunk : Arrays.copyOf(firstChunk, read);
+                        client.append(keyAsBytes, chunk);
+                        commands++;
+                        length += read;
+                    }
+                }
+                catch (final IOException ioe)
+                {
+                    readFailure[0] = ioe;
+                    client.discard();
+                    RedisUtils.readReplies(client, commands + 1);
+                    return null;
+                }
+
+                if (expire != null)
+                {
+                    client.expire(keyAsBytes, expire);
+                    commands++;
+                }
+
+                client.exec();
+                final int invalidations = queueNearCacheInvalidation(client, RedisUtils.getNearCacheKey(key));
+                final List<Object> replies = RedisUtils.readReplies(client, commands + 1 + invalidations);
+                final int execReplyIndex = replies.size() - 1 - invalidations;
+
+                // the replies of MULTI and of the queued commands
+                for (int i = 0; i < execReplyIndex; i++)
+                {
+                    RedisUtils.checkReply(replies.get(i));
+                }
+
+                final List<Object> execReplies = (List<Object>) RedisUtils.checkReply(replies.get(execReplyIndex));
+                if (execReplies == null)
+                {
+                    // the watched key has been created meanwhile
+                    return null;
+                }
+
+                for (final Object reply : execReplies)
+                {
+                    RedisUtils.checkReply(reply);
+                }
+                return length;
+            }
+        });
+
+        if (readFailure[0] != null)
+        {
+            throw readFailure[0];
+        }
+        return length;
+    }
+
+    /**
+     * Get the value of the specified key. If the key does not exist null is returned.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:get}
+     * 
+     * @param key Key that will be used for GET
+     * @return A byte array with the content of the key
+     */
+    @Processor
+    public byte[] get(final String key)
+    {
+        final String cacheKey = RedisUtils.getNearCacheKey(key);
+        final byte[] cachedValue = getNearCached(cacheKey);
+        if (cachedValue != null)
+        {
+            return cachedValue;
+        }
+
+        return runNearCachedRead(key, new QueueableRedisAction<byte[]>("get")
+        {
+            private Object cacheToken;
+
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                cacheToken = startNearCacheRead(cacheKey);
+                client.get(keyAsBytes);
+                return 1;
+            }
+
+            @Override
+            public byte[] fromReplies(final List<Object> replies)
+            {
+                return putNearCached(cacheKey, decompress(RedisUtils.toBulkReply(replies.get(0))), cacheToken);
+            }
+        });
+    }
+
+    /**
+     * Get the value of the specified key as a stream that fetches it by chunks of chunkSize bytes
+     * with GETRANGE as it is read, so that a large value is never held in memory as a whole.
+     * Compressed values are decompressed as they are read. If the key does not exist null is
+     * returned.
+     * <p/>
+     * The value is fetched in several round trips: reading the stream fails if the length of the
+     * value changes meanwhile, but not if it is overwritten with a value of the same length.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:get-stream}
+     * 
+     * @param key Key that will be used for GETRANGE
+     * @param chunkSize The number of bytes fetched by each GETRANGE.
+     * @param readAhead The number of chunks fetched in each round trip.
+     * @return A stream over the content of the key
+     * @throws IOException if the value is compressed and can't be decompressed.
+     */
+    @Processor(name = "get-stream")
+    public InputStream getAsStream(final String key,
+                                   @Optional @Default("65536") final int chunkSize,
+                                   @Optional @Default("4") final int readAhead) throws IOException
+    {
+        if (chunkSize < MIN_STREAM_CHUNK_SIZE)
+        {
+            throw new IllegalArgumentException("Chunk size must be at least " + MIN_STREAM_CHUNK_SIZE
+                                               + " bytes, got: " + chunkSize);
+        }
+        validateBatchSize(readAhead);
+
+        final byte[] keyAsBytes = SafeEncoder.encode(key);
+        final List<Object> firstReplies = fetchRanges(keyAsBytes, 0L, chunkSize, readAhead);
+
+        if (!RedisUtils.toBooleanReply(firstReplies.get(0)))
+        {
+            return null;
+        }
+
+        final long length = RedisUtils.toIntegerReply(firstReplies.get(1));
+        final List<byte[]> firstChunks = new ArrayList<byte[]>(readAhead);
+
+        for (final Object reply : firstReplies.subList(2, firstReplies.size()))
+        {
+            // ranges past the end of the value are empty
+            final byte[] chunk = RedisUtils.toBulkReply(reply);
+            if (chunk.length > 0)
+            {
+                firstChunks.add(chunk);
+            }
+        }
+
+        final InputStream stream = newRangeStream(keyAsBytes, length, chunkSize, readAhead, firstChunks);
+
+        if ((!firstChunks.isEmpty()) && (RedisCompressor.isCompressed(firstChunks.get(0))))
+        {
+            return RedisCompressor.decompress(stream);
+        }
+        return stream;
+    }
+
+    /**
+     * @return a stream over the value of the key, fetching the chunks that follow the first ones
+     *         with GETRANGE as it is read, which fails if the length of the value changes.
+     */
+    private InputStream newRangeStream(final byte[] keyAsBytes,
+                                       final long length,
+                                       final int chunkSize,
+                                       final int readAhead,
+                                       final List<byte[]> firstChunks)
+    {
+        return new RedisRangeInputStream(length, chunkSize, readAhead, firstChunks)
+        {
+            @Override
+            protected List<byte[]> fetch(final long offset, final int count)
+            {
+                final List<Object> replies = fetchRanges(keyAsBytes, offset, chunkSize, count);
+
+                if (RedisUtils.toIntegerReply(replies.get(1)) != length)
+                {
+                    return null;
+                }
+
+                final List<byte[]> chunks = new ArrayList<byte[]>(count);
+                for (final Object reply : replies.subList(2, replies.size()))
+                {
+                    chunks.add(RedisUtils.toBulkReply(reply));
+                }
+                return chunks;
+            }
+        };
+    }
+
+    /**
+     * @return the replies to EXISTS, STRLEN and count GETRANGE of chunkSize bytes from offset, run
+     *         in a MULTI block so that they see the same value.
+     */
+    private List<Object> fetchRanges(final byte[] key, final long offset, final int chunkSize, final int count)
+    {
+        return runRead(key, new RedisAction<List<Object>>("get-stream")
+        {
+            @Override
+            @SuppressWarnings("unchecked")
+            public List<Object> run()
+            {
+                final Client client = redis.getClient();
+                client.multi();
+                client.exists(key);
+                client.strlen(key);
+
+                for (int i = 0; i < count; i++)
+                {
+                    final long start = offset + (long) i * chunkSize;
+                    client.getrange(key, start, start + chunkSize - 1);
+                }
+
+                client.exec();
+
+                // the replies of MULTI, of the queued commands and of EXEC
+                final List<Object> replies = RedisUtils.readReplies(client, count + 4);
+                for (final Object reply : replies)
+                {
+                    RedisUtils.checkReply(reply);
+                }
+                return (List<Object>) replies.get(replies.size() - 1);
+            }
+        });
+    }
+
+    /**
+     * Set several keys to their respective values. Values are sent with MSET commands of up to
+     * batchSize keys each, all of them in a single round trip. Each MSET is atomic but the whole
+     * operation is not if it spans several batches.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:multi-set}
+     *
+     * @param values The values to set, by key, by default the message payload: byte arrays, byte
+     *            buffers and streams are stored as-is, strings and any other value with the
+     *            encoding of the event.
+     * @param batchSize The maximum number of keys set by a single MSET command.
+     * @param muleEvent The current {@link MuleEvent}.
+     * @return The values that have been set.
+     * @throws Exception if a value can't be read or transformed to a string.
+     */
+    @Processor(name = "multi-set")
+    @Inject
+    public Map<String, Object> multiSet(@Optional @Default("#[payload]") final Map<String, Object> values,
+                                        @Optional @Default("1000") final int batchSize,
+                                        final MuleEvent muleEvent) throws Exception
+    {
+        validateBatchSize(batchSize);
+
+        final Map<String, byte[]> storedValues = new LinkedHashMap<String, byte[]>();
+        for (final Entry<String, Object> value : values.entrySet())
+        {
+            storedValues.put(value.getKey(), compress(toBytes(value.getValue(), muleEvent)));
+        }
+
+        if (keyRouter == null)
+        {
+            return run(newMultiSetAction(values, storedValues, batchSize));
+        }
+
+        // keys routed to different nodes or slots must be set by different commands
+        final List<String> keys = new ArrayList<String>(storedValues.keySet());
+        for (final List<Integer> routeIndexes : RedisUtils.getIndexesByRoute(keys, keyRouter).values())
+        {
+            final Map<String, byte[]> routeValues = new LinkedHashMap<String, byte[]>();
+            for (final Integer index : routeIndexes)
+            {
+                routeValues.put(keys.get(index), storedValues.get(keys.get(index)));
+            }
+            run(keys.get(routeIndexes.get(0)), newMultiSetAction(values, routeValues, batchSize));
+        }
+        return values;
+    }
+
+    /**
+     * @param values the values returned once set.
+     * @param storedValues the values to send, by key.
+     */
+    private QueueableRedisAction<Map<String, Object>> newMultiSetAction(final Map<String, Object> values,
+                                                                      final Map<String, byte[]> storedValues,
+                                                                      final int batchSize)
+    {
+        return new QueueableRedisAction<Map<String, Object>>("multi-set")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final List<byte[]> keysAndValues = new ArrayList<byte[]>(2 * Math.min(storedValues.size(), batchSize));
+                int commands = 0;
+
+                for (final Entry<String, byte[]> storedValue : storedValues.entrySet())
+                {
+                    keysAndValues.add(SafeEncoder.encode(storedValue.getKey()));
+                    keysAndValues.add(storedValue.getValue());
+
+                    if (keysAndValues.size() == 2 * batchSize)
+                    {
+                        client.mset(keysAndValues.toArray(new byte[keysAndValues.size()][]));
+                        keysAndValues.clear();
+                        commands++;
+                    }
+                }
+
+                if (!keysAndValues.isEmpty())
+                {
+                    client.mset(keysAndValues.toArray(new byte[keysAndValues.size()][]));
+                    commands++;
+                }
+
+                for (final String key : storedValues.keySet())
+                {
+                    commands += queueNearCacheInvalidation(client, RedisUtils.getNearCacheKey(key));
+                }
+
+                return commands;
+            }
+
+            @Override
+            public Map<String, Object> fromReplies(final List<Object> replies)
+            {
+                for (final Object reply : replies)
+                {
+                    RedisUtils.checkReply(reply);
+                }
+                return values;
+            }
+        };
+    }
+
+    /**
+     * Get the values of several keys. Keys are sent with MGET commands of up to batchSize keys
+     * each, all of them in a single round trip.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:multi-get}
+     *
+     * @param keys The keys to get, by default the message payload.
+     * @param batchSize The maximum number of keys read by a single MGET command.
+     * @return A list with the value of each key as a byte array, or null if the key does not
+     *         exist, in the same order as the keys.
+     */
+    @Processor(name = "multi-get")
+    public List<byte[]> multiGet(@Optional @Default("#[payload]") final List<String> keys,
+                                 @Optional @Default("1000") final int batchSize)
+    {
+        validateBatchSize(batchSize);
+
+        if (keyRouter == null)
+        {
+            return runRead(newMultiGetAction(keys, batchSize));
+        }
+
+        // keys routed to different nodes or slots must be read by different commands
+        final List<byte[]> values = new ArrayList<byte[]>(Collections.<byte[]> nCopies(keys.size(), null));
+        for (final List<Integer> routeIndexes : RedisUtils.getIndexesByRoute(keys, keyRouter).values())
+        {
+            final List<String> routeKeys = new ArrayList<String>(routeIndexes.size());
+            for (final Integer index : routeIndexes)
+            {
+                routeKeys.add(keys.get(index));
+            }
+
+            final List<byte[]> routeValues = runRead(routeKeys.get(0), newMultiGetAction(routeKeys, batchSize));
+            for (int i = 0; i < routeIndexes.size(); i++)
+            {
+                values.set(routeIndexes.get(i), routeValues.get(i));
+            }
+        }
+        return values;
+    }
+
+    private QueueableRedisAction<List<byte[]>> newMultiGetAction(final List<String> keys, final int batchSize)
+    {
+        return new QueueableRedisAction<List<byte[]>>("multi-get")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                int commands = 0;
+
+                for (int start = 0; start < keys.size(); start += batchSize)
+                {
+                    final List<String> batch = keys.subList(start, Math.min(start + batchSize, keys.size()));
+                    final byte[][] keysAsBytes = new byte[batch.size()][];
+                    for (int i = 0; i < keysAsBytes.length; i++)
+                    {
+                        keysAsBytes[i] = SafeEncoder.encode(batch.get(i));
+                    }
+                    client.mget(keysAsBytes);
+                    commands++;
+                }
+
+                return commands;
+            }
+
+            @Override
+            public List<byte[]> fromReplies(final List<Object> replies)
+            {
+                final List<byte[]> values = new ArrayList<byte[]>(keys.size());
+                for (final Object reply : replies)
+                {
+                    for (final byte[] value : RedisUtils.toMultiBulkReply(reply))
+                    {
+                        values.add(decompress(value));
+                    }
+                }
+                return values;
+            }
+        };
+    }
+
+    /**
+     * Test if the specified key exists.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:exists}
+     * 
+     * @param key Key that will be used for EXISTS
+     * @return A boolean that represents the existence of the key.
+     */
+    @Processor
+    public Boolean exists(final String key)
+    {
+        return runRead(key, new QueueableRedisAction<Boolean>("exists")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                client.exists(keyAsBytes);
+                return 1;
+            }
+
+            @Override
+            public Boolean fromReplies(final List<Object> replies)
+            {
+                return RedisUtils.toBooleanReply(replies.get(0));
+            }
+        });
+    }
+
+    /**
+     * Increments the number stored at key by step. If the key does not exist, it is set to 0 before
+     * performing the operation. An error is returned if the key contains a value of the wrong type
+     * or contains data that can not be represented as integer.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:increment}
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:increment-step}
+     * 
+     * @param key Key that will be used for INCR.
+     * @param step Step used for the increment.
+     * @return the incremented number.
+     */
+    @Processor
+    public Long increment(final String key, @Optional @Default("1") final long step)
+    {
+        return run(key, new QueueableRedisAction<Long>("increment")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                if (step == 1L)
+                {
+                    client.incr(keyAsBytes);
+                }
+                else
+                {
+                    client.incrBy(keyAsBytes, step);
+                }
+                return 1 + queueNearCacheInvalidation(client, RedisUtils.getNearCacheKey(key));
+            }
+
+            @Override
+            public Long fromReplies(final List<Object> replies)
+            {
+                return RedisUtils.toIntegerReply(replies.get(0));
+            }
+        });
+    }
+
+    // LATER add http://redis.io/commands/incrbyfloat when Jedis supports it
+
+    /**
+     * Decrements the number stored at key by step. If the key does not exist, it is set to 0 before
+     * performing the operation. An error is returned if the key contains a value of the wrong type
+     * or contains data that can not be represented as integer.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:decrement}
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:decrement-step}
+     * 
+     * @param key Key that will be used for DECR.
+     * @param step Step used for the increment.
+     * @return A byte array with the content of the key
+     */
+    @Processor
+    public Long decrement(final String key, @Optional @Default("1") final long step)
+    {
+        return run(key, new QueueableRedisAction<Long>("decrement")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                if (step == 1L)
+                {
+                    client.decr(keyAsBytes);
+                }
+                else
+                {
+                    client.decrBy(keyAsBytes, step);
+                }
+                return 1 + queueNearCacheInvalidation(client, RedisUtils.getNearCacheKey(key));
+            }
+
+            @Override
+            public Long fromReplies(final List<Object> replies)
+            {
+                return RedisUtils.toIntegerReply(replies.get(0));
+            }
+        });
+    }
+
+    // ************** Hashes **************
+
+    /**
+     * Set the specified hash field to the message payload. If key does not exist, a new key holding
+     * a hash is created as long as ifNotExists is true.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:hash-set}
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:hash-set-value}
+     * 
+     * @param key Key that will be used for HSET
+     * @param field Field that will be used for HSET
+     * @param ifNotExists If true execute HSETNX otherwise HSET
+     * @param value The value to set: byte arrays, byte buffers and streams are stored as-is,
+     *            strings and any other value with the encoding of the event.
+     * @param muleEvent The current {@link MuleEvent}.
+     * @return If the field already exists and ifNotExists is true, null is returned, otherwise if a
+     *         new field is created the message is returned.
+     * @throws Exception if the value can't be read or transformed to a string.
+     */
+    @Processor(name = "hash-set")
+    @Inject
+    public byte[] setInHash(final String key,
+                            final String field,
+                            @Optional @Default("false") final boolean ifNotExists,
+                            @Optional @Default("#[payload]") final Object value,
+                            final MuleEvent muleEvent) throws Exception
+    {
+        final byte[] valueAsBytes = toBytes(value, muleEvent);
+        final byte[] storedValue = compress(valueAsBytes);
+
+        return run(key, new QueueableRedisAction<byte[]>("hash-set")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                final byte[] fieldAsBytes = SafeEncoder.encode(field);
+
+                if (ifNotExists)
+                {
+                    client.hsetnx(keyAsBytes, fieldAsBytes, storedValue);
+                }
+                else
+                {
+                    client.hset(keyAsBytes, fieldAsBytes, storedValue);
+                }
+
+                return 1 + queueNearCacheInvalidation(client, RedisUtils.getNearCacheKey(key, field));
+            }
+
+            @Override
+            public byte[] fromReplies(final List<Object> replies)
+            {
+                final Long result = RedisUtils.toIntegerReply(replies.get(0));
+                return ifNotExists && result == 0 ? null : valueAsBytes;
+            }
+        });
+    }
+
+    /**
+     * Get the value stored at the specified field in the hash at the specified key. If the field or
+     * the hash don't exist, null is returned.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:hash-get}
+     * 
+     * @param key Key that will be used for HGET
+     * @param field Field that will be used for HGET
+     * @return The value or null.
+     */
+    @Processor(name = "hash-get")
+    public byte[] getFromHash(final String key, final String field)
+    {
+        final String cacheKey = RedisUtils.getNearCacheKey(key, field);
+        final byte[] cachedValue = getNearCached(cacheKey);
+        if (cachedValue != null)
+        {
+            return cachedValue;
+        }
+
+        return runNearCachedRead(key, new QueueableRedisAction<byte[]>("hash-get")
+        {
+            private Object cacheToken;
+
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                final byte[] fieldAsBytes = SafeEncoder.encode(field);
+                cacheToken = startNearCacheRead(cacheKey);
+                client.hget(keyAsBytes, fieldAsBytes);
+                return 1;
+            }
+
+            @Override
+            public byte[] fromReplies(final List<Object> replies)
+            {
+                return putNearCached(cacheKey, decompress(RedisUtils.toBulkReply(replies.get(0))), cacheToken);
+            }
+        });
+    }
+
+    /**
+     * Increments the number stored at field in the hash stored at key by increment. If key does not
+     * exist, a new key holding a hash is created. If field does not exist the value is set to 0
+     * before the operation is performed.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:hash-increment}
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:hash-increment-step}
+     * 
+     * @param key Key that will be used for HGET
+     * @param field Field that will be used for HGET
+     * @param step Step used for the increment.
+     * @return the incremented number.
+     */
+    @Processor(name = "hash-increment")
+    public Long incrementHash(final String key, final String field, @Optional @Default("1") final long step)
+    {
+        return run(key, new QueueableRedisAction<Long>("hash-increment")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                final byte[] fieldAsBytes = SafeEncoder.encode(field);
+                client.hincrBy(keyAsBytes, fieldAsBytes, step);
+                return 1 + queueNearCacheInvalidation(client, RedisUtils.getNearCacheKey(key, field));
+            }
+
+            @Override
+            public Long fromReplies(final List<Object> replies)
+            {
+                return RedisUtils.toIntegerReply(replies.get(0));
+            }
+        });
+    }
+
+    // LATER add http://redis.io/commands/hincrbyfloat when Jedis supports it
+
+    // ************** Lists **************
+
+    public static enum ListPushSide
+    {
+        LEFT
+        {
+            @Override
+            void push(final BinaryClient client, final byte[] key, final byte[] message, final boolean ifExists)
+            {
+                if (ifExists)
+                {
+                    client.lpushx(key, message);
+                }
+                else
+                {
+                    client.lpush(key, message);
+                }
+            }
+
+            @Override
+            void pop(final BinaryClient client, final byte[] key)
+            {
+                client.lpop(key);
+            }
+        },
+        RIGHT
+        {
+            @Override
+            void push(final BinaryClient client, final byte[] key, final byte[] message, final boolean ifExists)
+            {
+                if (ifExists)
+                {
+                    client.rpushx(key, message);
+                }
+                else
+                {
+                    client.rpush(key, message);
+                }
+            }
+
+            @Override
+            void pop(final BinaryClient client, final byte[] key)
+            {
+                client.rpop(key);
+            }
+        };
+
+        /**
+         * Sends a push command, whose reply is the length of the list after the push, 0 meaning
+         * that nothing has been pushed.
+         */
+        abstract void push(BinaryClient client, byte[] key, byte[] message, boolean ifExists);
+
+        /**
+         * Sends a pop command, whose reply is the popped value.
+         */
+        abstract void pop(BinaryClient client, final byte[] key);
+    }
+
+    /**
+     * Push the message payload to the desired side (LEFT or RIGHT) of the list stored at the
+     * specified key. If key does not exist, a new key holding a list is created as long as ifExists
+     * is not true.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:list-push}
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:list-push-value}
+     * 
+     * @param key Key that will be used for LPUSH/RPUSH/LPUSHX/RPUSH
+     * @param side The side where to push the payload, either LEFT or RIGHT
+     * @param ifExists If true execute LPUSHX/RPUSH otherwise LPUSH/RPUSH
+     * @param value The value to push: byte arrays, byte buffers and streams are stored as-is,
+     *            strings and any other value with the encoding of the event.
+     * @param muleEvent The current {@link MuleEvent}.
+     * @return If the key doesn't already exist and ifExists is true, null is returned. Otherwise
+     *         the message is returned.
+     * @throws Exception if the value can't be read or transformed to a string.
+     */
+    @Processor(name = "list-push")
+    @Inject
+    public byte[] pushToList(final String key,
+                             final ListPushSide side,
+                             @Optional @Default("false") final boolean ifExists,
+                             @Optional @Default("#[payload]") final Object value,
+                             final MuleEvent muleEvent) throws Exception
+    {
+        final byte[] valueAsBytes = toBytes(value, muleEvent);
+        final byte[] storedValue = compress(valueAsBytes);
+
+        return run(key, new QueueableRedisAction<byte[]>("list-push")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                side.push(client, SafeEncoder.encode(key), storedValue, ifExists);
+                return 1;
+            }
+
+            @Override
+            public byte[] fromReplies(final List<Object> replies)
+            {
+                final Long result = RedisUtils.toIntegerReply(replies.get(0));
+                return ifExists && result == 0 ? null : valueAsBytes;
+            }
+        });
+    }
+
+    /**
+     * Pop a value from the desired side of the list stored at the specified key.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:list-pop}
+     * 
+     * @param key Key that will be used for LPOP/RPOP
+     * @param side The side where to pop the value from, either LEFT or RIGHT
+     * @return The popped value or null if either the list is empty or no list exists at the key
+     */
+    @Processor(name = "list-pop")
+    public byte[] popFromList(final String key, final ListPushSide side)
+    {
+        return run(key, new QueueableRedisAction<byte[]>("list-pop")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                side.pop(client, SafeEncoder.encode(key));
+                return 1;
+            }
+
+            @Override
+            public byte[] fromReplies(final List<Object> replies)
+            {
+                return decompress(RedisUtils.toBulkReply(replies.get(0)));
+            }
+        });
+    }
+
+    // ************** Sets **************
+
+    /**
+     * Add the message payload to the set stored at the specified key. If key does not exist, a new
+     * key holding a set is created.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:set-add}
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:set-add-value}
+     * 
+     * @param key Key that will be used for SADD
+     * @param mustSucceed If true, ensures that adding to the set was successful (ie no pre-existing
+     *            identical value in the set)
+     * @param value The value to add: byte arrays, byte buffers and streams are stored as-is,
+     *            strings and any other value with the encoding of the event.
+     * @param muleEvent The current {@link MuleEvent}.
+     * @return If no new entry has been added to the set and mustSucceed is true, null is returned.
+     *         Otherwise the message is returned.
+     * @throws Exception if the value can't be read or transformed to a string.
+     */
+    @Processor(name = "set-add")
+    @Inject
+    public byte[] addToSet(final String key,
+                           @Optional @Default("false") final boolean mustSucceed,
+                           @Optional @Default("#[payload]") final Object value,
+                           final MuleEvent muleEvent) throws Exception
+    {
+        final byte[] valueAsBytes = toBytes(value, muleEvent);
+
+        return run(key, new QueueableRedisAction<byte[]>("set-add")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                client.sadd(keyAsBytes, valueAsBytes);
+                return 1;
+            }
+
+            @Override
+            public byte[] fromReplies(final List<Object> replies)
+            {
+                final long result = RedisUtils.toIntegerReply(replies.get(0));
+                return !mustSucceed || result > 0 ? valueAsBytes : null;
+            }
+        });
+    }
+
+    /**
+     * Pops a random value from the set stored at the specified key.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:set-pop}
+     * 
+     * @param key Key that will be used for SPOP
+     * @return The popped value or null if either the set is empty or no set exists at the key
+     */
+    @Processor(name = "set-pop")
+    public byte[] popFromSet(final String key)
+    {
+        return run(key, new QueueableRedisAction<byte[]>("set-pop")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                client.spop(keyAsBytes);
+                return 1;
+            }
+
+            @Override
+            public byte[] fromReplies(final List<Object> replies)
+            {
+                return RedisUtils.toBulkReply(replies.get(0));
+            }
+        });
+    }
+
+    /**
+     * Reads a random value from the set stored at the specified key.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:set-fetch-random-member}
+     * 
+     * @param key Key that will be used for SRANDMEMBER
+     * @return The random value or null if either the set is empty or no set exists at the key
+     */
+    @Processor(name = "set-fetch-random-member")
+    public byte[] randomMemberFromSet(final String key)
+    {
+        return run(key, new QueueableRedisAction<byte[]>("set-fetch-random-member")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                client.srandmember(keyAsBytes);
+                return 1;
+            }
+
+            @Override
+            public byte[] fromReplies(final List<Object> replies)
+            {
+                return RedisUtils.toBulkReply(replies.get(0));
+            }
+        });
+    }
+
+    // ************** Sorted Sets **************
+
+    /**
+     * Add the message payload with the desired score to the sorted set stored at the specified key.
+     * If key does not exist, a new key holding a sorted set is created.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:sorted-set-add}
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:sorted-set-add-value}
+     * 
+     * @param key Key that will be used for ZADD
+     * @param score Score to use for the value
+     * @param mustSucceed If true, ensures that adding to the sorted set was successful (ie no
+     *            pre-existing identical value in the set)
+     * @param value The value to add: byte arrays, byte buffers and streams are stored as-is,
+     *            strings and any other value with the encoding of the event.
+     * @param muleEvent The current {@link MuleEvent}.
+     * @return If no new entry has been added to the sorted set and mustSucceed is true, null is
+     *         returned. Otherwise the message is returned.
+     * @throws Exception if the value can't be read or transformed to a string.
+     */
+    @Processor(name = "sorted-set-add")
+    @Inject
+    public byte[] addToSortedSet(final String key,
+                                 final double score,
+                                 @Optional @Default("false") final boolean mustSucceed,
+                                 @Optional @Default("#[payload]") final Object value,
+                                 final MuleEvent muleEvent) throws Exception
+    {
+        final byte[] valueAsBytes = toBytes(value, muleEvent);
+
+        return run(key, new QueueableRedisAction<byte[]>("sorted-set-add")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                client.zadd(keyAsBytes, score, valueAsBytes);
+                return 1;
+            }
+
+            @Override
+            public byte[] fromReplies(final List<Object> replies)
+            {
+                final long result = RedisUtils.toIntegerReply(replies.get(0));
+                return !mustSucceed || result > 0 ? valueAsBytes : null;
+            }
+        });
+    }
+
+    public static enum SortedSetOrder
+    {
+        ASCENDING
+        {
+            @Override
+            void getRangeByIndex(final BinaryClient client, final byte[] key, final int start, final int end)
+            {
+                client.zrange(key, start, end);
+            }
+
+            @Override
+            void getRangeByScore(final BinaryClient client, final byte[] key, final double min, final double max)
+            {
+                client.zrangeByScore(key, Protocol.toByteArray(min), Protocol.toByteArray(max));
+            }
+        },
+        DESCENDING
+        {
+            @Override
+            void getRangeByIndex(final BinaryClient client, final byte[] key, final int start, final int end)
+            {
+                client.zrevrange(key, start, end);
+            }
+
+            @Override
+            void getRangeByScore(final BinaryClient client, final byte[] key, final double min, final double max)
+            {
+                client.zrevrangeByScore(key, Protocol.toByteArray(min), Protocol.toByteArray(max));
+            }
+        };
+
+        /**
+         * Sends a range by index command, whose reply is the multi-bulk of the values in range.
+         */
+        abstract void getRangeByIndex(BinaryClient client, final byte[] key, int start, int end);
+
+        /**
+         * Sends a range by score command, whose reply is the multi-bulk of the values in range.
+         */
+        abstract void getRangeByScore(BinaryClient client, final byte[] key, double min, double max);
+    }
+
+    /**
+     * Retrieve a range of values from the sorted set stored at the specified key. The range of
+     * values is defined by indices in the sorted set and sorted as desired.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample
+     * redis:sorted-set-select-range-by-index}
+     * 
+     * @param key Key that will be used for ZRANGE/ZREVRANGE
+     * @param start Range start index
+     * @param end Range end index
+     * @param order Index order for sorting the range, either ASCENDING or DESCENDING
+     * @return the values in the specified range in the desired order as Set<byte[]>
+     */
+    @Processor(name = "sorted-set-select-range-by-index")
+    public Set<byte[]> getRangeByIndex(final String key,
+                                       final int start,
+                                       final int end,
+                                       @Optional @Default("ASCENDING") final SortedSetOrder order)
+    {
+        return runRead(key, new QueueableRedisAction<Set<byte[]>>("sorted-set-select-range-by-index")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                order.getRangeByIndex(client, keyAsBytes, start, end);
+                return 1;
+            }
+
+            @Override
+            public Set<byte[]> fromReplies(final List<Object> replies)
+            {
+                return RedisUtils.toMultiBulkSetReply(replies.get(0));
+            }
+        });
+    }
+
+    /**
+     * Retrieve a range of values from the sorted set stored at the specified key. The range of
+     * values is defined by scores in the sorted set and sorted as desired.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample
+     * redis:sorted-set-select-range-by-score}
+     * 
+     * @param key Key that will be used for ZRANGEBYSCORE/ZREVRANGEBYSCORE
+     * @param min Range start score
+     * @param max Range end score
+     * @param order Score order for sorting the range, either ASCENDING or DESCENDING
+     * @return the values in the specified range in the desired order as Set<byte[]>
+     */
+    @Processor(name = "sorted-set-select-range-by-score")
+    public Set<byte[]> getRangeByScore(final String key,
+                                       final double min,
+                                       final double max,
+                                       @Optional @Default("ASCENDING") final SortedSetOrder order)
+    {
+        return runRead(key, new QueueableRedisAction<Set<byte[]>>("sorted-set-select-range-by-score")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                order.getRangeByScore(client, keyAsBytes, min, max);
+                return 1;
+            }
+
+            @Override
+            public Set<byte[]> fromReplies(final List<Object> replies)
+            {
+                return RedisUtils.toMultiBulkSetReply(replies.get(0));
+            }
+        });
+    }
+
+    /**
+     * Increments the score of member in the sorted set stored at key by increment. If member does
+     * not exist in the sorted set, it is added with increment as its score (as if its previous
+     * score was 0.0). If key does not exist, a new sorted set with the specified member as its sole
+     * member is created.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:sorted-set-increment}
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:sorted-set-increment-value}
+     * 
+     * @param key the key in the sorted set.
+     * @param step the step to use to increment the score.
+     * @param value The member to increment: byte arrays, byte buffers and streams are used as-is,
+     *            strings and any other value with the encoding of the event.
+     * @param muleEvent The current {@link MuleEvent}.
+     * @return the new score of the member.
+     * @throws Exception if the value can't be read or transformed to a string.
+     */
+    @Processor(name = "sorted-set-increment")
+    @Inject
+    public Double incrementSortedSet(final String key,
+                                     final double step,
+                                     @Optional @Default("#[payload]") final Object value,
+                                     final MuleEvent muleEvent) throws Exception
+    {
+        final byte[] valueAsBytes = toBytes(value, muleEvent);
+
+        return run(key, new QueueableRedisAction<Double>("sorted-set-increment")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+
+                client.zincrby(keyAsBytes, step, valueAsBytes);
+                return 1;
+            }
+
+            @Override
+            public Double fromReplies(final List<Object> replies)
+            {
+                return RedisUtils.toDoubleReply(replies.get(0));
+            }
+        });
+    }
+
+    // ************** Key Volatility **************
+
+    /**
+     * Set a timeout on the specified key.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:expire}
+     * 
+     * @param key the key in the sorted set.
+     * @param seconds the time to live in seconds.
+     * @return true if EXPIRE was successful, false otherwise.
+     */
+    @Processor
+    public Boolean expire(final String key, final int seconds)
+    {
+        return run(key, new QueueableRedisAction<Boolean>("expire")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                client.expire(keyAsBytes, seconds);
+                return 1;
+            }
+
+            @Override
+            public Boolean fromReplies(final List<Object> replies)
+            {
+                return RedisUtils.toBooleanReply(replies.get(0));
+            }
+        });
+    }
+
+    /**
+     * Set a timeout in the form of a UNIX timestamp (Number of seconds elapsed since 1 Jan 1970) on
+     * the specified key.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:expire-at}
+     * 
+     * @param key the key in the sorted set.
+     * @param unixTime the UNIX timestamp in seconds.
+     * @return true if EXPIREAT was successful, false otherwise.
+     */
+    @Processor
+    public Boolean expireAt(final String key, final long unixTime)
+    {
+        return run(key, new QueueableRedisAction<Boolean>("expire-at")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                client.expireAt(keyAsBytes, unixTime);
+                return 1;
+            }
+
+            @Override
+            public Boolean fromReplies(final List<Object> replies)
+            {
+                return RedisUtils.toBooleanReply(replies.get(0));
+            }
+        });
+    }
+
+    /**
+     * Undo an expire or expireAt ; turning the volatile key into a normal key.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:persist}
+     * 
+     * @param key the key in the sorted set.
+     * @return true if PERSIST was successful, false otherwise.
+     */
+    @Processor
+    public Boolean persist(final String key)
+    {
+        return run(key, new QueueableRedisAction<Boolean>("persist")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                client.persist(keyAsBytes);
+                return 1;
+            }
+
+            @Override
+            public Boolean fromReplies(final List<Object> replies)
+            {
+                return RedisUtils.toBooleanReply(replies.get(0));
+            }
+        });
+    }
+
+    /**
+     * Get the remaining time to live in seconds of a volatile key.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:get-ttl}
+     * 
+     * @param key the key in the sorted set.
+     * @return the remaining time to live in seconds, -2 when key does not exist or -1 when key does
+     *         not have a timeout.
+     */
+    @Processor
+    public Long getTtl(final String key)
+    {
+        return runRead(key, new QueueableRedisAction<Long>("get-ttl")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                final byte[] keyAsBytes = SafeEncoder.encode(key);
+                client.ttl(keyAsBytes);
+                return 1;
+            }
+
+            @Override
+            public Long fromReplies(final List<Object> replies)
+            {
+                return RedisUtils.toIntegerReply(replies.get(0));
+            }
+        });
+    }
+
+    // LATER add PEXPIRE PEXPIREAT PTTL when Jedis supports it
+
+    // ************** Pipelining **************
+
+    /**
+     * Run the nested Redis operations on a single connection, queuing their commands and sending
+     * them all at once at the end of the scope, hence paying only one network round trip. Each
+     * nested operation is processed with the message received by the scope. Operations that can't
+     * be queued, like the ones of the object store, run synchronously on the same connection after
+     * the commands queued so far have been flushed.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:pipeline}
+     *
+     * @param operations The nested Redis operations.
+     * @return a list holding the result of each nested operation, in order.
+     * @throws Exception if any of the nested operations fails.
+     */
+    @Processor
+    public List<Object> pipeline(final List<NestedProcessor> operations) throws Exception
+    {
+        if (keyRouter == null)
+        {
+            return RedisPipeline.execute(jedisPool, operations);
+        }
+
+        // the nested operations may target different nodes: run them one by one
+        final List<Object> results = new ArrayList<Object>(operations.size());
+        for (final NestedProcessor operation : operations)
+        {
+            results.add(operation.process());
+        }
+        return results;
+    }
+
+    /*----------------------------------------------------------
+                Pub/Sub Implementation
+    ----------------------------------------------------------*/
+
+    /**
+     * Publish the message payload to the specified channel.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:publish}
+     * 
+     * @param channel Destination of the published message
+     * @param mustSucceed Enforces the fact that the message must have been delivered to at least
+     *            one consumer
+     * @param message The message to publish: byte arrays, byte buffers and streams are published
+     *            as-is, strings and any other value with the encoding of the event.
+     * @param muleEvent The current {@link MuleEvent}.
+     * @return If no consumer is subscribed to the channel and mustSucceed is true, null is
+     *         returned. Otherwise the message is returned.
+     * @throws Exception if the message can't be read or transformed to a string.
+     */
+    @Processor
+    @Inject
+    public byte[] publish(final String channel,
+                          @Optional @Default("false") final boolean mustSucceed,
+                          @Optional @Default("#[payload]") final Object message,
+                          final MuleEvent muleEvent) throws Exception
+    {
+        final byte[] messageAsBytes = toBytes(message, muleEvent);
+
+        return run(new QueueableRedisAction<byte[]>("publish")
+        {
+            @Override
+            public int queue(final BinaryClient client)
+            {
+                client.publish(SafeEncoder.encode(channel), messageAsBytes);
+                return 1;
+            }
+
+            @Override
+            public byte[] fromReplies(final List<Object> replies)
+            {
+                final Long numberOfSubscribers = RedisUtils.toIntegerReply(replies.get(0));
+                return (!mustSucceed || (mustSucceed && numberOfSubscribers > 0)) ? messageAsBytes : null;
+            }
+        });
+    }
+
+    /**
+     * Subscribe to the specified channels.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:subscribe}
+     * 
+     * @param channels A list of channel names or globbing patterns.
+     * @param batchSize Maximum number of messages delivered together, as a list of
+     *            {@link RedisPubSubMessage}s, 1 to deliver each message on its own.
+     * @param batchLinger Maximum time in milliseconds a message waits for its batch to fill up.
+     * @param callback Called when messages arrive in any of the specified channels.
+     */
+    @Source(threadingModel = SourceThreadingModel.NONE)
+    public StopSourceCallback subscribe(final List<String> channels,
+                                        @Optional @Default("1") final int batchSize,
+                                        @Optional @Default("100") final long batchLinger,
+                                        final SourceCallback callback)
+    {
+        final RedisPubSubBatcher batcher = batchSize > 1 ? new RedisPubSubBatcher(callback, batchSize,
+            batchLinger, pubSubDispatcher, getPubSubBatchFlusher()) : null;
+        final RedisPubSubListener listener = new RedisPubSubListener(callback, channels, pubSubDispatcher, batcher);
+
+        if (sharedSubscriber)
+        {
+            final RedisSubscriptionManager manager = getSubscriptionManager();
+            manager.add(listener);
+
+            return new StopSourceCallback()
+            {
+                @Override
+                public void stop()
+                {
+                    manager.remove(listener);
+                    listener.close();
+                }
+            };
+        }
+
+        final AtomicBoolean subscribed = new AtomicBoolean(true);
+        final Thread subscriber = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    subscribe(channels, null, listener, null, subscribed);
+                }
+                finally
+                {
+                    listener.close();
+                }
+            }
+        }, "redis-subscriber-" + channels);
+        subscriber.setDaemon(true);
+        subscriber.start();
+
+        return new StopSourceCallback()
+        {
+            @Override
+            public void stop()
+            {
+                subscribed.set(false);
+                unsubscribe(listener);
+                subscriber.interrupt();
+            }
+        };
+    }
+
+    /**
+     * An action holding a subscription on its connection. Jedis counts one pending reply per
+     * subscription command but consumes one per message read, so the connection is never given back
+     * to the pool once the subscription ends: it would make the next commands read wrong replies.
+     */
+    private abstract static class SubscriptionAction extends RedisAction<Void>
+    {
+        @Override
+        public boolean isConnectionReusable()
+        {
+            return false;
+        }
+    }
+
+    private void subscribe(final List<String> channels,
+                           final JedisPool nodePool,
+                           final RedisPubSubListener listener,
+                           final Runnable beforeSubscribing,
+                           final AtomicBoolean subscribed)
+    {
+        subscribe("channels: " + channels, nodePool, subscribed, new SubscriptionAction()
+        {
+            @Override
+            public Void run()
+            {
+                activeListeners.add(listener);
+
+                try
+                {
+                    if (!subscribed.get())
+                    {
+                        return null;
+                    }
+
+                    if (beforeSubscribing != null)
+                    {
+                        beforeSubscribing.run();
+                    }
+
+                    // this blocks until Redis gets disconnected or the subscription stops
+                    listener.subscribe(redis);
+                }
+                finally
+                {
+                    activeListeners.remove(listener);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs the subscription again whenever the connection is lost, until the connector or the
+     * subscription stops.
+     * 
+     * @param nodePool the pool of the node to subscribe on, or null for the current master.
+     */
+    private void subscribe(final String description,
+                           final JedisPool nodePool,
+                           final AtomicBoolean subscribed,
+                           final SubscriptionAction subscription)
+    {
+        while (running && subscribed.get())
+        {
+            try
+            {
+                if (nodePool == null)
+                {
+                    run(subscription);
+                }
+                else
+                {
+                    RedisUtils.run(nodePool, subscription);
+                }
+            }
+            catch (final JedisConnectionException jce)
+            {
+                LOGGER.warn("Subscriber disconnected from " + description + ", will retry connecting in: "
+                            + reconnectionFrequency + "ms.", jce);
+
+                try
+                {
+                    if (running && subscribed.get())
+                    {
+                        Thread.sleep(reconnectionFrequency);
+                    }
+                }
+                catch (final InterruptedException ie)
+                {
+                    // connector or subscription stopping, let's restore interrupted state
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /*----------------------------------------------------------
+                ObjectStore Implementation
+    ----------------------------------------------------------*/
+    @Override
+    public boolean isPersistent()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean contains(final Serializable key) throws ObjectStoreException
+    {
+        return contains(key, getActualDefaultPartitionName());
+    }
+
+    @Override
+    public void store(final Serializable key, final Serializable value) throws ObjectStoreException
+    {
+        store(key, value, getActualDefaultPartitionName());
+    }
+
+    @Override
+    public Serializable retrieve(final Serializable key) throws ObjectStoreException
+    {
+        return retrieve(key, getActualDefaultPartitionName());
+    }
+
+    @Override
+    public Serializable remove(final Serializable key) throws ObjectStoreException
+    {
+        return remove(key, getActualDefaultPartitionName());
+    }
+
+    /*----------------------------------------------------------
+               ListableObjectStore Implementation
+    ----------------------------------------------------------*/
+    @Override
+    public void open() throws ObjectStoreException
+    {
+        open(getActualDefaultPartitionName());
+    }
+
+    @Override
+    public void close() throws ObjectStoreException
+    {
+        close(getActualDefaultPartitionName());
+    }
+
+    @Override
+    public List<Serializable> allKeys() throws ObjectStoreException
+    {
+        return allKeys(getActualDefaultPartitionName());
+    }
+
+    private String getActualDefaultPartitionName()
+    {
+        if (StringUtils.isBlank(getDefaultPartitionName()))
+        {
+            return FALLBACK_PARTITION_NAME;
+        }
+
+        final MuleEvent muleEvent = RequestContext.getEvent();
+
+        if (muleEvent != null)
+        {
+            return muleContext.getExpressionManager().parse(getDefaultPartitionName(), muleEvent);
+        }
+        else
+        {
+            return getDefaultPartitionName();
+        }
+    }
+
+    /*----------------------------------------------------------
+             PartitionableObjectStore Implementation
+    ----------------------------------------------------------*/
+    @Override
+    public boolean contains(final Serializable key, final String partitionName) throws ObjectStoreException
+    {
+        final RedisLocalCache<Serializable, byte[]> cache = getObjectStoreCache(partitionName);
+        if ((cache != null) && (cache.get(key) != null))
+        {
+            return true;
+        }
+
+        final byte[] keyAsBytes = RedisUtils.toBytes(key);
+        final byte[] partitionHashKey = getPartitionHashKey(partitionName, getBucket(keyAsBytes));
+        Presence presence = Presence.UNKNOWN;
+        if (objectStoreBloomFilters != null)
+        {
+            presence = objectStoreBloomFilters.check(partitionName, keyAsBytes);
+        }
+
+        if (presence == Presence.ABSENT)
+        {
+            return false;
+        }
+
+        final boolean result = runRead(partitionHashKey, new RedisAction<Boolean>("object-store-contains")
+        {
+            @Override
+            public Boolean run()
+            {
+                return redis.hexists(partitionHashKey, keyAsBytes);
+            }
+        });
+
+        if (presence == Presence.PROBABLE)
+        {
+            objectStoreBloomFilters.recordProbableHit(result);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void store(final Serializable key, final Serializable value, final String partitionName)
+        throws ObjectStoreException
+    {
+        final byte[] keyAsBytes = RedisUtils.toBytes(key);
+        final int bucket = getBucket(keyAsBytes);
+        final byte[] partitionHashKey = getPartitionHashKey(partitionName, bucket);
+        final byte[] partitionIndexKey = getPartitionIndexKey(partitionName, bucket);
+
+        final RedisLocalCache<Serializable, byte[]> cache = getObjectStoreCache(partitionName);
+        final Object cacheToken = cache == null ? null : cache.startRead(key);
+        final byte[] valueAsBytes = serialize(value);
+        final byte[] storedValue = compress(valueAsBytes);
+
+        final Long result = run(partitionHashKey, new RedisAction<Long>("object-store-store")
+        {
+            @Override
+            public Long run()
+            {
+                if (!isObjectStoreIndexed())
+                {
+                    return redis.hsetnx(partitionHashKey, keyAsBytes, storedValue);
+                }
+
+                // the entry is indexed by insertion time for expiry
+                return (Long) OBJECT_STORE_STORE_SCRIPT.eval(redis, 2, partitionHashKey, partitionIndexKey,
+                    keyAsBytes, storedValue, Protocol.toByteArray(System.currentTimeMillis()));
+            }
+        });
+
+        if (objectStoreBloomFilters != null)
+        {
+            objectStoreBloomFilters.put(partitionName, keyAsBytes);
+        }
+
+        if (result == 0)
+        {
+            throw new ObjectAlreadyExistsException(
+                MessageFactory.createStaticMessage("There is already a value for: " + key));
+        }
+
+        if (cache != null)
+        {
+            cache.put(key, valueAsBytes, cacheToken);
+        }
+    }
+
+    @Override
+    public Serializable retrieve(final Serializable key, final String partitionName)
+        throws ObjectStoreException
+    {
+        final RedisLocalCache<Serializable, byte[]> cache = getObjectStoreCache(partitionName);
+        byte[] valueAsBytes = cache == null ? null : cache.get(key);
+
+        if (valueAsBytes == null)
+        {
+            final byte[] keyAsBytes = RedisUtils.toBytes(key);
+            final byte[] partitionHashKey = getPartitionHashKey(partitionName, getBucket(keyAsBytes));
+            final Object cacheToken = cache == null ? null : cache.startRead(key);
+
+            final byte[] storedValue = runRead(partitionHashKey, new RedisAction<byte[]>("object-store-retrieve")
+            {
+                @Override
+                public byte[] run()
+                {
+                    return redis.hget(partitionHashKey, keyAsBytes);
+                }
+            });
+            valueAsBytes = decompress(storedValue);
+
+            if ((cache != null) && (valueAsBytes != null))
+            {
+                cache.put(key, valueAsBytes, cacheToken);
+            }
+        }
+
+        // values are cached serialized so each caller gets its own copy
+        final Serializable result = deserialize(valueAsBytes);
+
+        if (result == null)
+        {
+            throw new ObjectDoesNotExistException(
+                MessageFactory.createStaticMessage("No value found for key: " + key));
+        }
+
+        return result;
+    }
+
+    @Override
+    public Serializable remove(final Serializable key, final String partitionName)
+        throws ObjectStoreException
+    {
+        final byte[] keyAsBytes = RedisUtils.toBytes(key);
+        final int bucket = getBucket(keyAsBytes);
+        final byte[] partitionHashKey = getPartitionHashKey(partitionName, bucket);
+        final byte[] partitionIndexKey = getPartitionIndexKey(partitionName, bucket);
+
+        final Serializable result;
+
+        try
+        {
+            result = run(partitionHashKey, new RedisAction<Serializable>("object-store-remove")
+            {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Serializable run()
+                {
+                    // not BinaryTransaction, which reads as many replies as the connection counts pending
+                    final Client client = redis.getClient();
+                    client.multi();
+                    client.hget(partitionHashKey, keyAsBytes);
+                    client.hdel(partitionHashKey, keyAsBytes);
+                    client.zrem(partitionIndexKey, keyAsBytes);
+                    client.exec();
+
+                    // the replies of MULTI, of the queued commands and of EXEC
+                    final List<Object> replies = RedisUtils.readReplies(client, 5);
+                    for (final Object reply : replies)
+                    {
+                        RedisUtils.checkReply(reply);
+                    }
+
+                    final List<Object> execReplies = (List<Object>) replies.get(replies.size() - 1);
+                    if (RedisUtils.toIntegerReply(execReplies.get(1)) != 1L)
+                    {
+                        return null;
+                    }
+
+                    return deserialize(decompress(RedisUtils.toBulkReply(execReplies.get(0))));
+                }
+            });
+        }
+        finally
+        {
+            // a concurrent read can't cache the removed value anymore after this invalidation
+            final RedisLocalCache<Serializable, byte[]> cache = getObjectStoreCache(partitionName);
+            if (cache != null)
+            {
+                cache.invalidate(key);
+            }
+        }
+
+        if (result == null)
+        {
+            throw new ObjectDoesNotExistException(
+                MessageFactory.createStaticMessage("No value found for key: " + key));
+        }
+
+        return result;
+    }
+
+    /**
+     * Stores several entries, skipping those whose key already exists. Entries are written by
+     * chunks of objectStoreBulkChunkSize, each chunk atomically.
+     * 
+     * @param entries the entries to store.
+     * @param partitionName the name of the partition.
+     * @return for each key, true if its entry has been stored, false if the key already existed.
+     */
+    public Map<Serializable, Boolean> storeAll(final Map<? extends Serializable, ? extends Serializable> entries,
+                                               final String partitionName) throws ObjectStoreException
+    {
+        final RedisLocalCache<Serializable, byte[]> cache = getObjectStoreCache(partitionName);
+        final Map<Serializable, Boolean> results = new LinkedHashMap<Serializable, Boolean>();
+
+        for (final Entry<Integer, List<Serializable>> bucketKeys : getKeysByBucket(entries.keySet()).entrySet())
+        {
+            final byte[] partitionHashKey = getPartitionHashKey(partitionName, bucketKeys.getKey());
+            final byte[] partitionIndexKey = getPartitionIndexKey(partitionName, bucketKeys.getKey());
+            final List<Serializable> bucketKeyList = bucketKeys.getValue();
+
+            for (int from = 0; from < bucketKeyList.size(); from += objectStoreBulkChunkSize)
+            {
+                final List<Serializable> chunkKeys = bucketKeyList.subList(from,
+                    Math.min(from + objectStoreBulkChunkSize, bucketKeyList.size()));
+                final List<Object> cacheTokens = startCacheReads(cache, chunkKeys);
+                final List<byte[]> valuesAsBytes = new ArrayList<byte[]>(chunkKeys.size());
+                // the keys, the insertion time and the entries
+                final byte[][] params = new byte[2 * chunkKeys.size() + 3][];
+                params[0] = partitionHashKey;
+                params[1] = partitionIndexKey;
+
+                for (int i = 0; i < chunkKeys.size(); i++)
+                {
+                    final byte[] valueAsBytes = serialize(entries.get(chunkKeys.get(i)));
+                    valuesAsBytes.add(valueAsBytes);
+                    params[2 * i + 3] = RedisUtils.toBytes(chunkKeys.get(i));
+                    params[2 * i + 4] = compress(valueAsBytes);
+                }
+
+                final List<Long> stored = run(partitionHashKey, new RedisAction<List<Long>>("object-store-store-all")
+                {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public List<Long> run()
+                    {
+                        if (isObjectStoreIndexed())
+                        {
+                            params[2] = Protocol.toByteArray(System.currentTimeMillis());
+                            return (List<Long>) OBJECT_STORE_STORE_ALL_SCRIPT.eval(redis, 2, params);
+                        }
+
+                        // nothing to index: HSETNX every field in a single transaction
+                        final Client client = redis.getClient();
+                        client.multi();
+                        for (int i = 3; i < params.length; i += 2)
+                        {
+                            client.hsetnx(partitionHashKey, params[i], params[i + 1]);
+                        }
+                        client.exec();
+
+                        // the replies of MULTI, of the queued commands and of EXEC
+                        final List<Object> replies = RedisUtils.readReplies(client, chunkKeys.size() + 2);
+                        for (final Object reply : replies)
+                        {
+                            RedisUtils.checkReply(reply);
+                        }
+                        return (List<Long>) replies.get(replies.size() - 1);
+                    }
+                });
+
+                for (int i = 0; i < chunkKeys.size(); i++)
+                {
+                    final boolean isStored = stored.get(i) == 1L;
+                    results.put(chunkKeys.get(i), isStored);
+
+                    if (objectStoreBloomFilters != null)
+                    {
+                        objectStoreBloomFilters.put(partitionName, params[2 * i + 3]);
+                    }
+
+                    if ((cache != null) && isStored)
+                    {
+                        cache.put(chunkKeys.get(i), valuesAsBytes.get(i), cacheTokens.get(i));
+                    }
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Retrieves several entries with HMGET, by chunks of objectStoreBulkChunkSize keys.
+     * 
+     * @param keys the keys of the entries to retrieve.
+     * @param partitionName the name of the partition.
+     * @return the values of the keys that exist, in the order of the keys.
+     */
+    public Map<Serializable, Serializable> retrieveAll(final Collection<? extends Serializable> keys,
+                                                       final String partitionName) throws ObjectStoreException
+    {
+        final RedisLocalCache<Serializable, byte[]> cache = getObjectStoreCache(partitionName);
+        final Map<Serializable, byte[]> valuesAsBytes = new LinkedHashMap<Serializable, byte[]>();
+        final List<Serializable> missedKeys = new ArrayList<Serializable>();
+
+        for (final Serializable key : keys)
+        {
+            final byte[] valueAsBytes = cache == null ? null : cache.get(key);
+            valuesAsBytes.put(key, valueAsBytes);
+
+            if (valueAsBytes == null)
+            {
+                missedKeys.add(key);
+            }
+        }
+
+        for (final Entry<Integer, List<Serializable>> bucketKeys : getKeysByBucket(missedKeys).entrySet())
+        {
+            final byte[] partitionHashKey = getPartitionHashKey(partitionName, bucketKeys.getKey());
+            final List<Serializable> bucketKeyList = bucketKeys.getValue();
+
+            for (int from = 0; from < bucketKeyList.size(); from += objectStoreBulkChunkSize)
+            {
+                final List<Serializable> chunkKeys = bucketKeyList.subList(from,
+                    Math.min(from + objectStoreBulkChunkSize, bucketKeyList.size()));
+                final List<Object> cacheTokens = startCacheReads(cache, chunkKeys);
+
+                final List<byte[]> storedValues = runRead(partitionHashKey, new RedisAction<List<byte[]>>(
+                    "object-store-retrieve-all")
+                {
+                    @Override
+                    public List<byte[]> run()
+                    {
+                        return redis.hmget(partitionHashKey, toFields(chunkKeys));
+                    }
+                });
+
+                for (int i = 0; i < chunkKeys.size(); i++)
+                {
+                    final byte[] valueAsBytes = decompress(storedValues.get(i));
+                    valuesAsBytes.put(chunkKeys.get(i), valueAsBytes);
+
+                    if ((cache != null) && (valueAsBytes != null))
+                    {
+                        cache.put(chunkKeys.get(i), valueAsBytes, cacheTokens.get(i));
+                    }
+                }
+            }
+        }
+
+        final Map<Serializable, Serializable> results = new LinkedHashMap<Serializable, Serializable>();
+        for (final Entry<Serializable, byte[]> valueAsBytes : valuesAsBytes.entrySet())
+        {
+            final Serializable value = deserialize(valueAsBytes.getValue());
+            if (value != null)
+            {
+                results.put(valueAsBytes.getKey(), value);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Checks the existence of several keys with pipelined HEXISTS, by chunks of
+     * objectStoreBulkChunkSize keys. Keys that the Bloom filter of the partition knows to be
+     * absent aren't sent to Redis.
+     * 
+     * @param keys the keys to check.
+     * @param partitionName the name of the partition.
+     * @return for each key, true if it exists.
+     */
+    public Map<Serializable, Boolean> containsAll(final Collection<? extends Serializable> keys,
+                                                  final String partitionName) throws ObjectStoreException
+    {
+        final RedisLocalCache<Serializable, byte[]> cache = getObjectStoreCache(partitionName);
+        final Map<Serializable, Boolean> results = new LinkedHashMap<Serializable, Boolean>();
+        final List<Serializable> missedKeys = new ArrayList<Serializable>();
+        final Set<Serializable> probableKeys = new HashSet<Serializable>();
+
+        for (final Serializable key : keys)
+        {
+            final boolean isCached = (cache != null) && (cache.get(key) != null);
+            results.put(key, isCached);
+
+            if (isCached)
+            {
+                continue;
+            }
+
+            Presence presence = Presence.UNKNOWN;
+            if (objectStoreBloomFilters != null)
+            {
+                presence = objectStoreBloomFilters.check(partitionName, RedisUtils.toBytes(key));
+            }
+
+            if (presence == Presence.PROBABLE)
+            {
+                probableKeys.add(key);
+            }
+
+            if (presence != Presence.ABSENT)
+            {
+                missedKeys.add(key);
+            }
+        }
+
+        for (final Entry<Integer, List<Serializable>> bucketKeys : getKeysByBucket(missedKeys).entrySet())
+        {
+            final byte[] partitionHashKey = getPartitionHashKey(partitionName, bucketKeys.getKey());
+            final List<Serializable> bucketKeyList = bucketKeys.getValue();
+
+            for (int from = 0; from < bucketKeyList.size(); from += objectStoreBulkChunkSize)
+            {
+                final List<Serializable> chunkKeys = bucketKeyList.subList(from,
+                    Math.min(from + objectStoreBulkChunkSize, bucketKeyList.size()));
+
+                final List<Object> replies = runRead(partitionHashKey, new RedisAction<List<Object>>(
+                    "object-store-contains-all")
+                {
+                    @Override
+                    public List<Object> run()
+                    {
+                        final Client client = redis.getClient();
+                        for (final byte[] field : toFields(chunkKeys))
+                        {
+                            client.hexists(partitionHashKey, field);
+                        }
+                        return RedisUtils.readReplies(client, chunkKeys.size());
+                    }
+                });
+
+                for (int i = 0; i < chunkKeys.size(); i++)
+                {
+                    final boolean result = RedisUtils.toBooleanReply(replies.get(i));
+                    results.put(chunkKeys.get(i), result);
+
+                    if (probableKeys.contains(chunkKeys.get(i)))
+                    {
+                        objectStoreBloomFilters.recordProbableHit(result);
+                    }
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Removes several entries with a multi-field HDEL, by chunks of objectStoreBulkChunkSize keys,
+     * each chunk atomically.
+     * 
+     * @param keys the keys of the entries to remove.
+     * @param partitionName the name of the partition.
+     * @return the values of the removed entries, by key: keys that didn't exist are absent.
+     */
+    public Map<Serializable, Serializable> removeAll(final Collection<? extends Serializable> keys,
+                                                     final String partitionName) throws ObjectStoreException
+    {
+        final RedisLocalCache<Serializable, byte[]> cache = getObjectStoreCache(partitionName);
+        final Map<Serializable, Serializable> results = new LinkedHashMap<Serializable, Serializable>();
+
+        for (final Entry<Integer, List<Serializable>> bucketKeys : getKeysByBucket(keys).entrySet())
+        {
+            final byte[] partitionHashKey = getPartitionHashKey(partitionName, bucketKeys.getKey());
+            final byte[] partitionIndexKey = getPartitionIndexKey(partitionName, bucketKeys.getKey());
+            final List<Serializable> bucketKeyList = bucketKeys.getValue();
+
+            for (int from = 0; from < bucketKeyList.size(); from += objectStoreBulkChunkSize)
+            {
+                final List<Serializable> chunkKeys = bucketKeyList.subList(from,
+                    Math.min(from + objectStoreBulkChunkSize, bucketKeyList.size()));
+                final List<byte[]> storedValues;
+
+                try
+                {
+                    storedValues = run(partitionHashKey, new RedisAction<List<byte[]>>("object-store-remove-all")
+                    {
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public List<byte[]> run()
+                        {
+                            final byte[][] fields = toFields(chunkKeys);
+
+                            // BinaryTransaction can't delete several fields at once
+                            final Client client = redis.getClient();
+                            client.multi();
+                            client.hmget(partitionHashKey, fields);
+                            client.hdel(partitionHashKey, fields);
+                            client.zrem(partitionIndexKey, fields);
+                            client.exec();
+
+                            // the replies of MULTI, of the queued commands and of EXEC
+                            final List<Object> replies = RedisUtils.readReplies(client, 5);
+                            for (final Object reply : replies)
+                            {
+                                RedisUtils.checkReply(reply);
+                            }
+                            return RedisUtils.toMultiBulkReply(((List<Object>) replies.get(replies.size() - 1)).get(0));
+                        }
+                    });
+                }
+                finally
+                {
+                    if (cache != null)
+                    {
+                        for (final Serializable key : chunkKeys)
+                        {
+                            cache.invalidate(key);
+                        }
+                    }
+                }
+
+                for (int i = 0; i < chunkKeys.size(); i++)
+                {
+                    final Serializable value = deserialize(decompress(storedValues.get(i)));
+                    if (value != null)
+                    {
+                        results.put(chunkKeys.get(i), value);
+                    }
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Lists the keys of a partition with HSCAN, which unlike HKEYS doesn't block the server for
+     * the whole walk of a huge partition. See {@link #iterateKeys(String)} to avoid holding all
+     * the keys in memory.
+     */
+    @Override
+    public List<Serializable> allKeys(final String partitionName) throws ObjectStoreException
+    {
+        if (objectStoreBuckets == 1)
+        {
+            final byte[] partitionHashKey = getPartitionHashKey(partitionName, 0);
+            return runRead(partitionHashKey, newAllKeysAction(partitionHashKey));
+        }
+
+        // the buckets are walked in parallel
+        final List<Callable<List<Serializable>>> allKeysTasks = new ArrayList<Callable<List<Serializable>>>();
+        for (int bucket = 0; bucket < objectStoreBuckets; bucket++)
+        {
+            final byte[] partitionHashKey = getPartitionHashKey(partitionName, bucket);
+            allKeysTasks.add(new Callable<List<Serializable>>()
+            {
+                @Override
+                public List<Serializable> call()
+                {
+                    return runRead(partitionHashKey, newAllKeysAction(partitionHashKey));
+                }
+            });
+        }
+
+        // a key lives in a single bucket
+        final List<Serializable> keys = new ArrayList<Serializable>();
+        for (final List<Serializable> bucketKeys : runInParallel(allKeysTasks))
+        {
+            keys.addAll(bucketKeys);
+        }
+        return keys;
+    }
+
+    private RedisAction<List<Serializable>> newAllKeysAction(final byte[] partitionHashKey)
+    {
+        return new RedisAction<List<Serializable>>("object-store-all-keys")
+        {
+            @Override
+            public List<Serializable> run()
+            {
+                // HSCAN may return a key more than once
+                final Set<Serializable> keys = new LinkedHashSet<Serializable>();
+                final List<byte[]> fields = new ArrayList<byte[]>();
+                byte[] cursor = RedisUtils.SCAN_START_CURSOR;
+
+                do
+                {
+                    cursor = RedisUtils.hscan(redis, partitionHashKey, cursor, scanCount, fields);
+                    for (final byte[] field : fields)
+                    {
+                        keys.add(RedisUtils.fromBytes(field));
+                    }
+                    fields.clear();
+                }
+                while (!Arrays.equals(cursor, RedisUtils.SCAN_START_CURSOR));
+
+                return new ArrayList<Serializable>(keys);
+            }
+        };
+    }
+
+    /**
+     * Lists a page of the keys of a partition, in the order of HSCAN. Only up to offset + limit
+     * keys are read, and only limit keys are held in memory, but pages are only consistent with
+     * each other while the partition isn't modified.
+     * 
+     * @param partitionName the name of the partition.
+     * @param offset the number of keys to skip.
+     * @param limit the maximum number of keys to return.
+     * @return the keys of the page, fewer than limit only for the last page.
+     */
+    public List<Serializable> allKeys(final String partitionName, final int offset, final int limit)
+    {
+        if ((offset < 0) || (limit < 0))
+        {
+            throw new IllegalArgumentException("Offset and limit must be positive, got: " + offset + " and "
+                                               + limit);
+        }
+
+        final List<Serializable> keys = new ArrayList<Serializable>(Math.min(limit, scanCount));
+        final Iterator<Serializable> iterator = iterateKeys(partitionName).iterator();
+
+        for (int skipped = 0; (skipped < offset) && iterator.hasNext(); skipped++)
+        {
+            iterator.next();
+        }
+
+        while ((keys.size() < limit) && iterator.hasNext())
+        {
+            keys.add(iterator.next());
+        }
+        return keys;
+    }
+
+    /**
+     * Iterates over the keys of a partition with HSCAN, fetching about scanCount keys per round
+     * trip as the iteration progresses, so that huge partitions can be walked in bounded memory.
+     * Keys may be returned more than once if the partition is modified during the iteration.
+     * 
+     * @param partitionName the name of the partition.
+     * @return the keys of the partition, read lazily by each of its iterators.
+     */
+    public Iterable<Serializable> iterateKeys(final String partitionName)
+    {
+        return new Iterable<Serializable>()
+        {
+            @Override
+            public Iterator<Serializable> iterator()
+            {
+                // the buckets are walked one after the other
+                return new Iterator<Serializable>()
+                {
+                    private int bucket;
+                    private Iterator<Serializable> bucketKeys = iterateKeys(partitionName, 0);
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        while ((!bucketKeys.hasNext()) && (bucket < objectStoreBuckets - 1))
+                        {
+                            bucketKeys = iterateKeys(partitionName, ++bucket);
+                        }
+                        return bucketKeys.hasNext();
+                    }
+
+                    @Override
+                    public Serializable next()
+                    {
+                        if (!hasNext())
+                        {
+                            throw new NoSuchElementException();
+                        }
+                        return bucketKeys.next();
+                    }
+
+                    @Override
+                    public void remove()
+                    {
+                        throw new UnsupportedOperationException("Read-only iterator");
+                    }
+                };
+            }
+        };
+    }
+
+    private Iterator<Serializable> iterateKeys(final String partitionName, final int bucket)
+    {
+        final byte[] partitionHashKey = getPartitionHashKey(partitionName, bucket);
+
+        return new RedisScanIterator<Serializable>()
+        {
+            @Override
+            protected byte[] fetchPage(final byte[] cursor, final List<Serializable> keys)
+            {
+                // not runRead: a cursor is only valid on the node that returned it
+                return run(partitionHashKey, new RedisAction<byte[]>("object-store-all-keys")
+                {
+                    @Override
+                    public byte[] run()
+                    {
+                        final List<byte[]> fields = new ArrayList<byte[]>();
+                        final byte[] nextCursor = RedisUtils.hscan(redis, partitionHashKey, cursor, scanCount,
+                            fields);
+
+                        for (final byte[] field : fields)
+                        {
+                            keys.add(RedisUtils.fromBytes(field));
+                        }
+                        return nextCursor;
+                    }
+                });
+            }
+        };
+    }
+
+    @Override
+    public List<String> allPartitions() throws ObjectStoreException
+    {
+        if (keyRouter == null)
+        {
+            return runRead(newListPartitionsAction());
+        }
+
+        // partitions are spread over all the nodes
+        final List<Callable<List<String>>> listPartitionsTasks = new ArrayList<Callable<List<String>>>();
+        for (final JedisPool nodePool : keyRouter.getPools())
+        {
+            listPartitionsTasks.add(new Callable<List<String>>()
+            {
+                @Override
+                public List<String> call()
+                {
+                    return RedisUtils.run(nodePool, newListPartitionsAction());
+                }
+            });
+        }
+
+        // the buckets of a partition can live on different nodes
+        final Set<String> partitions = new LinkedHashSet<String>();
+        for (final List<String> nodePartitions : runInParallel(listPartitionsTasks))
+        {
+            partitions.addAll(nodePartitions);
+        }
+        return new ArrayList<String>(partitions);
+    }
+
+    private RedisAction<List<String>> newListPartitionsAction()
+    {
+        return new RedisAction<List<String>>("object-store-all-partitions")
+        {
+            @Override
+            public List<String> run()
+            {
+                // SCAN may return a key more than once
+                final Set<String> partitions = new LinkedHashSet<String>();
+                final List<byte[]> keys = RedisUtils.scan(redis,
+                    SafeEncoder.encode(RedisConstants.OBJECTSTORE_HASH_KEY_PREFIX + "*"), scanCount);
+                for (final byte[] key : keys)
+                {
+                    partitions.add(RedisUtils.getPartitionName(SafeEncoder.encode(key), keyRouter != null,
+                        objectStoreBuckets > 1));
+                }
+                return new ArrayList<String>(partitions);
+            }
+        };
+    }
+
+    @Override
+    public void open(final String partitionName) throws ObjectStoreException
+    {
+        // ignored
+    }
+
+    @Override
+    public void close(final String partitionName) throws ObjectStoreException
+    {
+        // ignored
+    }
+
+    @Override
+    public void disposePartition(final String partitionName) throws ObjectStoreException
+    {
+        if (objectStoreBuckets == 1)
+        {
+            disposeBucket(partitionName, 0);
+        }
+        else
+        {
+            // the buckets are deleted in parallel
+            final List<Callable<Long>> disposeTasks = new ArrayList<Callable<Long>>();
+            for (int bucket = 0; bucket < objectStoreBuckets; bucket++)
+            {
+                final int disposedBucket = bucket;
+                disposeTasks.add(new Callable<Long>()
+                {
+                    @Override
+                    public Long call()
+                    {
+                        return disposeBucket(partitionName, disposedBucket);
+                    }
+                });
+            }
+            runInParallel(disposeTasks);
+        }
+
+        final RedisLocalCache<Serializable, byte[]> cache = objectStoreCaches.remove(partitionName);
+        if (cache != null)
+        {
+            // other threads may still hold a reference to the disposed cache
+            cache.invalidateAll();
+        }
+
+        if (objectStoreBloomFilters != null)
+        {
+            objectStoreBloomFilters.remove(partitionName);
+        }
+    }
+
+    private Long disposeBucket(final String partitionName, final int bucket)
+    {
+        final byte[] partitionHashKey = getPartitionHashKey(partitionName, bucket);
+        final byte[] partitionIndexKey = getPartitionIndexKey(partitionName, bucket);
+
+        return run(partitionHashKey, new RedisAction<Long>("object-store-dispose-partition")
+        {
+            @Override
+            public Long run()
+            {
+                return redis.del(partitionHashKey, partitionIndexKey);
+            }
+        });
+    }
+
+    /**
+     * Removes the entries of a partition stored more than entryTTL milliseconds ago, if entryTTL is
+     * positive, and its oldest entries beyond maxEntries, if maxEntries is positive. Entries are
+     * removed by batches of objectStoreExpiryBatchSize, each one atomically, and up to
+     * objectStoreExpiryMaxBatches batches. Entries are only indexed by insertion time when
+     * objectStoreEntryTtl or objectStoreMaxEntries is set: the ones stored otherwise, or before this
+     * version of the connector, never expire. With several buckets, maxEntries is shared
+     * evenly between them, and each bucket is expired in turn.
+     */
+    @Override
+    public void expire(final int entryTTL, final int maxEntries, final String partitionName)
+        throws ObjectStoreException
+    {
+        expirePartition(entryTTL, maxEntries, partitionName);
+    }
+
+    private void expirePartition(final long entryTtl, final int maxEntries, final String partitionName)
+    {
+        if ((entryTtl <= 0L) && (maxEntries <= 0))
+        {
+            return;
+        }
+
+        final byte[] maxInsertionTime = entryTtl > 0L ? Protocol.toByteArray(System.currentTimeMillis() - entryTtl)
+                                                      : NO_MAX_INSERTION_TIME;
+        // rounded up, so that a positive limit stays positive
+        final int bucketMaxEntries = (Math.max(maxEntries, 0) + objectStoreBuckets - 1) / objectStoreBuckets;
+        final byte[] maxEntriesAsBytes = Protocol.toByteArray(bucketMaxEntries);
+
+        for (int bucket = 0; bucket < objectStoreBuckets; bucket++)
+        {
+            expireBucket(partitionName, bucket, maxInsertionTime, maxEntriesAsBytes);
+        }
+    }
+
+    private void expireBucket(final String partitionName,
+                              final int bucket,
+                              final byte[] maxInsertionTime,
+                              final byte[] maxEntriesAsBytes)
+    {
+        final byte[] partitionHashKey = getPartitionHashKey(partitionName, bucket);
+        final byte[] partitionIndexKey = getPartitionIndexKey(partitionName, bucket);
+        final byte[] batchSizeAsBytes = Protocol.toByteArray(objectStoreExpiryBatchSize);
+        final RedisLocalCache<Serializable, byte[]> cache = getObjectStoreCache(partitionName);
+
+        for (int batch = 0; batch < objectStoreExpiryMaxBatches; batch++)
+        {
+            final List<byte[]> removedKeys = run(partitionHashKey, new RedisAction<List<byte[]>>(
+                "object-store-expire")
             {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                final byte[] fieldAsBytes = SafeEncoder.encode(field);
-                return redis.hget(keyAsBytes, fieldAsBytes);
+                @Override
+                @SuppressWarnings("unchecked")
+                public List<byte[]> run()
+                {
+                    return (List<byte[]>) OBJECT_STORE_EXPIRE_SCRIPT.eval(redis, 2, partitionHashKey,
+                        partitionIndexKey, maxInsertionTime, maxEntriesAsBytes, batchSizeAsBytes);
+                }
+            });
+
+            if (cache != null)
+            {
+                for (final byte[] removedKey : removedKeys)
+                {
+                    cache.invalidate(RedisUtils.fromBytes(removedKey));
+                }
+            }
+
+            if (removedKeys.size() < objectStoreExpiryBatchSize)
+            {
+                return;
+            }
+        }
+    }
+
+    private void startObjectStoreReaper()
+    {
+        objectStoreReaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, "redis-object-store-reaper");
+                thread.setDaemon(true);
+                return thread;
             }
         });
+
+        objectStoreReaper.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for (final String partitionName : allPartitions())
+                    {
+                        expirePartition(objectStoreEntryTtl, objectStoreMaxEntries, partitionName);
+                    }
+                }
+                catch (final Exception e)
+                {
+                    // the next run will try again
+                    LOGGER.warn("Failed to expire object store entries", e);
+                }
+            }
+        }, objectStoreExpirationInterval, objectStoreExpirationInterval, TimeUnit.MILLISECONDS);
+
+        LOGGER.info(String.format("Expiring object store entries every %dms, ttl: %dms, max entries: %d",
+            objectStoreExpirationInterval, objectStoreEntryTtl, objectStoreMaxEntries));
+    }
+
+    /**
+     * @return the bucket of the partition that holds the key.
+     */
+    private int getBucket(final byte[] keyAsBytes)
+    {
+        if (objectStoreBuckets == 1)
+        {
+            return 0;
+        }
+
+        // stable across JVMs, so all the Mule instances agree on the bucket
+        final int hash = Arrays.hashCode(keyAsBytes);
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % objectStoreBuckets;
+    }
+
+    /**
+     * @return the name of the hash of a bucket, without any suffix if the partition isn't bucketed.
+     */
+    private String getBucketName(final String partitionName, final int bucket)
+    {
+        return objectStoreBuckets == 1 ? partitionName : RedisUtils.getBucketName(partitionName, bucket);
+    }
+
+    private byte[] getPartitionHashKey(final String partitionName, final int bucket)
+    {
+        // with several nodes, the keys related to a bucket must all be routed together
+        return RedisUtils.getPartitionHashKey(getBucketName(partitionName, bucket), keyRouter != null);
+    }
+
+    /**
+     * @return true if stored entries are indexed by insertion time, which is only needed for expiry.
+     */
+    private boolean isObjectStoreIndexed()
+    {
+        return (objectStoreEntryTtl > 0L) || (objectStoreMaxEntries > 0);
+    }
+
+    private byte[] getPartitionIndexKey(final String partitionName, final int bucket)
+    {
+        return RedisUtils.getPartitionIndexKey(getBucketName(partitionName, bucket), keyRouter != null);
+    }
+
+    /**
+     * @return the keys grouped by the bucket that holds them.
+     */
+    private Map<Integer, List<Serializable>> getKeysByBucket(final Collection<? extends Serializable> keys)
+    {
+        final Map<Integer, List<Serializable>> keysByBucket = new LinkedHashMap<Integer, List<Serializable>>();
+
+        if (objectStoreBuckets == 1)
+        {
+            keysByBucket.put(0, new ArrayList<Serializable>(keys));
+            return keysByBucket;
+        }
+
+        for (final Serializable key : keys)
+        {
+            final int bucket = getBucket(RedisUtils.toBytes(key));
+            List<Serializable> bucketKeys = keysByBucket.get(bucket);
+
+            if (bucketKeys == null)
+            {
+                bucketKeys = new ArrayList<Serializable>();
+                keysByBucket.put(bucket, bucketKeys);
+            }
+            bucketKeys.add(key);
+        }
+        return keysByBucket;
+    }
+
+    private static byte[][] toFields(final List<Serializable> keys)
+    {
+        final byte[][] fields = new byte[keys.size()][];
+        for (int i = 0; i < fields.length; i++)
+        {
+            fields[i] = RedisUtils.toBytes(keys.get(i));
+        }
+        return fields;
+    }
+
+    private RedisBloomFilters newObjectStoreBloomFilters()
+    {
+        return new RedisBloomFilters(objectStoreBloomFilterExpectedEntries, objectStoreBloomFilterFalsePositiveRate)
+        {
+            @Override
+            protected void loadKeys(final String partitionName, final RedisBloomFilter filter)
+            {
+                for (int bucket = 0; bucket < objectStoreBuckets; bucket++)
+                {
+                    final byte[] partitionHashKey = getPartitionHashKey(partitionName, bucket);
+                    final List<byte[]> fields = new ArrayList<byte[]>();
+                    byte[] cursor = RedisUtils.SCAN_START_CURSOR;
+
+                    do
+                    {
+                        final byte[] stepCursor = cursor;
+
+                        // one step at a time, on the master that the stored keys are written to
+                        cursor = run(partitionHashKey, new RedisAction<byte[]>("object-store-bloom-filter-load")
+                        {
+                            @Override
+                            public byte[] run()
+                            {
+                                return RedisUtils.hscan(redis, partitionHashKey, stepCursor, scanCount, fields);
+                            }
+                        });
+
+                        for (final byte[] field : fields)
+                        {
+                            filter.put(field);
+                        }
+                        fields.clear();
+                    }
+                    while (!Arrays.equals(cursor, RedisUtils.SCAN_START_CURSOR));
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the tokens of the reads of the keys about to start, or nulls without a cache.
+     */
+    private static List<Object> startCacheReads(final RedisLocalCache<Serializable, byte[]> cache,
+                                                final List<Serializable> keys)
+    {
+        final List<Object> cacheTokens = new ArrayList<Object>(keys.size());
+        for (final Serializable key : keys)
+        {
+            cacheTokens.add(cache == null ? null : cache.startRead(key));
+        }
+        return cacheTokens;
+    }
+
+    /**
+     * @return the local cache of the partition, or null if object store caching is disabled.
+     */
+    private RedisLocalCache<Serializable, byte[]> getObjectStoreCache(final String partitionName)
+    {
+        if (objectStoreCacheMaxEntries <= 0)
+        {
+            return null;
+        }
+
+        RedisLocalCache<Serializable, byte[]> cache = objectStoreCaches.get(partitionName);
+
+        if (cache == null)
+        {
+            final RedisLocalCache<Serializable, byte[]> newCache = new RedisLocalCache<Serializable, byte[]>(
+                objectStoreCacheMaxEntries, objectStoreCacheTtl, objectStoreCacheEviction);
+            cache = objectStoreCaches.putIfAbsent(partitionName, newCache);
+            if (cache == null)
+            {
+                cache = newCache;
+            }
+        }
+
+        return cache;
+    }
+
+    /*----------------------------------------------------------
+                Near Cache Implementation
+    ----------------------------------------------------------*/
+    private static final class NearCacheInvalidationCallback implements SourceCallback
+    {
+        private final RedisLocalCache<String, byte[]> nearCache;
+
+        private NearCacheInvalidationCallback(final RedisLocalCache<String, byte[]> nearCache)
+        {
+            this.nearCache = nearCache;
+        }
+
+        @Override
+        public Object process() throws Exception
+        {
+            return null;
+        }
+
+        @Override
+        public Object process(final Object payload) throws Exception
+        {
+            nearCache.invalidate(SafeEncoder.encode((byte[]) payload));
+            return null;
+        }
+
+        @Override
+        public Object process(final Object payload, final Map<String, Object> properties) throws Exception
+        {
+            return process(payload);
+        }
+    }
+
+    /**
+     * @return the bytes of a value to write: see {@link RedisUtils#toBytes(Object, String)}, while
+     *         any other value is transformed to a string, with the transformers of Mule if it is
+     *         the payload.
+     */
+    private byte[] toBytes(final Object value, final MuleEvent muleEvent) throws TransformerException, IOException
+    {
+        final byte[] valueAsBytes = RedisUtils.toBytes(value, muleEvent.getEncoding());
+        if ((valueAsBytes != null) || (value == null))
+        {
+            return valueAsBytes;
+        }
+
+        if (value == muleEvent.getMessage().getPayload())
+        {
+            return RedisUtils.toBytes(muleEvent.transformMessageToString(), muleEvent.getEncoding());
+        }
+        return RedisUtils.toBytes(value.toString(), muleEvent.getEncoding());
+    }
+
+    private byte[] compress(final byte[] value)
+    {
+        final long start = System.nanoTime();
+        final byte[] compressed = compressor.compress(value);
+
+        if ((redisMetrics != null) && (compressed != value))
+        {
+            redisMetrics.record("compress", start, false);
+        }
+        return compressed;
+    }
+
+    private byte[] decompress(final byte[] value)
+    {
+        final long start = System.nanoTime();
+        final byte[] decompressed = compressor.decompress(value);
+
+        if ((redisMetrics != null) && (decompressed != value))
+        {
+            redisMetrics.record("decompress", start, false);
+        }
+        return decompressed;
+    }
+
+    private byte[] serialize(final Serializable value)
+    {
+        final long start = System.nanoTime();
+        final byte[] valueAsBytes = objectStoreSerializer.serialize(value);
+
+        if (redisMetrics != null)
+        {
+            redisMetrics.record("object-store-serialize", start, false);
+        }
+        return valueAsBytes;
+    }
+
+    private Serializable deserialize(final byte[] valueAsBytes)
+    {
+        final long start = System.nanoTime();
+        final Serializable value = objectStoreSerializer.deserialize(valueAsBytes);
+
+        if (redisMetrics != null)
+        {
+            redisMetrics.record("object-store-deserialize", start, false);
+        }
+        return value;
+    }
+
+    private void unsubscribeActiveListeners()
+    {
+        synchronized (activeListeners)
+        {
+            for (final RedisPubSubListener listener : activeListeners)
+            {
+                unsubscribe(listener);
+            }
+        }
+
+        final RedisSubscriptionManager subscriptionManager;
+        synchronized (this)
+        {
+            subscriptionManager = this.subscriptionManager;
+        }
+
+        if (subscriptionManager != null)
+        {
+            try
+            {
+                // its subscriptions are restored as soon as it reconnects, unless the connector stops
+                subscriptionManager.unsubscribeAll();
+            }
+            catch (final JedisException je)
+            {
+                LOGGER.warn("Failed to unsubscribe the shared subscriber", je);
+            }
+        }
+    }
+
+    private void unsubscribe(final RedisPubSubListener listener)
+    {
+        try
+        {
+            if (listener.isSubscribed())
+            {
+                listener.unsubscribeAll();
+            }
+        }
+        catch (final JedisException je)
+        {
+            LOGGER.warn("Failed to unsubscribe listener: " + listener, je);
+        }
+    }
+
+    /**
+     * @return the manager of the subscriptions shared by all the subscribe sources, connected by
+     *         the first of them.
+     */
+    private synchronized RedisSubscriptionManager getSubscriptionManager()
+    {
+        if (subscriptionManager == null)
+        {
+            final RedisSubscriptionManager newSubscriptionManager = new RedisSubscriptionManager();
+            final Thread subscriber = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    subscribe("shared subscriptions", null, new AtomicBoolean(true), new SubscriptionAction()
+                    {
+                        @Override
+                        public Void run()
+                        {
+                            newSubscriptionManager.subscribe(redis);
+                            return null;
+                        }
+                    });
+                }
+            }, "redis-subscription-manager");
+            subscriber.setDaemon(true);
+            subscriber.start();
+            subscriptionManager = newSubscriptionManager;
+        }
+        return subscriptionManager;
+    }
+
+    /**
+     * @return the scheduler delivering the batches of subscriptions that don't fill up in time,
+     *         created by the first batched subscription.
+     */
+    private synchronized ScheduledExecutorService getPubSubBatchFlusher()
+    {
+        if (pubSubBatchFlusher == null)
+        {
+            pubSubBatchFlusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(final Runnable runnable)
+                {
+                    final Thread thread = new Thread(runnable, "redis-pubsub-batch-flusher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return pubSubBatchFlusher;
+    }
+
+    private void startNearCacheInvalidator()
+    {
+        if (keyRouter == null)
+        {
+            startNearCacheInvalidator(null, "redis-near-cache-invalidator");
+            return;
+        }
+
+        // invalidations are published on the node of their key: all the nodes must be listened to
+        final List<JedisPool> nodePools = keyRouter.getPools();
+        for (int i = 0; i < nodePools.size(); i++)
+        {
+            startNearCacheInvalidator(nodePools.get(i), "redis-near-cache-invalidator-" + i);
+        }
+    }
+
+    private void startNearCacheInvalidator(final JedisPool nodePool, final String threadName)
+    {
+        final Thread nearCacheInvalidator = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // invalidations are cheap and must not be dropped: they skip the dispatcher
+                final List<String> channels = Collections.singletonList(RedisConstants.NEAR_CACHE_INVALIDATION_CHANNEL);
+                final RedisPubSubListener listener = new RedisPubSubListener(
+                    new NearCacheInvalidationCallback(nearCache), channels, null, null);
+
+                subscribe(channels, nodePool, listener, new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        // invalidations may have been missed while not subscribed
+                        nearCache.invalidateAll();
+                    }
+                }, new AtomicBoolean(true));
+            }
+        }, threadName);
+        nearCacheInvalidator.setDaemon(true);
+        nearCacheInvalidator.start();
+    }
+
+    /**
+     * @return a copy of the value cached for the key, or null if there's none or if the value must
+     *         be read from Redis because a pipeline is in progress.
+     */
+    private byte[] getNearCached(final String cacheKey)
+    {
+        if ((nearCache == null) || (RedisPipeline.getCurrent(jedisPool) != null))
+        {
+            return null;
+        }
+
+        final byte[] cachedValue = nearCache.get(cacheKey);
+        return cachedValue == null ? null : cachedValue.clone();
+    }
+
+    private Object startNearCacheRead(final String cacheKey)
+    {
+        return nearCache == null ? null : nearCache.startRead(cacheKey);
+    }
+
+    private byte[] putNearCached(final String cacheKey, final byte[] value, final Object cacheToken)
+    {
+        if ((nearCache != null) && (value != null))
+        {
+            nearCache.put(cacheKey, value.clone(), cacheToken);
+        }
+        return value;
     }
 
     /**
-     * Increments the number stored at field in the hash stored at key by increment. If key does not
-     * exist, a new key holding a hash is created. If field does not exist the value is set to 0
-     * before the operation is performed.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:hash-increment}
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:hash-increment-step}
-     * 
-     * @param key Key that will be used for HGET
-     * @param field Field that will be used for HGET
-     * @param step Step used for the increment.
-     * @return the incremented number.
+     * Invalidates the key in the local near cache and queues the publication of its invalidation
+     * to the other connectors.
+     *
+     * @return the number of queued commands.
      */
-    @Processor(name = "hash-increment")
-    public Long incrementHash(final String key, final String field, @Optional @Default("1") final long step)
+    private int queueNearCacheInvalidation(final BinaryClient client, final String cacheKey)
     {
-        return RedisUtils.run(jedisPool, new RedisAction<Long>()
+        if (nearCache == null)
         {
-            @Override
-            public Long run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                final byte[] fieldAsBytes = SafeEncoder.encode(field);
-                return redis.hincrBy(keyAsBytes, fieldAsBytes, step);
-            }
-        });
+            return 0;
+        }
+
+        nearCache.invalidate(cacheKey);
+        client.publish(SafeEncoder.encode(RedisConstants.NEAR_CACHE_INVALIDATION_CHANNEL),
+            SafeEncoder.encode(cacheKey));
+        return 1;
     }
 
-    // LATER add http://redis.io/commands/hincrbyfloat when Jedis supports it
+    private <R> R run(final RedisAction<R> action)
+    {
+        if ((commandCoalescer != null) && (action instanceof QueueableRedisAction)
+            && (RedisPipeline.getCurrent(jedisPool) == null))
+        {
+            return commandCoalescer.run((QueueableRedisAction<R>) action);
+        }
 
-    // ************** Lists **************
+        return RedisUtils.run(jedisPool, action);
+    }
 
-    public static enum ListPushSide
+    /**
+     * Runs the tasks in parallel, one per node or per object store bucket, and waits for all of
+     * them to complete.
+     *
+     * @return the results of the tasks, in order.
+     */
+    private <R> List<R> runInParallel(final List<Callable<R>> nodeTasks)
     {
-        LEFT
+        try
         {
-            @Override
-            byte[] push(final BinaryJedis redis,
-                        final byte[] key,
-                        final byte[] message,
-                        final boolean ifExists)
-            {
-                if (ifExists)
-                {
-                    if (redis.lpushx(key, message) == 0)
-                    {
-                        return null;
-                    }
-                }
-                else
-                {
-                    redis.lpush(key, message);
-                }
-                return message;
-            }
-
-            @Override
-            byte[] pop(final BinaryJedis redis, final byte[] key)
+            final List<R> results = new ArrayList<R>(nodeTasks.size());
+            for (final Future<R> nodeResult : fanOutExecutor.invokeAll(nodeTasks))
             {
-                return redis.lpop(key);
+                results.add(nodeResult.get());
             }
-        },
-        RIGHT
+            return results;
+        }
+        catch (final ExecutionException ee)
         {
-            @Override
-            byte[] push(final BinaryJedis redis,
-                        final byte[] key,
-                        final byte[] message,
-                        final boolean ifExists)
+            if (ee.getCause() instanceof RuntimeException)
             {
-                if (ifExists)
-                {
-                    if (redis.rpushx(key, message) == 0)
-                    {
-                        return null;
-                    }
-                }
-                else
-                {
-                    redis.rpush(key, message);
-                }
-                return message;
+                throw (RuntimeException) ee.getCause();
             }
+            throw new JedisException(ee.getCause());
+        }
+        catch (final InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new JedisException("Interrupted while waiting for all the nodes", ie);
+        }
+    }
 
-            @Override
-            byte[] pop(final BinaryJedis redis, final byte[] key)
-            {
-                return redis.rpop(key);
-            }
-        };
+    private <R> R run(final String key, final RedisAction<R> action)
+    {
+        return run(SafeEncoder.encode(key), action);
+    }
+
+    /**
+     * Runs an action on the key, which determines the node to use in cluster or sharded mode.
+     */
+    private <R> R run(final byte[] key, final RedisAction<R> action)
+    {
+        if (keyRouter != null)
+        {
+            return keyRouter.run(key, action);
+        }
 
-        abstract byte[] push(BinaryJedis redis, byte[] key, byte[] message, boolean ifNotExists);
+        return run(action);
+    }
+
+    private <R> R runRead(final String key, final RedisAction<R> action)
+    {
+        return runRead(SafeEncoder.encode(key), action);
+    }
+
+    private <R> R runRead(final byte[] key, final RedisAction<R> action)
+    {
+        if (keyRouter != null)
+        {
+            return keyRouter.run(key, action);
+        }
 
-        abstract byte[] pop(BinaryJedis redis, final byte[] key);
+        return runRead(action);
     }
 
     /**
-     * Push the message payload to the desired side (LEFT or RIGHT) of the list stored at the
-     * specified key. If key does not exist, a new key holding a list is created as long as ifExists
-     * is not true.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:list-push}
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:list-push-value}
-     * 
-     * @param key Key that will be used for LPUSH/RPUSH/LPUSHX/RPUSH
-     * @param side The side where to push the payload, either LEFT or RIGHT
-     * @param ifExists If true execute LPUSHX/RPUSH otherwise LPUSH/RPUSH
-     * @param value The value to push.
-     * @param muleEvent The current {@link MuleEvent}.
-     * @return If the key doesn't already exist and ifExists is true, null is returned. Otherwise
-     *         the message is returned.
+     * Runs a read-only action whose result is near cached on the master, which has seen every write
+     * whose invalidation has been received, or like any read-only action without a near cache.
      */
-    @Processor(name = "list-push")
-    @Inject
-    public byte[] pushToList(final String key,
-                             final ListPushSide side,
-                             @Optional @Default("false") final boolean ifExists,
-                             @Optional @Default("#[message.payloadAs(java.lang.String)]") final String value,
-                             final MuleEvent muleEvent)
+    private <R> R runNearCachedRead(final String key, final RedisAction<R> action)
     {
-        return RedisUtils.run(jedisPool, new RedisAction<byte[]>()
+        if (nearCache != null)
         {
-            @Override
-            public byte[] run()
-            {
-                final byte[] valueAsBytes = RedisUtils.toBytes(value, muleEvent.getEncoding());
-                return side.push(redis, SafeEncoder.encode(key), valueAsBytes, ifExists);
-            }
-        });
+            return run(key, action);
+        }
+
+        return runRead(key, action);
     }
 
     /**
-     * Pop a value from the desired side of the list stored at the specified key.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:list-pop}
-     * 
-     * @param key Key that will be used for LPOP/RPOP
-     * @param side The side where to pop the value from, either LEFT or RIGHT
-     * @return The popped value or null if either the list is empty or no list exists at the key
+     * Runs a read-only action on a replica if any is configured, except within a pipeline which
+     * must see its own writes.
      */
-    @Processor(name = "list-pop")
-    public byte[] popFromList(final String key, final ListPushSide side)
+    private <R> R runRead(final RedisAction<R> action)
     {
-        return RedisUtils.run(jedisPool, new RedisAction<byte[]>()
+        if ((redisReadReplicas == null) || (RedisPipeline.getCurrent(jedisPool) != null))
         {
-            @Override
-            public byte[] run()
+            return run(action);
+        }
+
+        try
+        {
+            return redisReadReplicas.run(action);
+        }
+        catch (final JedisConnectionException jce)
+        {
+            if (!readFallbackToMaster)
             {
-                return side.pop(redis, SafeEncoder.encode(key));
+                throw jce;
             }
-        });
-    }
 
-    // ************** Sets **************
+            LOGGER.warn("Failed to read from a replica, falling back to master", jce);
+            return run(action);
+        }
+    }
 
-    /**
-     * Add the message payload to the set stored at the specified key. If key does not exist, a new
-     * key holding a set is created.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:set-add}
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:set-add-value}
-     * 
-     * @param key Key that will be used for SADD
-     * @param mustSucceed If true, ensures that adding to the set was successful (ie no pre-existing
-     *            identical value in the set)
-     * @param value The value to set.
-     * @param muleEvent The current {@link MuleEvent}.
-     * @return If no new entry has been added to the set and mustSucceed is true, null is returned.
-     *         Otherwise the message is returned.
-     */
-    @Processor(name = "set-add")
-    @Inject
-    public byte[] addToSet(final String key,
-                           @Optional @Default("false") final boolean mustSucceed,
-                           @Optional @Default("#[message.payloadAs(java.lang.String)]") final String value,
-                           final MuleEvent muleEvent)
+    private static void validateBatchSize(final int batchSize)
     {
-        return RedisUtils.run(jedisPool, new RedisAction<byte[]>()
+        if (batchSize < 1)
         {
-            @Override
-            public byte[] run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                final byte[] valueAsBytes = RedisUtils.toBytes(value, muleEvent.getEncoding());
+            throw new IllegalArgumentException("Batch size must be strictly positive, got: " + batchSize);
+        }
+    }
+
+    /*----------------------------------------------------------
+                        Java Accessors Gong Show
+     ----------------------------------------------------------*/
+    public String getHost()
+    {
+        return host;
+    }
+
+    public void setHost(final String host)
+    {
+        this.host = host;
+    }
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    public void setPort(final int port)
+    {
+        this.port = port;
+    }
+
+    public int getConnectionTimeout()
+    {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(final int connectionTimeout)
+    {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public int getReconnectionFrequency()
+    {
+        return reconnectionFrequency;
+    }
+
+    public void setReconnectionFrequency(final int reconnectionFrequency)
+    {
+        this.reconnectionFrequency = reconnectionFrequency;
+    }
+
+    public String getPassword()
+    {
+        return password;
+    }
+
+    public void setPassword(final String password)
+    {
+        this.password = password;
+    }
+
+    public String getDefaultPartitionName()
+    {
+        return defaultPartitionName;
+    }
+
+    public void setDefaultPartitionName(final String defaultPartitionName)
+    {
+        this.defaultPartitionName = defaultPartitionName;
+    }
+
+    public int getScanCount()
+    {
+        return scanCount;
+    }
+
+    public void setScanCount(final int scanCount)
+    {
+        this.scanCount = scanCount;
+    }
+
+    public RedisSerializer getObjectStoreSerializer()
+    {
+        return objectStoreSerializer;
+    }
+
+    public void setObjectStoreSerializer(final RedisSerializer objectStoreSerializer)
+    {
+        this.objectStoreSerializer = objectStoreSerializer;
+    }
+
+    public Config getPoolConfig()
+    {
+        return poolConfig;
+    }
+
+    public void setPoolConfig(final Config poolConfig)
+    {
+        this.poolConfig = poolConfig;
+    }
+
+    public boolean isAutoPipelining()
+    {
+        return autoPipelining;
+    }
+
+    public void setAutoPipelining(final boolean autoPipelining)
+    {
+        this.autoPipelining = autoPipelining;
+    }
+
+    public int getAutoPipeliningBatchSize()
+    {
+        return autoPipeliningBatchSize;
+    }
+
+    public void setAutoPipeliningBatchSize(final int autoPipeliningBatchSize)
+    {
+        this.autoPipeliningBatchSize = autoPipeliningBatchSize;
+    }
+
+    public long getAutoPipeliningWindow()
+    {
+        return autoPipeliningWindow;
+    }
 
-                final long result = redis.sadd(keyAsBytes, valueAsBytes);
-                return !mustSucceed || result > 0 ? valueAsBytes : null;
-            }
-        });
+    public void setAutoPipeliningWindow(final long autoPipeliningWindow)
+    {
+        this.autoPipeliningWindow = autoPipeliningWindow;
     }
 
-    /**
-     * Pops a random value from the set stored at the specified key.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:set-pop}
-     * 
-     * @param key Key that will be used for SPOP
-     * @return The popped value or null if either the set is empty or no set exists at the key
-     */
-    @Processor(name = "set-pop")
-    public byte[] popFromSet(final String key)
+    public List<String> getClusterNodes()
     {
-        return RedisUtils.run(jedisPool, new RedisAction<byte[]>()
-        {
-            @Override
-            public byte[] run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                final byte[] result = redis.spop(keyAsBytes);
-                return result;
-            }
-        });
+        return clusterNodes;
     }
 
-    /**
-     * Reads a random value from the set stored at the specified key.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:set-fetch-random-member}
-     * 
-     * @param key Key that will be used for SRANDMEMBER
-     * @return The random value or null if either the set is empty or no set exists at the key
-     */
-    @Processor(name = "set-fetch-random-member")
-    public byte[] randomMemberFromSet(final String key)
+    public void setClusterNodes(final List<String> clusterNodes)
     {
-        return RedisUtils.run(jedisPool, new RedisAction<byte[]>()
-        {
-            @Override
-            public byte[] run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                final byte[] result = redis.srandmember(keyAsBytes);
-                return result;
-            }
-        });
+        this.clusterNodes = clusterNodes;
     }
 
-    // ************** Sorted Sets **************
+    public List<String> getShards()
+    {
+        return shards;
+    }
 
-    /**
-     * Add the message payload with the desired score to the sorted set stored at the specified key.
-     * If key does not exist, a new key holding a sorted set is created.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:sorted-set-add}
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:sorted-set-add-value}
-     * 
-     * @param key Key that will be used for ZADD
-     * @param score Score to use for the value
-     * @param mustSucceed If true, ensures that adding to the sorted set was successful (ie no
-     *            pre-existing identical value in the set)
-     * @param value The value to set.
-     * @param muleEvent The current {@link MuleEvent}.
-     * @return If no new entry has been added to the sorted set and mustSucceed is true, null is
-     *         returned. Otherwise the message is returned.
-     */
-    @Processor(name = "sorted-set-add")
-    @Inject
-    public byte[] addToSortedSet(final String key,
-                                 final double score,
-                                 @Optional @Default("false") final boolean mustSucceed,
-                                 @Optional @Default("#[message.payloadAs(java.lang.String)]") final String value,
-                                 final MuleEvent muleEvent)
+    public void setShards(final List<String> shards)
     {
-        return RedisUtils.run(jedisPool, new RedisAction<byte[]>()
-        {
-            @Override
-            public byte[] run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                final byte[] valueAsBytes = RedisUtils.toBytes(value, muleEvent.getEncoding());
+        this.shards = shards;
+    }
 
-                final long result = redis.zadd(keyAsBytes, score, valueAsBytes);
-                return !mustSucceed || result > 0 ? valueAsBytes : null;
-            }
-        });
+    public int getCompressionThreshold()
+    {
+        return compressionThreshold;
     }
 
-    public static enum SortedSetOrder
+    public void setCompressionThreshold(final int compressionThreshold)
     {
-        ASCENDING
-        {
-            @Override
-            Set<byte[]> getRangeByIndex(final BinaryJedis redis,
-                                        final byte[] key,
-                                        final int start,
-                                        final int end)
-            {
-                return redis.zrange(key, start, end);
-            }
+        this.compressionThreshold = compressionThreshold;
+    }
 
-            @Override
-            Set<byte[]> getRangeByScore(final BinaryJedis redis,
-                                        final byte[] key,
-                                        final double min,
-                                        final double max)
-            {
-                return redis.zrangeByScore(key, min, max);
-            }
-        },
-        DESCENDING
-        {
-            @Override
-            Set<byte[]> getRangeByIndex(final BinaryJedis redis,
-                                        final byte[] key,
-                                        final int start,
-                                        final int end)
-            {
-                return redis.zrevrange(key, start, end);
-            }
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
 
-            @Override
-            Set<byte[]> getRangeByScore(final BinaryJedis redis,
-                                        final byte[] key,
-                                        final double min,
-                                        final double max)
-            {
-                return redis.zrevrangeByScore(key, min, max);
-            }
-        };
+    public void setCompressionLevel(final int compressionLevel)
+    {
+        this.compressionLevel = compressionLevel;
+    }
 
-        abstract Set<byte[]> getRangeByIndex(BinaryJedis redis, final byte[] key, int start, int end);
+    public int getStreamChunkSize()
+    {
+        return streamChunkSize;
+    }
 
-        abstract Set<byte[]> getRangeByScore(BinaryJedis redis, final byte[] key, double min, double max);
+    public void setStreamChunkSize(final int streamChunkSize)
+    {
+        this.streamChunkSize = streamChunkSize;
     }
 
-    /**
-     * Retrieve a range of values from the sorted set stored at the specified key. The range of
-     * values is defined by indices in the sorted set and sorted as desired.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample
-     * redis:sorted-set-select-range-by-index}
-     * 
-     * @param key Key that will be used for ZRANGE/ZREVRANGE
-     * @param start Range start index
-     * @param end Range end index
-     * @param order Index order for sorting the range, either ASCENDING or DESCENDING
-     * @return the values in the specified range in the desired order as Set<byte[]>
-     */
-    @Processor(name = "sorted-set-select-range-by-index")
-    public Set<byte[]> getRangeByIndex(final String key,
-                                       final int start,
-                                       final int end,
-                                       @Optional @Default("ASCENDING") final SortedSetOrder order)
+    public String getMetricsName()
     {
-        return RedisUtils.run(jedisPool, new RedisAction<Set<byte[]>>()
-        {
-            @Override
-            public Set<byte[]> run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                return order.getRangeByIndex(redis, keyAsBytes, start, end);
-            }
-        });
+        return metricsName;
     }
 
-    /**
-     * Retrieve a range of values from the sorted set stored at the specified key. The range of
-     * values is defined by scores in the sorted set and sorted as desired.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample
-     * redis:sorted-set-select-range-by-score}
-     * 
-     * @param key Key that will be used for ZRANGEBYSCORE/ZREVRANGEBYSCORE
-     * @param min Range start score
-     * @param max Range end score
-     * @param order Score order for sorting the range, either ASCENDING or DESCENDING
-     * @return the values in the specified range in the desired order as Set<byte[]>
-     */
-    @Processor(name = "sorted-set-select-range-by-score")
-    public Set<byte[]> getRangeByScore(final String key,
-                                       final double min,
-                                       final double max,
-                                       @Optional @Default("ASCENDING") final SortedSetOrder order)
+    public void setMetricsName(final String metricsName)
     {
-        return RedisUtils.run(jedisPool, new RedisAction<Set<byte[]>>()
-        {
-            @Override
-            public Set<byte[]> run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                return order.getRangeByScore(redis, keyAsBytes, min, max);
-            }
-        });
+        this.metricsName = metricsName;
     }
 
-    /**
-     * Increments the score of member in the sorted set stored at key by increment. If member does
-     * not exist in the sorted set, it is added with increment as its score (as if its previous
-     * score was 0.0). If key does not exist, a new sorted set with the specified member as its sole
-     * member is created.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:sorted-set-increment}
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:sorted-set-increment-value}
-     * 
-     * @param key the key in the sorted set.
-     * @param step the step to use to increment the score.
-     * @param value The value to set.
-     * @param muleEvent The current {@link MuleEvent}.
-     * @return the new score of the member.
-     */
-    @Processor(name = "sorted-set-increment")
-    @Inject
-    public Double incrementSortedSet(final String key,
-                                     final double step,
-                                     @Optional @Default("#[message.payloadAs(java.lang.String)]") final String value,
-                                     final MuleEvent muleEvent)
+    public RedisMetrics getRedisMetrics()
     {
-        return RedisUtils.run(jedisPool, new RedisAction<Double>()
-        {
-            @Override
-            public Double run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                final byte[] valueAsBytes = RedisUtils.toBytes(value, muleEvent.getEncoding());
+        return redisMetrics;
+    }
 
-                return redis.zincrby(keyAsBytes, step, valueAsBytes);
-            }
-        });
+    public List<String> getSentinels()
+    {
+        return sentinels;
     }
 
-    // ************** Key Volatility **************
+    public void setSentinels(final List<String> sentinels)
+    {
+        this.sentinels = sentinels;
+    }
 
-    /**
-     * Set a timeout on the specified key.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:expire}
-     * 
-     * @param key the key in the sorted set.
-     * @param seconds the time to live in seconds.
-     * @return true if EXPIRE was successful, false otherwise.
-     */
-    @Processor
-    public Boolean expire(final String key, final int seconds)
+    public String getMasterName()
     {
-        return RedisUtils.run(jedisPool, new RedisAction<Boolean>()
-        {
-            @Override
-            public Boolean run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                return redis.expire(keyAsBytes, seconds) == 1L;
-            }
-        });
+        return masterName;
     }
 
-    /**
-     * Set a timeout in the form of a UNIX timestamp (Number of seconds elapsed since 1 Jan 1970) on
-     * the specified key.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:expire-at}
-     * 
-     * @param key the key in the sorted set.
-     * @param unixTime the UNIX timestamp in seconds.
-     * @return true if EXPIREAT was successful, false otherwise.
-     */
-    @Processor
-    public Boolean expireAt(final String key, final long unixTime)
+    public void setMasterName(final String masterName)
     {
-        return RedisUtils.run(jedisPool, new RedisAction<Boolean>()
-        {
-            @Override
-            public Boolean run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                return redis.expireAt(keyAsBytes, unixTime) == 1L;
-            }
-        });
+        this.masterName = masterName;
     }
 
-    /**
-     * Undo an expire or expireAt ; turning the volatile key into a normal key.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:persist}
-     * 
-     * @param key the key in the sorted set.
-     * @return true if PERSIST was successful, false otherwise.
-     */
-    @Processor
-    public Boolean persist(final String key)
+    public List<String> getReadReplicas()
     {
-        return RedisUtils.run(jedisPool, new RedisAction<Boolean>()
-        {
-            @Override
-            public Boolean run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                return redis.persist(keyAsBytes) == 1L;
-            }
-        });
+        return readReplicas;
     }
 
-    /**
-     * Get the remaining time to live in seconds of a volatile key.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:get-ttl}
-     * 
-     * @param key the key in the sorted set.
-     * @return the remaining time to live in seconds, -2 when key does not exist or -1 when key does
-     *         not have a timeout.
-     */
-    @Processor
-    public Long getTtl(final String key)
+    public void setReadReplicas(final List<String> readReplicas)
     {
-        return RedisUtils.run(jedisPool, new RedisAction<Long>()
-        {
-            @Override
-            public Long run()
-            {
-                final byte[] keyAsBytes = SafeEncoder.encode(key);
-                return redis.ttl(keyAsBytes);
-            }
-        });
+        this.readReplicas = readReplicas;
     }
 
-    // LATER add PEXPIRE PEXPIREAT PTTL when Jedis supports it
+    public ReadReplicaSelection getReadReplicaSelection()
+    {
+        return readReplicaSelection;
+    }
 
-    /*----------------------------------------------------------
-                Pub/Sub Implementation
-    ----------------------------------------------------------*/
+    public void setReadReplicaSelection(final ReadReplicaSelection readReplicaSelection)
+    {
+        this.readReplicaSelection = readReplicaSelection;
+    }
+
+    public boolean isReadFallbackToMaster()
+    {
+        return readFallbackToMaster;
+    }
 
-    /**
-     * Publish the message payload to the specified channel.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:publish}
-     * 
-     * @param channel Destination of the published message
-     * @param mustSucceed Enforces the fact that the message must have been delivered to at least
-     *            one consumer
-     * @param message The message to publish.
-     * @param muleEvent The current {@link MuleEvent}.
-     * @return If no consumer is subscribed to the channel and mustSucceed is true, null is
-     *         returned. Otherwise the message is returned.
-     */
-    @Processor
-    @Inject
-    public byte[] publish(final String channel,
-                          @Optional @Default("false") final boolean mustSucceed,
-                          @Optional @Default("#[message.payloadAs(java.lang.String)]") final String message,
-                          final MuleEvent muleEvent)
+    public void setReadFallbackToMaster(final boolean readFallbackToMaster)
     {
-        return RedisUtils.run(jedisPool, new RedisAction<byte[]>()
-        {
-            @Override
-            public byte[] run()
-            {
-                final byte[] messageAsBytes = RedisUtils.toBytes(message, muleEvent.getEncoding());
+        this.readFallbackToMaster = readFallbackToMaster;
+    }
 
-                final Long numberOfSubscribers = redis.publish(SafeEncoder.encode(channel), messageAsBytes);
-                return (!mustSucceed || (mustSucceed && numberOfSubscribers > 0)) ? messageAsBytes : null;
-            }
-        });
+    public int getNearCacheMaxEntries()
+    {
+        return nearCacheMaxEntries;
     }
 
-    /**
-     * Subscribe to the specified channels.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-redis.xml.sample redis:subscribe}
-     * 
-     * @param channels A list of channel names or globbing patterns.
-     * @param callback Called when messages arrive in any of the specified channels.
-     */
-    @Source
-    public void subscribe(final List<String> channels, final SourceCallback callback)
+    public void setNearCacheMaxEntries(final int nearCacheMaxEntries)
     {
-        while (running)
-        {
-            try
-            {
-                RedisUtils.run(jedisPool, new RedisAction<Void>()
-                {
-                    @Override
-                    public Void run()
-                    {
-                        // this blocks until Redis gets disconnected
-                        final RedisPubSubListener listener = new RedisPubSubListener(callback);
+        this.nearCacheMaxEntries = nearCacheMaxEntries;
+    }
 
-                        redis.psubscribe(listener, RedisUtils.getPatternsFromChannels(channels));
-                        return null;
-                    }
-                });
-            }
-            catch (final JedisConnectionException jce)
-            {
-                LOGGER.warn("Subscriber disconnected from channels: " + channels
-                            + ", will retry connecting in: " + reconnectionFrequency + "ms.", jce);
+    public long getNearCacheTtl()
+    {
+        return nearCacheTtl;
+    }
 
-                try
-                {
-                    if (running)
-                    {
-                        Thread.sleep(reconnectionFrequency);
-                    }
-                }
-                catch (final InterruptedException ie)
-                {
-                    // connector stopping, let's restore interrupted state
-                    Thread.currentThread().interrupt();
-                }
-            }
-        }
+    public void setNearCacheTtl(final long nearCacheTtl)
+    {
+        this.nearCacheTtl = nearCacheTtl;
     }
 
-    /*----------------------------------------------------------
-                ObjectStore Implementation
-    ----------------------------------------------------------*/
-    @Override
-    public boolean isPersistent()
+    public LocalCacheEviction getNearCacheEviction()
     {
-        return true;
+        return nearCacheEviction;
     }
 
-    @Override
-    public boolean contains(final Serializable key) throws ObjectStoreException
+    public void setNearCacheEviction(final LocalCacheEviction nearCacheEviction)
     {
-        return contains(key, getActualDefaultPartitionName());
+        this.nearCacheEviction = nearCacheEviction;
     }
 
-    @Override
-    public void store(final Serializable key, final Serializable value) throws ObjectStoreException
+    /**
+     * @return the near cache, which exposes hit, miss and eviction counters, or null if it's
+     *         disabled.
+     */
+    public RedisLocalCache<String, byte[]> getNearCache()
     {
-        store(key, value, getActualDefaultPartitionName());
+        return nearCache;
     }
 
-    @Override
-    public Serializable retrieve(final Serializable key) throws ObjectStoreException
+    public int getPubSubWorkers()
     {
-        return retrieve(key, getActualDefaultPartitionName());
+        return pubSubWorkers;
     }
 
-    @Override
-    public Serializable remove(final Serializable key) throws ObjectStoreException
+    public void setPubSubWorkers(final int pubSubWorkers)
     {
-        return remove(key, getActualDefaultPartitionName());
+        this.pubSubWorkers = pubSubWorkers;
     }
 
-    /*----------------------------------------------------------
-               ListableObjectStore Implementation
-    ----------------------------------------------------------*/
-    @Override
-    public void open() throws ObjectStoreException
+    public boolean isSharedSubscriber()
     {
-        open(getActualDefaultPartitionName());
+        return sharedSubscriber;
     }
 
-    @Override
-    public void close() throws ObjectStoreException
+    public void setSharedSubscriber(final boolean sharedSubscriber)
     {
-        close(getActualDefaultPartitionName());
+        this.sharedSubscriber = sharedSubscriber;
     }
 
-    @Override
-    public List<Serializable> allKeys() throws ObjectStoreException
+    public int getPubSubQueueCapacity()
     {
-        return allKeys(getActualDefaultPartitionName());
+        return pubSubQueueCapacity;
     }
 
-    private String getActualDefaultPartitionName()
+    public void setPubSubQueueCapacity(final int pubSubQueueCapacity)
     {
-        if (StringUtils.isBlank(getDefaultPartitionName()))
-        {
-            return FALLBACK_PARTITION_NAME;
-        }
+        this.pubSubQueueCapacity = pubSubQueueCapacity;
+    }
 
-        final MuleEvent muleEvent = RequestContext.getEvent();
+    public PubSubOverflow getPubSubOverflow()
+    {
+        return pubSubOverflow;
+    }
 
-        if (muleEvent != null)
-        {
-            return muleContext.getExpressionManager().parse(getDefaultPartitionName(), muleEvent);
-        }
-        else
-        {
-            return getDefaultPartitionName();
-        }
+    public void setPubSubOverflow(final PubSubOverflow pubSubOverflow)
+    {
+        this.pubSubOverflow = pubSubOverflow;
     }
 
-    /*----------------------------------------------------------
-             PartitionableObjectStore Implementation
-    ----------------------------------------------------------*/
-    @Override
-    public boolean contains(final Serializable key, final String partitionName) throws ObjectStoreException
+    /**
+     * @return the pub/sub dispatcher, which exposes queue depth and dropped message counters, or
+     *         null if messages are delivered on the subscribing threads.
+     */
+    public RedisPubSubDispatcher getPubSubDispatcher()
     {
-        return RedisUtils.run(jedisPool, new RedisAction<Boolean>()
-        {
-            @Override
-            public Boolean run()
-            {
-                return redis.hexists(RedisUtils.getPartitionHashKey(partitionName), RedisUtils.toBytes(key));
-            }
-        });
+        return pubSubDispatcher;
     }
 
-    @Override
-    public void store(final Serializable key, final Serializable value, final String partitionName)
-        throws ObjectStoreException
+    public int getObjectStoreCacheMaxEntries()
     {
-        final Long result = RedisUtils.run(jedisPool, new RedisAction<Long>()
-        {
-            @Override
-            public Long run()
-            {
-                return redis.hsetnx(RedisUtils.getPartitionHashKey(partitionName), RedisUtils.toBytes(key),
-                    RedisUtils.toBytes(value));
-            }
-        });
+        return objectStoreCacheMaxEntries;
+    }
 
-        if (result == 0)
-        {
-            throw new ObjectAlreadyExistsException(
-                MessageFactory.createStaticMessage("There is already a value for: " + key));
-        }
+    public void setObjectStoreCacheMaxEntries(final int objectStoreCacheMaxEntries)
+    {
+        this.objectStoreCacheMaxEntries = objectStoreCacheMaxEntries;
     }
 
-    @Override
-    public Serializable retrieve(final Serializable key, final String partitionName)
-        throws ObjectStoreException
+    public long getObjectStoreCacheTtl()
     {
-        final Serializable result = RedisUtils.run(jedisPool, new RedisAction<Serializable>()
-        {
-            @Override
-            public Serializable run()
-            {
-                return RedisUtils.fromBytes(redis.hget(RedisUtils.getPartitionHashKey(partitionName),
-                    RedisUtils.toBytes(key)));
-            }
-        });
+        return objectStoreCacheTtl;
+    }
 
-        if (result == null)
-        {
-            throw new ObjectDoesNotExistException(
-                MessageFactory.createStaticMessage("No value found for key: " + key));
-        }
+    public void setObjectStoreCacheTtl(final long objectStoreCacheTtl)
+    {
+        this.objectStoreCacheTtl = objectStoreCacheTtl;
+    }
 
-        return result;
+    public LocalCacheEviction getObjectStoreCacheEviction()
+    {
+        return objectStoreCacheEviction;
     }
 
-    @Override
-    public Serializable remove(final Serializable key, final String partitionName)
-        throws ObjectStoreException
+    public void setObjectStoreCacheEviction(final LocalCacheEviction objectStoreCacheEviction)
     {
-        final Serializable result = RedisUtils.run(jedisPool, new RedisAction<Serializable>()
-        {
-            @Override
-            public Serializable run()
-            {
-                final byte[] keyAsBytes = RedisUtils.toBytes(key);
+        this.objectStoreCacheEviction = objectStoreCacheEviction;
+    }
 
-                final BinaryTransaction t = redis.multi();
-                final Response<byte[]> getResult = t.hget(RedisUtils.getPartitionHashKey(partitionName),
-                    keyAsBytes);
-                final Response<Long> delResult = t.hdel(RedisUtils.getPartitionHashKey(partitionName),
-                    keyAsBytes);
-                t.exec();
+    public long getObjectStoreEntryTtl()
+    {
+        return objectStoreEntryTtl;
+    }
 
-                if (delResult.get() != 1)
-                {
-                    return null;
-                }
+    public void setObjectStoreEntryTtl(final long objectStoreEntryTtl)
+    {
+        this.objectStoreEntryTtl = objectStoreEntryTtl;
+    }
 
-                return RedisUtils.fromBytes(getResult.get());
-            }
-        });
+    public int getObjectStoreMaxEntries()
+    {
+        return objectStoreMaxEntries;
+    }
 
-        if (result == null)
-        {
-            throw new ObjectDoesNotExistException(
-                MessageFactory.createStaticMessage("No value found for key: " + key));
-        }
+    public void setObjectStoreMaxEntries(final int objectStoreMaxEntries)
+    {
+        this.objectStoreMaxEntries = objectStoreMaxEntries;
+    }
 
-        return result;
+    public long getObjectStoreExpirationInterval()
+    {
+        return objectStoreExpirationInterval;
     }
 
-    @Override
-    public List<Serializable> allKeys(final String partitionName) throws ObjectStoreException
+    public void setObjectStoreExpirationInterval(final long objectStoreExpirationInterval)
     {
-        return RedisUtils.run(jedisPool, new RedisAction<List<Serializable>>()
-        {
-            @Override
-            public List<Serializable> run()
-            {
-                final List<Serializable> keys = new ArrayList<Serializable>();
-                for (final byte[] key : redis.hkeys(RedisUtils.getPartitionHashKey(partitionName)))
-                {
-                    keys.add(RedisUtils.fromBytes(key));
-                }
-                return keys;
-            }
-        });
+        this.objectStoreExpirationInterval = objectStoreExpirationInterval;
     }
 
-    @Override
-    public List<String> allPartitions() throws ObjectStoreException
+    public int getObjectStoreExpiryBatchSize()
     {
-        return RedisUtils.run(jedisPool, new RedisAction<List<String>>()
-        {
-            @Override
-            public List<String> run()
-            {
-                final List<String> partitions = new ArrayList<String>();
-                final Set<byte[]> keys = redis.keys((RedisConstants.OBJECTSTORE_HASH_KEY_PREFIX + "*").getBytes());
-                for (final byte[] key : keys)
-                {
-                    final String partition = StringUtils.substringAfter(SafeEncoder.encode(key),
-                        RedisConstants.OBJECTSTORE_HASH_KEY_PREFIX);
-                    partitions.add(partition);
-                }
-                return partitions;
-            }
-        });
+        return objectStoreExpiryBatchSize;
     }
 
-    @Override
-    public void open(final String partitionName) throws ObjectStoreException
+    public void setObjectStoreExpiryBatchSize(final int objectStoreExpiryBatchSize)
     {
-        // ignored
+        this.objectStoreExpiryBatchSize = objectStoreExpiryBatchSize;
     }
 
-    @Override
-    public void close(final String partitionName) throws ObjectStoreException
+    public int getObjectStoreExpiryMaxBatches()
     {
-        // ignored
+        return objectStoreExpiryMaxBatches;
     }
 
-    @Override
-    public void disposePartition(final String partitionName) throws ObjectStoreException
+    public void setObjectStoreExpiryMaxBatches(final int objectStoreExpiryMaxBatches)
     {
-        RedisUtils.run(jedisPool, new RedisAction<Long>()
-        {
-            @Override
-            public Long run()
-            {
-                return redis.del(RedisUtils.getPartitionHashKey(partitionName));
-            }
-        });
+        this.objectStoreExpiryMaxBatches = objectStoreExpiryMaxBatches;
     }
 
-    /*----------------------------------------------------------
-                        Java Accessors Gong Show
-     ----------------------------------------------------------*/
-    public String getHost()
+    public int getObjectStoreBulkChunkSize()
     {
-        return host;
+        return objectStoreBulkChunkSize;
     }
 
-    public void setHost(final String host)
+    public void setObjectStoreBulkChunkSize(final int objectStoreBulkChunkSize)
     {
-        this.host = host;
+        this.objectStoreBulkChunkSize = objectStoreBulkChunkSize;
     }
 
-    public int getPort()
+    public int getObjectStoreBuckets()
     {
-        return port;
+        return objectStoreBuckets;
     }
 
-    public void setPort(final int port)
+    public void setObjectStoreBuckets(final int objectStoreBuckets)
     {
-        this.port = port;
+        this.objectStoreBuckets = objectStoreBuckets;
     }
 
-    public int getConnectionTimeout()
+    public long getObjectStoreBloomFilterExpectedEntries()
     {
-        return connectionTimeout;
+        return objectStoreBloomFilterExpectedEntries;
     }
 
-    public void setConnectionTimeout(final int connectionTimeout)
+    public void setObjectStoreBloomFilterExpectedEntries(final long objectStoreBloomFilterExpectedEntries)
     {
-        this.connectionTimeout = connectionTimeout;
+        this.objectStoreBloomFilterExpectedEntries = objectStoreBloomFilterExpectedEntries;
     }
 
-    public int getReconnectionFrequency()
+    public double getObjectStoreBloomFilterFalsePositiveRate()
     {
-        return reconnectionFrequency;
+        return objectStoreBloomFilterFalsePositiveRate;
     }
 
-    public void setReconnectionFrequency(final int reconnectionFrequency)
+    public void setObjectStoreBloomFilterFalsePositiveRate(final double objectStoreBloomFilterFalsePositiveRate)
     {
-        this.reconnectionFrequency = reconnectionFrequency;
+        this.objectStoreBloomFilterFalsePositiveRate = objectStoreBloomFilterFalsePositiveRate;
     }
 
-    public String getPassword()
+    public long getObjectStoreBloomFilterSyncInterval()
     {
-        return password;
+        return objectStoreBloomFilterSyncInterval;
     }
 
-    public void setPassword(final String password)
+    public void setObjectStoreBloomFilterSyncInterval(final long objectStoreBloomFilterSyncInterval)
     {
-        this.password = password;
+        this.objectStoreBloomFilterSyncInterval = objectStoreBloomFilterSyncInterval;
     }
 
-    public String getDefaultPartitionName()
+    public boolean isObjectStoreBloomFilterSingleWriter()
     {
-        return defaultPartitionName;
+        return objectStoreBloomFilterSingleWriter;
     }
 
-    public void setDefaultPartitionName(final String defaultPartitionName)
+    public void setObjectStoreBloomFilterSingleWriter(final boolean objectStoreBloomFilterSingleWriter)
     {
-        this.defaultPartitionName = defaultPartitionName;
+        this.objectStoreBloomFilterSingleWriter = objectStoreBloomFilterSingleWriter;
     }
 
-    public Config getPoolConfig()
+    /**
+     * @return the object store caches by partition name.
+     */
+    public Map<String, RedisLocalCache<Serializable, byte[]>> getObjectStoreCaches()
     {
-        return poolConfig;
+        return Collections.unmodifiableMap(objectStoreCaches);
     }
 
-    public void setPoolConfig(final Config poolConfig)
+    /**
+     * @return the object store Bloom filters, or null if they are disabled.
+     */
+    public RedisBloomFilters getObjectStoreBloomFilters()
     {
-        this.poolConfig = poolConfig;
+        return objectStoreBloomFilters;
     }
 
     public JedisPool getJedisPool()
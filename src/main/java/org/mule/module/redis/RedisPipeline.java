@@ -0,0 +1,320 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.mule.api.NestedProcessor;
+import org.mule.module.redis.RedisUtils.QueueableRedisAction;
+import org.mule.module.redis.RedisUtils.RedisAction;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * Batches the {@link RedisAction}s run by the current thread against a {@link JedisPool} on a single
+ * connection, so their commands reach Redis in one round trip. {@link QueueableRedisAction}s are
+ * queued until the pipeline is flushed, while other actions flush the pending commands first and
+ * then run synchronously on the same connection, which preserves the order of operations.
+ */
+public class RedisPipeline
+{
+    private static final ThreadLocal<RedisPipeline> CURRENT = new ThreadLocal<RedisPipeline>();
+
+    // pools replaced by others, for example after a failover, while pipelines may still use them
+    private static final Set<JedisPool> RETIRED_POOLS = Collections.synchronizedSet(Collections.newSetFromMap(
+        new WeakHashMap<JedisPool, Boolean>()));
+
+    private static final class Slot
+    {
+        private QueueableRedisAction<?> action;
+        private int replies;
+        private Object result;
+    }
+
+    private final JedisPool jedisPool;
+    private final Jedis jedis;
+    private final RedisPipeline enclosing;
+
+    private final List<Slot> queuedSlots = new ArrayList<Slot>();
+    private int queuedReplies;
+    private List<Slot> currentStep;
+    // set once the connection can't be trusted to be in step with the replies it gets
+    private boolean broken;
+
+    private RedisPipeline(final JedisPool jedisPool, final Jedis jedis, final RedisPipeline enclosing)
+    {
+        this.jedisPool = jedisPool;
+        this.jedis = jedis;
+        this.enclosing = enclosing;
+    }
+
+    /**
+     * @return the pipeline bound to the current thread for the provided pool, or null if none.
+     * @throws JedisConnectionException if a pipeline bound to the current thread uses a retired
+     *             pool: its operations can't run on another connection without breaking its
+     *             atomicity.
+     */
+    public static RedisPipeline getCurrent(final JedisPool jedisPool)
+    {
+        RedisPipeline current = null;
+        for (RedisPipeline pipeline = CURRENT.get(); pipeline != null; pipeline = pipeline.enclosing)
+        {
+            pipeline.checkPoolNotRetired();
+
+            if ((current == null) && (pipeline.jedisPool == jedisPool))
+            {
+                current = pipeline;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Makes the pipelines in progress on the pool fail, instead of letting their next operations
+     * run outside of them on the pool that replaces it.
+     */
+    public static void retire(final JedisPool jedisPool)
+    {
+        RETIRED_POOLS.add(jedisPool);
+    }
+
+    /**
+     * Runs the provided operations with a pipeline bound to the current thread, then flushes it.
+     * Operations run within an enclosing pipeline on the same pool join it.
+     *
+     * @return the results of the Redis actions run by each operation: a single value if an
+     *         operation ran one action, a {@link List} if it ran several, null if it ran none.
+     */
+    public static List<Object> execute(final JedisPool jedisPool, final List<NestedProcessor> operations)
+        throws Exception
+    {
+        final RedisPipeline existing = getCurrent(jedisPool);
+        if (existing != null)
+        {
+            return existing.runSteps(operations);
+        }
+
+        final RedisPipeline enclosing = CURRENT.get();
+        final Jedis jedis = jedisPool.getResource();
+        final RedisPipeline pipeline = new RedisPipeline(jedisPool, jedis, enclosing);
+        CURRENT.set(pipeline);
+
+        boolean brokenResource = false;
+
+        try
+        {
+            return pipeline.runSteps(operations);
+        }
+        catch (final JedisConnectionException jce)
+        {
+            brokenResource = true;
+            throw jce;
+        }
+        finally
+        {
+            if (enclosing == null)
+            {
+                CURRENT.remove();
+            }
+            else
+            {
+                CURRENT.set(enclosing);
+            }
+
+            brokenResource = brokenResource || pipeline.broken || !pipeline.drain();
+
+            if (brokenResource)
+            {
+                jedisPool.returnBrokenResource(jedis);
+            }
+            else
+            {
+                jedisPool.returnResource(jedis);
+            }
+        }
+    }
+
+    <R> R run(final RedisAction<R> action)
+    {
+        final Slot slot = new Slot();
+        if (currentStep != null)
+        {
+            currentStep.add(slot);
+        }
+
+        if (action instanceof QueueableRedisAction)
+        {
+            slot.action = (QueueableRedisAction<?>) action;
+
+            try
+            {
+                slot.replies = slot.action.queue(jedis.getClient());
+            }
+            catch (final RuntimeException re)
+            {
+                // some commands may have been sent without being counted
+                broken = true;
+                throw re;
+            }
+
+            queuedSlots.add(slot);
+            queuedReplies += slot.replies;
+            // the actual result is only known once the pipeline is flushed
+            return null;
+        }
+
+        flush();
+
+        try
+        {
+            final R result = action.runWithJedis(jedis);
+            slot.result = result;
+            return result;
+        }
+        finally
+        {
+            broken = broken || !action.isConnectionReusable();
+        }
+    }
+
+    private List<Object> runSteps(final List<NestedProcessor> operations) throws Exception
+    {
+        final List<Slot> enclosingStep = currentStep;
+        final List<List<Slot>> steps = new ArrayList<List<Slot>>(operations.size());
+
+        try
+        {
+            for (final NestedProcessor operation : operations)
+            {
+                currentStep = new ArrayList<Slot>();
+                steps.add(currentStep);
+                operation.process();
+            }
+        }
+        finally
+        {
+            currentStep = enclosingStep;
+        }
+
+        flush();
+
+        final List<Object> results = new ArrayList<Object>(steps.size());
+        for (final List<Slot> step : steps)
+        {
+            if (step.isEmpty())
+            {
+                results.add(null);
+            }
+            else if (step.size() == 1)
+            {
+                results.add(step.get(0).result);
+            }
+            else
+            {
+                final List<Object> stepResults = new ArrayList<Object>(step.size());
+                for (final Slot slot : step)
+                {
+                    stepResults.add(slot.result);
+                }
+                results.add(stepResults);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Sends the queued commands, reads all their replies and resolves the queued actions results.
+     * If an action failed, its error is thrown once all the replies have been consumed.
+     */
+    private void flush()
+    {
+        if (queuedSlots.isEmpty())
+        {
+            return;
+        }
+
+        checkPoolNotRetired();
+
+        final List<Object> replies = RedisUtils.readReplies(jedis.getClient(), queuedReplies);
+        JedisException firstError = null;
+        int offset = 0;
+
+        for (final Slot slot : queuedSlots)
+        {
+            try
+            {
+                slot.result = RedisUtils.fromReplies(slot.action, replies.subList(offset, offset + slot.replies));
+            }
+            catch (final JedisConnectionException jce)
+            {
+                broken = true;
+                if (firstError == null)
+                {
+                    firstError = jce;
+                }
+            }
+            catch (final JedisException je)
+            {
+                if (firstError == null)
+                {
+                    firstError = je;
+                }
+            }
+            offset += slot.replies;
+        }
+        queuedSlots.clear();
+        queuedReplies = 0;
+
+        if (firstError != null)
+        {
+            throw firstError;
+        }
+    }
+
+    private void checkPoolNotRetired()
+    {
+        if (RETIRED_POOLS.contains(jedisPool))
+        {
+            throw new JedisConnectionException("The Redis master has changed while a pipeline was in progress");
+        }
+    }
+
+    /**
+     * Consumes any pending reply so the connection can safely go back to the pool.
+     *
+     * @return false if the connection is unusable.
+     */
+    private boolean drain()
+    {
+        if (queuedSlots.isEmpty())
+        {
+            return true;
+        }
+
+        try
+        {
+            final int pendingReplies = queuedReplies;
+            queuedSlots.clear();
+            queuedReplies = 0;
+            RedisUtils.readReplies(jedis.getClient(), pendingReplies);
+            return true;
+        }
+        catch (final JedisConnectionException jce)
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+/**
+ * Statistics of the connection pools of a connector configuration. Wait times are in microseconds.
+ */
+public interface RedisPoolMetricsMBean
+{
+    int getNumActive();
+
+    int getNumIdle();
+
+    long getBorrows();
+
+    long getBorrowFailures();
+
+    long getBrokenReturns();
+
+    long getMeanBorrowWait();
+
+    long getP50BorrowWait();
+
+    long getP99BorrowWait();
+
+    long getP999BorrowWait();
+
+    long getMaxBorrowWait();
+}
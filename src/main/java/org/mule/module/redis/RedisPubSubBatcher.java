@@ -0,0 +1,306 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mule.api.callback.SourceCallback;
+
+/**
+ * Groups the messages of a subscription so that the flow runs once per batch rather than once per
+ * message: the payload of each flow invocation is a list of {@link RedisPubSubMessage}s. A batch is
+ * delivered as soon as it holds batchSize messages, or lingerMillis after its first message was
+ * received. With a dispatcher, messages are batched per worker so that the messages of a channel
+ * are still delivered in order. Without one, the batches are delivered in order by a thread of the
+ * subscription.
+ */
+public class RedisPubSubBatcher
+{
+    private static final Log LOGGER = LogFactory.getLog(RedisPubSubBatcher.class);
+
+    // batches waiting for the delivery thread of a subscription without dispatcher
+    private static final int DELIVERY_QUEUE_CAPACITY = 16;
+
+    private static final AtomicInteger DELIVERY_THREAD_COUNT = new AtomicInteger();
+
+    private final class Batch
+    {
+        private final int worker;
+        private List<RedisPubSubMessage> messages;
+        // tells the linger flush whether the batch it was scheduled for has already been taken
+        private long generation;
+
+        private Batch(final int worker)
+        {
+            this.worker = worker;
+            messages = new ArrayList<RedisPubSubMessage>(batchSize);
+        }
+
+        private void add(final RedisPubSubMessage message)
+        {
+            final List<RedisPubSubMessage> fullBatch;
+
+            synchronized (this)
+            {
+                messages.add(message);
+
+                if (messages.size() < batchSize)
+                {
+                    if (messages.size() == 1)
+                    {
+                        scheduleLingerFlush(generation);
+                    }
+                    return;
+                }
+
+                fullBatch = take();
+            }
+
+            handOff(fullBatch);
+        }
+
+        private void scheduleLingerFlush(final long scheduledGeneration)
+        {
+            try
+            {
+                flusher.schedule(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        // the batch is taken by the delivery thread, so it can't overtake a full
+                        // batch handed off meanwhile
+                        handOff(new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                final List<RedisPubSubMessage> batch = takeIfGeneration(scheduledGeneration);
+                                if (batch != null)
+                                {
+                                    deliver(batch);
+                                }
+                            }
+                        });
+                    }
+                }, lingerMillis, TimeUnit.MILLISECONDS);
+            }
+            catch (final RejectedExecutionException ree)
+            {
+                // the connector is stopping: the batch is delivered when the subscription ends
+            }
+        }
+
+        /**
+         * Must be called while holding the lock of the batch.
+         * 
+         * @return the messages of the batch, or null if there are none.
+         */
+        private List<RedisPubSubMessage> take()
+        {
+            if (messages.isEmpty())
+            {
+                return null;
+            }
+
+            final List<RedisPubSubMessage> batch = messages;
+            messages = new ArrayList<RedisPubSubMessage>(batchSize);
+            generation++;
+            return batch;
+        }
+
+        private synchronized List<RedisPubSubMessage> takeIfGeneration(final long expectedGeneration)
+        {
+            return generation == expectedGeneration ? take() : null;
+        }
+
+        private void flushPending()
+        {
+            final List<RedisPubSubMessage> batch;
+            synchronized (this)
+            {
+                batch = take();
+            }
+            handOff(batch);
+        }
+
+        private void handOff(final List<RedisPubSubMessage> batch)
+        {
+            if (batch == null)
+            {
+                return;
+            }
+
+            handOff(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    deliver(batch);
+                }
+            });
+        }
+
+        private void handOff(final Runnable delivery)
+        {
+            if (dispatcher != null)
+            {
+                dispatcher.dispatch(worker, delivery);
+                return;
+            }
+
+            try
+            {
+                deliveryExecutor.execute(delivery);
+            }
+            catch (final RejectedExecutionException ree)
+            {
+                LOGGER.warn("Dropped a batch of pub/sub messages, the subscription is stopping");
+            }
+        }
+    }
+
+    private final SourceCallback callback;
+    private final int batchSize;
+    private final long lingerMillis;
+    private final RedisPubSubDispatcher dispatcher;
+    private final ScheduledExecutorService flusher;
+    private final ThreadPoolExecutor deliveryExecutor;
+    private final Batch[] batches;
+
+    /**
+     * @param batchSize the maximum number of messages per batch.
+     * @param lingerMillis the maximum time a message waits for its batch to fill.
+     * @param dispatcher delivers the batches on worker threads, or null to deliver them on a thread
+     *            of the batcher, until it's stopped.
+     * @param flusher schedules the delivery of the batches that don't fill in time, never running
+     *            it itself.
+     */
+    public RedisPubSubBatcher(final SourceCallback callback,
+                              final int batchSize,
+                              final long lingerMillis,
+                              final RedisPubSubDispatcher dispatcher,
+                              final ScheduledExecutorService flusher)
+    {
+        if ((batchSize < 1) || (lingerMillis < 1L))
+        {
+            throw new IllegalArgumentException("Batch size and linger must be strictly positive, got: " + batchSize
+                                               + " and " + lingerMillis);
+        }
+
+        this.callback = callback;
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+        this.dispatcher = dispatcher;
+        this.flusher = flusher;
+        deliveryExecutor = dispatcher == null ? newDeliveryExecutor() : null;
+
+        batches = new Batch[dispatcher == null ? 1 : dispatcher.getWorkers()];
+        for (int i = 0; i < batches.length; i++)
+        {
+            batches[i] = new Batch(i);
+        }
+    }
+
+    public void add(final byte[] channel, final RedisPubSubMessage message)
+    {
+        batches[dispatcher == null ? 0 : dispatcher.getWorker(channel)].add(message);
+    }
+
+    /**
+     * Delivers the messages of the batches that aren't complete yet.
+     */
+    public void flushAll()
+    {
+        for (final Batch batch : batches)
+        {
+            batch.flushPending();
+        }
+    }
+
+    /**
+     * Delivers the messages of the pending batches, then lets the delivery thread end once it has
+     * delivered all the batches handed off to it.
+     */
+    public void stop()
+    {
+        flushAll();
+
+        if (deliveryExecutor != null)
+        {
+            deliveryExecutor.shutdown();
+        }
+    }
+
+    private static ThreadPoolExecutor newDeliveryExecutor()
+    {
+        final String threadName = "redis-pubsub-batch-delivery-" + DELIVERY_THREAD_COUNT.incrementAndGet();
+
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+            DELIVERY_QUEUE_CAPACITY), new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                final Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new RejectedExecutionHandler()
+        {
+            @Override
+            public void rejectedExecution(final Runnable delivery, final ThreadPoolExecutor executor)
+            {
+                if (executor.isShutdown())
+                {
+                    throw new RejectedExecutionException("Batch delivery stopped");
+                }
+
+                // a full queue blocks the subscription, like a full dispatcher queue does
+                try
+                {
+                    executor.getQueue().put(delivery);
+                }
+                catch (final InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for batch delivery", ie);
+                }
+            }
+        });
+    }
+
+    private void deliver(final List<RedisPubSubMessage> batch)
+    {
+        final Map<String, Object> properties = Collections.<String, Object> singletonMap(
+            RedisConstants.REDIS_PUBSUB_BATCH_SIZE, batch.size());
+
+        try
+        {
+            callback.process(batch, properties);
+        }
+        catch (final Exception e)
+        {
+            LOGGER.error("Failed to deliver a batch of " + batch.size() + " messages", e);
+        }
+    }
+}
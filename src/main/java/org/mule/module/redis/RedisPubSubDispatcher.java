@@ -0,0 +1,276 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mule.module.redis.RedisModule.PubSubOverflow;
+
+/**
+ * Delivers pub/sub messages on worker threads, so that slow flows don't stall the connections
+ * reading them from Redis. All the messages of a channel go to the same worker, which keeps them
+ * in order, while different channels are delivered in parallel. Each worker has a bounded queue:
+ * when it's full, the overflow policy either blocks the subscription, which lets Redis buffer the
+ * messages, or drops a message.
+ */
+public class RedisPubSubDispatcher implements RedisPubSubDispatcherMetricsMBean
+{
+    private static final Log LOGGER = LogFactory.getLog(RedisPubSubDispatcher.class);
+
+    private static final long STOP_WAIT_MILLIS = 500L;
+
+    private final int queueCapacity;
+    private final PubSubOverflow overflow;
+    private final List<BlockingQueue<Runnable>> queues;
+    private final Thread[] workers;
+
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    /**
+     * @param workers the number of worker threads.
+     * @param queueCapacity the maximum number of messages waiting for each worker.
+     * @param overflow what to do with a message when the queue of its worker is full.
+     */
+    public RedisPubSubDispatcher(final int workers, final int queueCapacity, final PubSubOverflow overflow)
+    {
+        if ((workers < 1) || (queueCapacity < 1))
+        {
+            throw new IllegalArgumentException("Pub/sub workers and queue capacity must be strictly positive, got: "
+                                               + workers + " and " + queueCapacity);
+        }
+
+        this.queueCapacity = queueCapacity;
+        this.overflow = overflow;
+        queues = newQueues(workers, queueCapacity);
+        this.workers = new Thread[workers];
+
+        for (int i = 0; i < workers; i++)
+        {
+            final BlockingQueue<Runnable> queue = queues.get(i);
+            this.workers[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    deliverLoop(queue);
+                }
+            }, "redis-pubsub-dispatcher-" + i);
+            this.workers[i].setDaemon(true);
+        }
+    }
+
+    public void start()
+    {
+        for (final Thread worker : workers)
+        {
+            worker.start();
+        }
+        LOGGER.info(String.format("Redis pub/sub dispatcher started, workers: %d, queue capacity: %d, overflow: %s",
+            workers.length, queueCapacity, overflow));
+    }
+
+    /**
+     * Stops the workers, dropping the messages that haven't been delivered yet.
+     */
+    public void stop()
+    {
+        running = false;
+
+        for (final Thread worker : workers)
+        {
+            worker.interrupt();
+        }
+
+        for (final Thread worker : workers)
+        {
+            try
+            {
+                worker.join(STOP_WAIT_MILLIS);
+            }
+            catch (final InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        int undelivered = 0;
+        for (final BlockingQueue<Runnable> queue : queues)
+        {
+            undelivered += queue.size();
+            queue.clear();
+        }
+
+        if (undelivered > 0)
+        {
+            LOGGER.warn("Dropped " + undelivered + " undelivered pub/sub messages");
+        }
+    }
+
+    /**
+     * Queues the delivery of a message to the worker of its channel, applying the overflow policy
+     * if the worker queue is full.
+     */
+    public void dispatch(final byte[] channel, final Runnable delivery)
+    {
+        dispatch(getWorker(channel), delivery);
+    }
+
+    /**
+     * Queues a delivery to a worker, applying the overflow policy if its queue is full.
+     */
+    public void dispatch(final int worker, final Runnable delivery)
+    {
+        final BlockingQueue<Runnable> queue = queues.get(worker);
+
+        switch (overflow)
+        {
+            case BLOCK :
+                try
+                {
+                    queue.put(delivery);
+                }
+                catch (final InterruptedException ie)
+                {
+                    // the subscriber is being stopped
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                    return;
+                }
+                break;
+
+            case DROP_OLDEST :
+                while (!queue.offer(delivery))
+                {
+                    if (queue.poll() != null)
+                    {
+                        dropped.incrementAndGet();
+                    }
+                }
+                break;
+
+            case DROP_NEWEST :
+                if (!queue.offer(delivery))
+                {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                break;
+        }
+
+        dispatched.incrementAndGet();
+    }
+
+    /**
+     * @return the index of the worker that delivers the messages of the channel.
+     */
+    public int getWorker(final byte[] channel)
+    {
+        // spread the channels over the workers even if their hash codes only differ in the high bits
+        final int hash = Arrays.hashCode(channel) * 0x9E3779B9;
+        return (hash >>> 1) % workers.length;
+    }
+
+    @Override
+    public int getWorkers()
+    {
+        return workers.length;
+    }
+
+    @Override
+    public int getQueueCapacity()
+    {
+        return queueCapacity * workers.length;
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+        int queueDepth = 0;
+        for (final BlockingQueue<Runnable> queue : queues)
+        {
+            queueDepth += queue.size();
+        }
+        return queueDepth;
+    }
+
+    @Override
+    public int getMaxQueueDepth()
+    {
+        int maxQueueDepth = 0;
+        for (final BlockingQueue<Runnable> queue : queues)
+        {
+            maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+        }
+        return maxQueueDepth;
+    }
+
+    @Override
+    public long getDispatched()
+    {
+        return dispatched.get();
+    }
+
+    @Override
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("dispatched: %d, dropped: %d, queue depth: %d", getDispatched(), getDropped(),
+            getQueueDepth());
+    }
+
+    private void deliverLoop(final BlockingQueue<Runnable> queue)
+    {
+        while (running)
+        {
+            try
+            {
+                final Runnable delivery = queue.poll(STOP_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                if (delivery != null)
+                {
+                    delivery.run();
+                }
+            }
+            catch (final InterruptedException ie)
+            {
+                // stopping, the loop condition takes care of it
+            }
+            catch (final RuntimeException re)
+            {
+                LOGGER.error("Failed to deliver a pub/sub message", re);
+            }
+        }
+    }
+
+    private static List<BlockingQueue<Runnable>> newQueues(final int count, final int capacity)
+    {
+        final List<BlockingQueue<Runnable>> queues = new ArrayList<BlockingQueue<Runnable>>(count);
+        for (int i = 0; i < count; i++)
+        {
+            queues.add(new ArrayBlockingQueue<Runnable>(capacity));
+        }
+        return queues;
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+/**
+ * Activity of the workers that deliver pub/sub messages: the queue depth is the number of messages
+ * received from Redis but not delivered yet, across all the workers, and dropped messages are the
+ * ones discarded by the overflow policy when a worker queue was full.
+ */
+public interface RedisPubSubDispatcherMetricsMBean
+{
+    int getWorkers();
+
+    int getQueueCapacity();
+
+    int getQueueDepth();
+
+    int getMaxQueueDepth();
+
+    long getDispatched();
+
+    long getDropped();
+}
@@ -8,25 +8,127 @@
 
 package org.mule.module.redis;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.mule.api.callback.SourceCallback;
 
+import redis.clients.jedis.BinaryJedis;
 import redis.clients.jedis.BinaryJedisPubSub;
 import redis.clients.util.SafeEncoder;
 
+/**
+ * Delivers the messages of channels and patterns to a source callback. Literal channel names are
+ * subscribed to with SUBSCRIBE, which Redis serves with a plain lookup, and only the names with
+ * glob characters with PSUBSCRIBE, which Redis matches against every published message.
+ */
 public final class RedisPubSubListener extends BinaryJedisPubSub {
     private static final Log LOGGER = LogFactory.getLog(RedisPubSubListener.class);
 
     private final SourceCallback callback;
+    private final RedisPubSubDispatcher dispatcher;
+    private final RedisPubSubBatcher batcher;
+    private final byte[][] literalChannels;
+    private final byte[][] patterns;
+    // the properties of the messages of each literal channel, built once
+    private final List<Map<String, Object>> literalChannelProperties;
 
-    public RedisPubSubListener(final SourceCallback callback) {
+    /**
+     * @param channels the channel names and globbing patterns to subscribe to.
+     * @param dispatcher delivers the messages on worker threads, or null to deliver them on the
+     *            subscribing thread.
+     * @param batcher groups the messages in batches, which it delivers itself, or null to deliver
+     *            each message on its own.
+     */
+    public RedisPubSubListener(final SourceCallback callback,
+                               final List<String> channels,
+                               final RedisPubSubDispatcher dispatcher,
+                               final RedisPubSubBatcher batcher) {
         super();
         this.callback = callback;
+        this.dispatcher = dispatcher;
+        this.batcher = batcher;
+        literalChannels = RedisUtils.getLiteralChannels(channels);
+        patterns = RedisUtils.getPatterns(channels);
+
+        literalChannelProperties = new ArrayList<Map<String, Object>>(literalChannels.length);
+        for (final byte[] literalChannel : literalChannels) {
+            final Map<String, Object> channelProperties = new HashMap<String, Object>();
+            final String channel = SafeEncoder.encode(literalChannel);
+            channelProperties.put(RedisConstants.REDIS_PUBSUB_CHANNEL, channel);
+            // literal channels used to be subscribed to as patterns matching themselves
+            channelProperties.put(RedisConstants.REDIS_PUBSUB_PATTERN, channel);
+            literalChannelProperties.add(Collections.unmodifiableMap(channelProperties));
+        }
+    }
+
+    /**
+     * Subscribes to the channels and patterns on a single connection, blocking until all of them
+     * are unsubscribed from or the connection is lost.
+     */
+    public void subscribe(final BinaryJedis jedis) {
+        try {
+            if (literalChannels.length == 0) {
+                jedis.psubscribe(this, patterns);
+                return;
+            }
+
+            if (patterns.length > 0) {
+                // sent along with SUBSCRIBE, the confirmations of both are read by the same loop.
+                // Jedis miscounts the pending replies of a subscribed connection anyway, which is why
+                // it's never given back to the pool, see RedisModule.SubscriptionAction
+                jedis.getClient().psubscribe(patterns);
+            }
+            jedis.subscribe(this, literalChannels);
+        } finally {
+            flush();
+        }
+    }
+
+    /**
+     * Delivers the messages of the batches that aren't complete yet, if batching.
+     */
+    public void flush() {
+        if (batcher != null) {
+            batcher.flushAll();
+        }
+    }
+
+    /**
+     * Delivers the messages of the batches that aren't complete yet, then releases the thread that
+     * delivers the batches, if batching. Called once the subscription has stopped for good.
+     */
+    public void close() {
+        if (batcher != null) {
+            batcher.stop();
+        }
+    }
+
+    public byte[][] getLiteralChannels() {
+        return literalChannels;
+    }
+
+    public byte[][] getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * Unsubscribes from all the channels and patterns, which makes {@link #subscribe(BinaryJedis)}
+     * return.
+     */
+    public void unsubscribeAll() {
+        if (literalChannels.length > 0) {
+            unsubscribe();
+        }
+        if (patterns.length > 0) {
+            punsubscribe();
+        }
     }
 
     @Override
@@ -54,12 +156,38 @@ public final class RedisPubSubListener extends BinaryJedisPubSub {
         final Map<String, Object> props = new HashMap<String, Object>();
         props.put(RedisConstants.REDIS_PUBSUB_PATTERN, SafeEncoder.encode(pattern));
         props.put(RedisConstants.REDIS_PUBSUB_CHANNEL, SafeEncoder.encode(channel));
-        deliver(message, props);
+        deliver(channel, message, props);
     }
 
     @Override
     public void onMessage(final byte[] channel, final byte[] message) {
-        deliver(message, Collections.singletonMap(RedisConstants.REDIS_PUBSUB_CHANNEL, (Object) SafeEncoder.encode(channel)));
+        // a few channels are faster to compare than to hash
+        for (int i = 0; i < literalChannels.length; i++) {
+            if (Arrays.equals(literalChannels[i], channel)) {
+                deliver(channel, message, literalChannelProperties.get(i));
+                return;
+            }
+        }
+        deliver(channel, message, Collections.singletonMap(RedisConstants.REDIS_PUBSUB_CHANNEL, (Object) SafeEncoder.encode(channel)));
+    }
+
+    private void deliver(final byte[] channel, final byte[] payload, final Map<String, Object> properties) {
+        if (batcher != null) {
+            batcher.add(channel, new RedisPubSubMessage(payload, properties));
+            return;
+        }
+
+        if (dispatcher == null) {
+            deliver(payload, properties);
+            return;
+        }
+
+        dispatcher.dispatch(channel, new Runnable() {
+            @Override
+            public void run() {
+                deliver(payload, properties);
+            }
+        });
     }
 
     private void deliver(final Object payload, final Map<String, Object> properties) {
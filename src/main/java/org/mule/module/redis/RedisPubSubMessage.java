@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * A message received by a subscription, along with the properties it would have had if it had
+ * been delivered on its own: the elements of the payloads of batched subscriptions.
+ */
+public class RedisPubSubMessage implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] payload;
+    private final Map<String, Object> properties;
+
+    public RedisPubSubMessage(final byte[] payload, final Map<String, Object> properties)
+    {
+        this.payload = payload;
+        this.properties = properties;
+    }
+
+    public byte[] getPayload()
+    {
+        return payload;
+    }
+
+    public Map<String, Object> getProperties()
+    {
+        return properties;
+    }
+
+    public String getChannel()
+    {
+        return (String) properties.get(RedisConstants.REDIS_PUBSUB_CHANNEL);
+    }
+
+    /**
+     * @return the pattern that matched the channel, or the channel itself if it has been subscribed
+     *         to by name.
+     */
+    public String getPattern()
+    {
+        return (String) properties.get(RedisConstants.REDIS_PUBSUB_PATTERN);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RedisPubSubMessage[channel: " + getChannel() + ", length: " + payload.length + "]";
+    }
+}
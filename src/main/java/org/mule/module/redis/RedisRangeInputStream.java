@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A stream over a string value of a known length, fetched by consecutive ranges of chunkSize bytes.
+ * Each round trip fetches up to readAhead chunks, so no more than chunkSize * readAhead bytes of the
+ * value are held in memory at once.
+ */
+public abstract class RedisRangeInputStream extends InputStream
+{
+    private final long length;
+    private final int chunkSize;
+    private final int readAhead;
+    private final LinkedList<byte[]> chunks = new LinkedList<byte[]>();
+
+    private long fetchedLength;
+    private byte[] chunk;
+    private int position;
+    private boolean closed;
+
+    /**
+     * @param length the length of the value.
+     * @param chunkSize the number of bytes fetched by range.
+     * @param readAhead the number of ranges fetched per round trip.
+     * @param firstChunks the chunks already fetched from the start of the value.
+     */
+    protected RedisRangeInputStream(final long length,
+                                    final int chunkSize,
+                                    final int readAhead,
+                                    final List<byte[]> firstChunks)
+    {
+        this.length = length;
+        this.chunkSize = chunkSize;
+        this.readAhead = readAhead;
+
+        for (final byte[] firstChunk : firstChunks)
+        {
+            chunks.add(firstChunk);
+            fetchedLength += firstChunk.length;
+        }
+    }
+
+    /**
+     * Fetches consecutive ranges of the value in a single round trip.
+     *
+     * @param offset the offset of the first range.
+     * @param count the number of ranges to fetch.
+     * @return the ranges, or null if the length of the value has changed.
+     */
+    protected abstract List<byte[]> fetch(long offset, int count);
+
+    public long getLength()
+    {
+        return length;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (!nextChunk())
+        {
+            return -1;
+        }
+        return chunk[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int len) throws IOException
+    {
+        if ((offset < 0) || (len < 0) || (len > buffer.length - offset))
+        {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        if (!nextChunk())
+        {
+            return -1;
+        }
+
+        final int read = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, buffer, offset, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return chunk == null ? 0 : chunk.length - position;
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        chunks.clear();
+        chunk = null;
+    }
+
+    /**
+     * @return false if the end of the value has been reached.
+     */
+    private boolean nextChunk() throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("Stream closed");
+        }
+
+        while ((chunk == null) || (position == chunk.length))
+        {
+            if (chunks.isEmpty())
+            {
+                if (fetchedLength >= length)
+                {
+                    return false;
+                }
+                fetchChunks();
+            }
+
+            chunk = chunks.removeFirst();
+            position = 0;
+        }
+        return true;
+    }
+
+    private void fetchChunks() throws IOException
+    {
+        final long remainingChunks = (length - fetchedLength + chunkSize - 1) / chunkSize;
+        final int count = (int) Math.min(readAhead, remainingChunks);
+        final List<byte[]> fetchedChunks = fetch(fetchedLength, count);
+
+        if ((fetchedChunks == null) || (fetchedChunks.size() != count))
+        {
+            throw new IOException("The value has been modified while being read");
+        }
+
+        for (final byte[] fetchedChunk : fetchedChunks)
+        {
+            if (fetchedChunk.length != Math.min(chunkSize, length - fetchedLength))
+            {
+                throw new IOException("The value has been modified while being read");
+            }
+
+            chunks.add(fetchedChunk);
+            fetchedLength += fetchedChunk.length;
+        }
+    }
+}
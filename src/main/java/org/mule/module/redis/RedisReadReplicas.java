@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.commons.pool.impl.GenericObjectPool.Config;
+import org.mule.module.redis.RedisModule.ReadReplicaSelection;
+import org.mule.module.redis.RedisUtils.RedisAction;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Runs read-only {@link RedisAction}s on a set of Redis replicas, each with its own connection pool.
+ */
+public class RedisReadReplicas
+{
+    private final List<JedisPool> jedisPools;
+    private final ReadReplicaSelection selection;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final AtomicIntegerArray inFlightActions;
+
+    /**
+     * @param endpoints the replicas, as host:port strings.
+     * @param metrics the metrics the pools report to, null if metrics are disabled.
+     */
+    public RedisReadReplicas(final List<String> endpoints,
+                             final ReadReplicaSelection selection,
+                             final Config poolConfig,
+                             final int connectionTimeout,
+                             final String password,
+                             final RedisMetrics metrics)
+    {
+        jedisPools = new ArrayList<JedisPool>(endpoints.size());
+        for (final String endpoint : endpoints)
+        {
+            jedisPools.add(RedisUtils.newJedisPool(poolConfig, endpoint, connectionTimeout, password, metrics));
+        }
+
+        this.selection = selection;
+        inFlightActions = new AtomicIntegerArray(jedisPools.size());
+    }
+
+    public <R> R run(final RedisAction<R> action)
+    {
+        final int replica = selectReplica();
+        inFlightActions.incrementAndGet(replica);
+
+        try
+        {
+            return RedisUtils.run(jedisPools.get(replica), action);
+        }
+        finally
+        {
+            inFlightActions.decrementAndGet(replica);
+        }
+    }
+
+    public void destroy()
+    {
+        for (final JedisPool jedisPool : jedisPools)
+        {
+            jedisPool.destroy();
+        }
+    }
+
+    private int selectReplica()
+    {
+        // the rotating start also spreads ties evenly in least loaded mode
+        final int start = (nextReplica.getAndIncrement() & Integer.MAX_VALUE) % jedisPools.size();
+
+        if (selection == ReadReplicaSelection.ROUND_ROBIN)
+        {
+            return start;
+        }
+
+        int selected = start;
+        int selectedLoad = inFlightActions.get(start);
+
+        for (int i = 1; (i < jedisPools.size()) && (selectedLoad > 0); i++)
+        {
+            final int candidate = (start + i) % jedisPools.size();
+            final int candidateLoad = inFlightActions.get(candidate);
+
+            if (candidateLoad < selectedLoad)
+            {
+                selected = candidate;
+                selectedLoad = candidateLoad;
+            }
+        }
+
+        return selected;
+    }
+}
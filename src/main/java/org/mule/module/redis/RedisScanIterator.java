@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over a collection walked with a cursor of the SCAN family of commands, fetching the
+ * next page only once the current one has been consumed.
+ */
+public abstract class RedisScanIterator<T> implements Iterator<T>
+{
+    private Iterator<T> page = Collections.<T> emptyList().iterator();
+    private byte[] cursor = RedisUtils.SCAN_START_CURSOR;
+    private boolean started;
+
+    /**
+     * Runs one step of the walk.
+     *
+     * @param cursor the cursor returned by the previous step, or the start cursor.
+     * @param elements receives the elements of the page.
+     * @return the cursor of the next step, the start cursor once the walk is complete.
+     */
+    protected abstract byte[] fetchPage(byte[] cursor, List<T> elements);
+
+    @Override
+    public boolean hasNext()
+    {
+        // a page can be empty even though the walk isn't complete
+        while ((!page.hasNext()) && ((!started) || (!Arrays.equals(cursor, RedisUtils.SCAN_START_CURSOR))))
+        {
+            final List<T> elements = new ArrayList<T>();
+            cursor = fetchPage(cursor, elements);
+            started = true;
+            page = elements.iterator();
+        }
+        return page.hasNext();
+    }
+
+    @Override
+    public T next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException("Read-only iterator");
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import redis.clients.jedis.BinaryJedis;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * A Lua script run with EVALSHA, so that its text is only sent by SCRIPT LOAD: once, and again
+ * whenever a server answers that it doesn't know it, for example after a restart, a failover or on
+ * another node.
+ */
+public class RedisScript
+{
+    private static final String NO_SCRIPT_ERROR_PREFIX = "NOSCRIPT";
+
+    private final byte[] script;
+    private volatile byte[] sha1;
+
+    public RedisScript(final String script)
+    {
+        this.script = SafeEncoder.encode(script);
+    }
+
+    /**
+     * Runs the script, loading it first if the server doesn't know it. Unlike the scripting
+     * methods of {@link BinaryJedis}, this doesn't leave the connection without a timeout.
+     * 
+     * @param keyCount the number of leading params that are keys.
+     * @return the raw reply of the script.
+     */
+    public Object eval(final BinaryJedis jedis, final int keyCount, final byte[]... params)
+    {
+        final Client client = jedis.getClient();
+        byte[] currentSha1 = sha1;
+
+        if (currentSha1 == null)
+        {
+            currentSha1 = load(client);
+        }
+
+        try
+        {
+            return evalSha(client, currentSha1, keyCount, params);
+        }
+        catch (final JedisDataException jde)
+        {
+            if ((jde.getMessage() == null) || (!jde.getMessage().startsWith(NO_SCRIPT_ERROR_PREFIX)))
+            {
+                throw jde;
+            }
+            return evalSha(client, load(client), keyCount, params);
+        }
+    }
+
+    private byte[] load(final Client client)
+    {
+        client.scriptLoad(script);
+        final byte[] loadedSha1 = RedisUtils.toBulkReply(client.getOne());
+        sha1 = loadedSha1;
+        return loadedSha1;
+    }
+
+    private static Object evalSha(final Client client, final byte[] sha1, final int keyCount, final byte[]... params)
+    {
+        client.evalsha(sha1, Protocol.toByteArray(keyCount), params);
+        return RedisUtils.checkReply(client.getOne());
+    }
+}
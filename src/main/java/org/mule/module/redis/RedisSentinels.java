@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mule.util.StringUtils;
+
+import redis.clients.jedis.BinaryJedis;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Discovers the address of a Redis master from Redis Sentinels, then watches the +switch-master
+ * events they publish to report failovers as soon as they happen.
+ */
+public class RedisSentinels
+{
+    /**
+     * Notified when the master has moved.
+     */
+    public interface MasterListener
+    {
+        void onMasterSwitch(String masterAddress);
+    }
+
+    private static final Log LOGGER = LogFactory.getLog(RedisSentinels.class);
+
+    private static final byte[] SENTINEL = SafeEncoder.encode("SENTINEL");
+    private static final byte[] GET_MASTER_ADDR_BY_NAME = SafeEncoder.encode("get-master-addr-by-name");
+    private static final byte[] SWITCH_MASTER_CHANNEL = SafeEncoder.encode("+switch-master");
+
+    private final class SwitchMasterListener extends BinaryJedisPubSub
+    {
+        @Override
+        public void onMessage(final byte[] channel, final byte[] message)
+        {
+            // <master name> <old ip> <old port> <new ip> <new port>
+            final String[] switchMaster = StringUtils.split(SafeEncoder.encode(message), ' ');
+
+            if ((switchMaster.length == 5) && (masterName.equals(switchMaster[0])))
+            {
+                switchMaster(switchMaster[3] + ":" + switchMaster[4]);
+            }
+        }
+
+        @Override
+        public void onPMessage(final byte[] pattern, final byte[] channel, final byte[] message)
+        {
+            // not subscribed to patterns
+        }
+
+        @Override
+        public void onSubscribe(final byte[] channel, final int subscribedChannels)
+        {
+            LOGGER.info("Watching failovers of master: " + masterName);
+        }
+
+        @Override
+        public void onUnsubscribe(final byte[] channel, final int subscribedChannels)
+        {
+            // NOOP
+        }
+
+        @Override
+        public void onPSubscribe(final byte[] pattern, final int subscribedChannels)
+        {
+            // NOOP
+        }
+
+        @Override
+        public void onPUnsubscribe(final byte[] pattern, final int subscribedChannels)
+        {
+            // NOOP
+        }
+    }
+
+    private final List<String> sentinels;
+    private final String masterName;
+    private final int connectionTimeout;
+    private final int reconnectionFrequency;
+
+    private volatile boolean running = true;
+    private volatile String masterAddress;
+    private volatile SwitchMasterListener switchMasterListener;
+    private MasterListener masterListener;
+    private Thread watcher;
+
+    /**
+     * @param sentinels the sentinels, as host:port strings.
+     * @param masterName the name under which the sentinels monitor the master.
+     */
+    public RedisSentinels(final List<String> sentinels,
+                          final String masterName,
+                          final int connectionTimeout,
+                          final int reconnectionFrequency)
+    {
+        this.sentinels = sentinels;
+        this.masterName = masterName;
+        this.connectionTimeout = connectionTimeout;
+        this.reconnectionFrequency = reconnectionFrequency;
+    }
+
+    /**
+     * @return the address of the master, as a host:port string, according to the first sentinel
+     *         that knows it.
+     */
+    public String discoverMasterAddress()
+    {
+        for (final String sentinel : sentinels)
+        {
+            final BinaryJedis jedis = new BinaryJedis(RedisUtils.getHost(sentinel), RedisUtils.getPort(sentinel),
+                connectionTimeout);
+
+            try
+            {
+                final Object reply = RedisUtils.sendRawCommand(jedis, SENTINEL, GET_MASTER_ADDR_BY_NAME,
+                    SafeEncoder.encode(masterName));
+
+                if (reply instanceof List)
+                {
+                    final List<?> address = (List<?>) reply;
+                    return SafeEncoder.encode((byte[]) address.get(0)) + ":"
+                           + SafeEncoder.encode((byte[]) address.get(1));
+                }
+
+                LOGGER.warn("Sentinel: " + sentinel + " doesn't know master: " + masterName);
+            }
+            catch (final JedisException je)
+            {
+                LOGGER.warn("Failed to get the address of master: " + masterName + " from sentinel: " + sentinel,
+                    je);
+            }
+            finally
+            {
+                jedis.disconnect();
+            }
+        }
+
+        throw new JedisConnectionException("No sentinel knows the address of master: " + masterName);
+    }
+
+    /**
+     * Starts watching failovers.
+     * 
+     * @param knownMasterAddress the master address in use.
+     * @param listener notified of the new address after each failover.
+     */
+    public void start(final String knownMasterAddress, final MasterListener listener)
+    {
+        masterAddress = knownMasterAddress;
+        masterListener = listener;
+
+        watcher = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                watchFailovers();
+            }
+        }, "redis-sentinel-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    public void stop()
+    {
+        running = false;
+
+        final SwitchMasterListener listener = switchMasterListener;
+        if ((listener != null) && (listener.isSubscribed()))
+        {
+            listener.unsubscribe();
+        }
+
+        if (watcher != null)
+        {
+            watcher.interrupt();
+        }
+    }
+
+    private void watchFailovers()
+    {
+        while (running)
+        {
+            for (final String sentinel : sentinels)
+            {
+                if (!running)
+                {
+                    return;
+                }
+
+                final BinaryJedis jedis = new BinaryJedis(RedisUtils.getHost(sentinel),
+                    RedisUtils.getPort(sentinel), connectionTimeout);
+
+                try
+                {
+                    // a failover may have happened while no sentinel was watched
+                    switchMaster(discoverMasterAddress());
+
+                    switchMasterListener = new SwitchMasterListener();
+                    // this blocks until the sentinel gets disconnected or watching stops
+                    jedis.subscribe(switchMasterListener, SWITCH_MASTER_CHANNEL);
+                }
+                catch (final JedisException je)
+                {
+                    LOGGER.warn("Lost sentinel: " + sentinel + ", will retry with the next one in: "
+                                + reconnectionFrequency + "ms.", je);
+                    pause();
+                }
+                finally
+                {
+                    jedis.disconnect();
+                }
+            }
+        }
+    }
+
+    private synchronized void switchMaster(final String newMasterAddress)
+    {
+        if (newMasterAddress.equals(masterAddress))
+        {
+            return;
+        }
+
+        masterAddress = newMasterAddress;
+        LOGGER.warn("Master: " + masterName + " is now at: " + newMasterAddress);
+        masterListener.onMasterSwitch(newMasterAddress);
+    }
+
+    private void pause()
+    {
+        try
+        {
+            if (running)
+            {
+                Thread.sleep(reconnectionFrequency);
+            }
+        }
+        catch (final InterruptedException ie)
+        {
+            // stopping, let's restore interrupted state
+            Thread.currentThread().interrupt();
+        }
+    }
+}
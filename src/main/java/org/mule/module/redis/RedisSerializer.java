@@ -0,0 +1,27 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.io.Serializable;
+
+/**
+ * Converts the values of the object store to and from the bytes stored in Redis.
+ */
+public interface RedisSerializer
+{
+    /**
+     * @return the bytes of the value, or null if the value is null.
+     */
+    byte[] serialize(Serializable value);
+
+    /**
+     * @return the value, or null if the bytes are null or empty.
+     */
+    Serializable deserialize(byte[] bytes);
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.pool.impl.GenericObjectPool.Config;
+import org.mule.module.redis.RedisUtils.RedisAction;
+
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Hashing;
+import redis.clients.util.SafeEncoder;
+import redis.clients.util.ShardInfo;
+import redis.clients.util.Sharded;
+
+/**
+ * Distributes keys over standalone Redis nodes with a consistent hash ring. Each node is placed on
+ * the ring with many virtual nodes derived from its address, so keys spread evenly and adding a node
+ * only moves the keys that now belong to it. Keys sharing a hash tag, the part between braces, are
+ * kept on the same node.
+ */
+public class RedisShards implements RedisKeyRouter
+{
+    private static final class PoolShardInfo extends ShardInfo<JedisPool>
+    {
+        private final String endpoint;
+        private final JedisPool jedisPool;
+
+        private PoolShardInfo(final String endpoint, final JedisPool jedisPool)
+        {
+            super(Sharded.DEFAULT_WEIGHT);
+            this.endpoint = endpoint;
+            this.jedisPool = jedisPool;
+        }
+
+        @Override
+        protected JedisPool createResource()
+        {
+            return jedisPool;
+        }
+
+        @Override
+        public String getName()
+        {
+            // naming the shards keeps the ring independent of the configuration order
+            return endpoint;
+        }
+    }
+
+    private final List<JedisPool> jedisPools;
+    private final Sharded<JedisPool, PoolShardInfo> sharded;
+
+    /**
+     * @param endpoints the nodes, as host:port strings.
+     * @param metrics the metrics the pools report to, null if metrics are disabled.
+     */
+    public RedisShards(final List<String> endpoints,
+                       final Config poolConfig,
+                       final int connectionTimeout,
+                       final String password,
+                       final RedisMetrics metrics)
+    {
+        jedisPools = new ArrayList<JedisPool>(endpoints.size());
+        final List<PoolShardInfo> shardInfos = new ArrayList<PoolShardInfo>(endpoints.size());
+
+        for (final String endpoint : endpoints)
+        {
+            final JedisPool jedisPool = RedisUtils.newJedisPool(poolConfig, endpoint, connectionTimeout, password,
+                metrics);
+            jedisPools.add(jedisPool);
+            shardInfos.add(new PoolShardInfo(endpoint.trim(), jedisPool));
+        }
+
+        sharded = new Sharded<JedisPool, PoolShardInfo>(shardInfos, Hashing.MURMUR_HASH,
+            Sharded.DEFAULT_KEY_TAG_PATTERN);
+    }
+
+    @Override
+    public <R> R run(final byte[] key, final RedisAction<R> action)
+    {
+        return RedisUtils.run((JedisPool) getRoute(key), action);
+    }
+
+    @Override
+    public Object getRoute(final byte[] key)
+    {
+        // only the String flavour of Sharded honours key tags
+        return sharded.getShard(SafeEncoder.encode(key));
+    }
+
+    @Override
+    public List<JedisPool> getPools()
+    {
+        return jedisPools;
+    }
+
+    @Override
+    public void destroy()
+    {
+        for (final JedisPool jedisPool : jedisPools)
+        {
+            jedisPool.destroy();
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import redis.clients.jedis.BinaryJedis;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Multiplexes the subscriptions of any number of {@link RedisPubSubListener}s on a single
+ * connection: channels and patterns are subscribed to when the first listener needing them is
+ * added and unsubscribed from when the last one is removed, while incoming messages are routed to
+ * the listeners of their channel or pattern. An internal channel stays subscribed to as long as
+ * the manager is connected, so that the connection doesn't leave subscriber mode when no listener
+ * is left.
+ */
+public class RedisSubscriptionManager extends BinaryJedisPubSub
+{
+    private static final Log LOGGER = LogFactory.getLog(RedisSubscriptionManager.class);
+
+    private static final byte[] KEEP_ALIVE_CHANNEL = SafeEncoder.encode(RedisConstants.SUBSCRIPTION_MANAGER_CHANNEL);
+
+    // guards the writes to the connection and the replacement of the listener maps
+    private final Object lock = new Object();
+
+    // copied on write, so that messages are routed without locking
+    private volatile Map<ByteBuffer, List<RedisPubSubListener>> channelListeners = Collections.emptyMap();
+    private volatile Map<ByteBuffer, List<RedisPubSubListener>> patternListeners = Collections.emptyMap();
+
+    private boolean connected;
+
+    /**
+     * Subscribes to the channels and patterns of the listener, unless other listeners already did.
+     */
+    public void add(final RedisPubSubListener listener)
+    {
+        synchronized (lock)
+        {
+            final List<byte[]> newChannels = new ArrayList<byte[]>();
+            channelListeners = withListener(channelListeners, listener.getLiteralChannels(), listener, newChannels);
+            final List<byte[]> newPatterns = new ArrayList<byte[]>();
+            patternListeners = withListener(patternListeners, listener.getPatterns(), listener, newPatterns);
+
+            if (!connected)
+            {
+                // subscribed to once connected
+                return;
+            }
+
+            try
+            {
+                if (!newChannels.isEmpty())
+                {
+                    subscribe(newChannels.toArray(new byte[newChannels.size()][]));
+                }
+                if (!newPatterns.isEmpty())
+                {
+                    psubscribe(newPatterns.toArray(new byte[newPatterns.size()][]));
+                }
+            }
+            catch (final JedisException je)
+            {
+                LOGGER.warn("Failed to subscribe listener: " + listener + ", will subscribe when reconnected", je);
+            }
+        }
+    }
+
+    /**
+     * Unsubscribes from the channels and patterns of the listener that no other listener needs.
+     */
+    public void remove(final RedisPubSubListener listener)
+    {
+        synchronized (lock)
+        {
+            final List<byte[]> oldChannels = new ArrayList<byte[]>();
+            channelListeners = withoutListener(channelListeners, listener.getLiteralChannels(), listener,
+                oldChannels);
+            final List<byte[]> oldPatterns = new ArrayList<byte[]>();
+            patternListeners = withoutListener(patternListeners, listener.getPatterns(), listener, oldPatterns);
+
+            if (!connected)
+            {
+                return;
+            }
+
+            try
+            {
+                if (!oldChannels.isEmpty())
+                {
+                    unsubscribe(oldChannels.toArray(new byte[oldChannels.size()][]));
+                }
+                if (!oldPatterns.isEmpty())
+                {
+                    punsubscribe(oldPatterns.toArray(new byte[oldPatterns.size()][]));
+                }
+            }
+            catch (final JedisException je)
+            {
+                LOGGER.warn("Failed to unsubscribe listener: " + listener, je);
+            }
+        }
+    }
+
+    /**
+     * Subscribes to the channels and patterns of all the listeners, blocking until
+     * {@link #unsubscribeAll()} is called or the connection is lost.
+     */
+    public void subscribe(final BinaryJedis jedis)
+    {
+        try
+        {
+            jedis.subscribe(this, KEEP_ALIVE_CHANNEL);
+        }
+        finally
+        {
+            synchronized (lock)
+            {
+                connected = false;
+            }
+        }
+    }
+
+    /**
+     * Unsubscribes from all the channels and patterns, which makes {@link #subscribe(BinaryJedis)}
+     * return. The listeners are kept, to be subscribed again on the next connection.
+     */
+    public void unsubscribeAll()
+    {
+        synchronized (lock)
+        {
+            if (!connected)
+            {
+                return;
+            }
+
+            connected = false;
+            // the keep-alive channel goes last, so that the replies of both commands are read
+            if (!patternListeners.isEmpty())
+            {
+                punsubscribe();
+            }
+            unsubscribe();
+        }
+    }
+
+    public int getChannels()
+    {
+        return channelListeners.size();
+    }
+
+    public int getPatterns()
+    {
+        return patternListeners.size();
+    }
+
+    @Override
+    public void onMessage(final byte[] channel, final byte[] message)
+    {
+        final List<RedisPubSubListener> listeners = channelListeners.get(ByteBuffer.wrap(channel));
+        if (listeners == null)
+        {
+            // the keep-alive channel, or a channel being unsubscribed from
+            return;
+        }
+
+        for (final RedisPubSubListener listener : listeners)
+        {
+            listener.onMessage(channel, message);
+        }
+    }
+
+    @Override
+    public void onPMessage(final byte[] pattern, final byte[] channel, final byte[] message)
+    {
+        final List<RedisPubSubListener> listeners = patternListeners.get(ByteBuffer.wrap(pattern));
+        if (listeners == null)
+        {
+            return;
+        }
+
+        for (final RedisPubSubListener listener : listeners)
+        {
+            listener.onPMessage(pattern, channel, message);
+        }
+    }
+
+    @Override
+    public void onSubscribe(final byte[] channel, final int subscribedChannels)
+    {
+        if (!Arrays.equals(KEEP_ALIVE_CHANNEL, channel))
+        {
+            LOGGER.info("Subscribed to channel: " + SafeEncoder.encode(channel));
+            return;
+        }
+
+        // the connection is ready: catch up with the listeners added meanwhile
+        synchronized (lock)
+        {
+            connected = true;
+
+            if (!channelListeners.isEmpty())
+            {
+                subscribe(toArray(channelListeners));
+            }
+            if (!patternListeners.isEmpty())
+            {
+                psubscribe(toArray(patternListeners));
+            }
+        }
+    }
+
+    @Override
+    public void onPSubscribe(final byte[] pattern, final int subscribedChannels)
+    {
+        LOGGER.info("Subscribed to pattern: " + SafeEncoder.encode(pattern));
+    }
+
+    @Override
+    public void onUnsubscribe(final byte[] channel, final int subscribedChannels)
+    {
+        LOGGER.info("Unsubscribed from channel: " + SafeEncoder.encode(channel));
+    }
+
+    @Override
+    public void onPUnsubscribe(final byte[] pattern, final int subscribedChannels)
+    {
+        LOGGER.info("Unsubscribed from pattern: " + SafeEncoder.encode(pattern));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("channels: %d, patterns: %d", getChannels(), getPatterns());
+    }
+
+    /**
+     * @param addedKeys receives the keys that had no listener yet.
+     */
+    private static Map<ByteBuffer, List<RedisPubSubListener>> withListener(final Map<ByteBuffer, List<RedisPubSubListener>> listeners,
+                                                                          final byte[][] keys,
+                                                                          final RedisPubSubListener listener,
+                                                                          final List<byte[]> addedKeys)
+    {
+        if (keys.length == 0)
+        {
+            return listeners;
+        }
+
+        final Map<ByteBuffer, List<RedisPubSubListener>> newListeners = new HashMap<ByteBuffer, List<RedisPubSubListener>>(
+            listeners);
+
+        for (final byte[] key : keys)
+        {
+            final ByteBuffer wrappedKey = ByteBuffer.wrap(key);
+            final List<RedisPubSubListener> keyListeners = newListeners.get(wrappedKey);
+
+            if (keyListeners == null)
+            {
+                newListeners.put(wrappedKey, Collections.singletonList(listener));
+                addedKeys.add(key);
+            }
+            else if (!keyListeners.contains(listener))
+            {
+                final List<RedisPubSubListener> newKeyListeners = new ArrayList<RedisPubSubListener>(keyListeners);
+                newKeyListeners.add(listener);
+                newListeners.put(wrappedKey, Collections.unmodifiableList(newKeyListeners));
+            }
+        }
+        return Collections.unmodifiableMap(newListeners);
+    }
+
+    /**
+     * @param removedKeys receives the keys that have no listener left.
+     */
+    private static Map<ByteBuffer, List<RedisPubSubListener>> withoutListener(final Map<ByteBuffer, List<RedisPubSubListener>> listeners,
+                                                                             final byte[][] keys,
+                                                                             final RedisPubSubListener listener,
+                                                                             final List<byte[]> removedKeys)
+    {
+        if (keys.length == 0)
+        {
+            return listeners;
+        }
+
+        final Map<ByteBuffer, List<RedisPubSubListener>> newListeners = new HashMap<ByteBuffer, List<RedisPubSubListener>>(
+            listeners);
+
+        for (final byte[] key : keys)
+        {
+            final ByteBuffer wrappedKey = ByteBuffer.wrap(key);
+            final List<RedisPubSubListener> keyListeners = newListeners.get(wrappedKey);
+
+            if ((keyListeners == null) || (!keyListeners.contains(listener)))
+            {
+                continue;
+            }
+
+            if (keyListeners.size() == 1)
+            {
+                newListeners.remove(wrappedKey);
+                removedKeys.add(key);
+            }
+            else
+            {
+                final List<RedisPubSubListener> newKeyListeners = new ArrayList<RedisPubSubListener>(keyListeners);
+                newKeyListeners.remove(listener);
+                newListeners.put(wrappedKey, Collections.unmodifiableList(newKeyListeners));
+            }
+        }
+        return Collections.unmodifiableMap(newListeners);
+    }
+
+    private static byte[][] toArray(final Map<ByteBuffer, List<RedisPubSubListener>> listeners)
+    {
+        final byte[][] keys = new byte[listeners.size()][];
+        int i = 0;
+        for (final ByteBuffer key : listeners.keySet())
+        {
+            keys[i++] = key.array();
+        }
+        return keys;
+    }
+}
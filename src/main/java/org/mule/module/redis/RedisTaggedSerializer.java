@@ -0,0 +1,403 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import redis.clients.util.SafeEncoder;
+
+/**
+ * A compact binary format for the object store. Strings are stored as UTF-8 bytes, like with
+ * {@link RedisJavaSerializer}. Other values start with a format marker followed by a type tag:
+ * byte arrays, boxed primitives and the ArrayList, HashSet and HashMap collections of such values
+ * are written directly, with variable length integers, while any other value is written by a
+ * pluggable codec, Java serialization by default.
+ * <p/>
+ * The format marker is a byte that can neither start a UTF-8 string nor a Java serialization
+ * stream, so values written by {@link RedisJavaSerializer} remain readable.
+ */
+public class RedisTaggedSerializer implements RedisSerializer
+{
+    static final byte FORMAT_MARKER = (byte) 0x81;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte BYTES = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte BYTE = 4;
+    private static final byte SHORT = 5;
+    private static final byte CHARACTER = 6;
+    private static final byte INTEGER = 7;
+    private static final byte LONG = 8;
+    private static final byte FLOAT = 9;
+    private static final byte DOUBLE = 10;
+    private static final byte LIST = 11;
+    private static final byte SET = 12;
+    private static final byte MAP = 13;
+    private static final byte CODEC = 127;
+
+    private static final class Output
+    {
+        private byte[] buffer = new byte[64];
+        private int size;
+
+        private void write(final int b)
+        {
+            ensureCapacity(1);
+            buffer[size++] = (byte) b;
+        }
+
+        private void write(final byte[] bytes)
+        {
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void writeVarLong(final long value)
+        {
+            long remaining = value;
+            while ((remaining & ~0x7FL) != 0L)
+            {
+                write((int) ((remaining & 0x7FL) | 0x80L));
+                remaining >>>= 7;
+            }
+            write((int) remaining);
+        }
+
+        private void writeZigZag(final long value)
+        {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        private void writeFixed(final long value, final int bytes)
+        {
+            for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8)
+            {
+                write((int) (value >>> shift));
+            }
+        }
+
+        private void ensureCapacity(final int extra)
+        {
+            if (size + extra > buffer.length)
+            {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        private byte[] toByteArray()
+        {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    private static final class Input
+    {
+        private final byte[] bytes;
+        private int position;
+
+        private Input(final byte[] bytes, final int position)
+        {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        private byte read()
+        {
+            if (position >= bytes.length)
+            {
+                throw new IllegalArgumentException("Truncated value");
+            }
+            return bytes[position++];
+        }
+
+        private byte[] readBytes()
+        {
+            final int length = readLength();
+            if (position + length > bytes.length)
+            {
+                throw new IllegalArgumentException("Truncated value");
+            }
+
+            final byte[] result = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return result;
+        }
+
+        private int readLength()
+        {
+            final long length = readVarLong();
+            if ((length < 0L) || (length > Integer.MAX_VALUE))
+            {
+                throw new IllegalArgumentException("Invalid length: " + length);
+            }
+            return (int) length;
+        }
+
+        private long readVarLong()
+        {
+            long value = 0L;
+            for (int shift = 0; shift < 64; shift += 7)
+            {
+                final byte b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed variable length integer");
+        }
+
+        private long readZigZag()
+        {
+            final long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1L);
+        }
+
+        private long readFixed(final int bytes)
+        {
+            long value = 0L;
+            for (int i = 0; i < bytes; i++)
+            {
+                value = (value << 8) | (read() & 0xFFL);
+            }
+            return value;
+        }
+    }
+
+    private final RedisSerializer codec;
+
+    public RedisTaggedSerializer()
+    {
+        this(new RedisJavaSerializer());
+    }
+
+    /**
+     * @param codec writes the values that don't have a dedicated type tag.
+     */
+    public RedisTaggedSerializer(final RedisSerializer codec)
+    {
+        this.codec = codec;
+    }
+
+    @Override
+    public byte[] serialize(final Serializable value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+
+        if (value instanceof String)
+        {
+            return SafeEncoder.encode((String) value);
+        }
+
+        final Output output = new Output();
+        output.write(FORMAT_MARKER);
+        write(output, value);
+        return output.toByteArray();
+    }
+
+    @Override
+    public Serializable deserialize(final byte[] bytes)
+    {
+        if ((bytes == null) || (bytes.length == 0))
+        {
+            return null;
+        }
+
+        if (bytes[0] != FORMAT_MARKER)
+        {
+            // a string or a value written by the Java serializer
+            return RedisUtils.fromBytes(bytes);
+        }
+
+        final Input input = new Input(bytes, 1);
+        final Object value = read(input);
+
+        if (input.position != bytes.length)
+        {
+            throw new IllegalArgumentException("Unexpected bytes after value: " + (bytes.length - input.position));
+        }
+        return (Serializable) value;
+    }
+
+    public RedisSerializer getCodec()
+    {
+        return codec;
+    }
+
+    private void write(final Output output, final Object value)
+    {
+        // exact class checks: subclasses could carry state the tags can't preserve
+        final Class<?> type = value == null ? null : value.getClass();
+
+        if (type == null)
+        {
+            output.write(NULL);
+        }
+        else if (type == String.class)
+        {
+            output.write(STRING);
+            output.write(SafeEncoder.encode((String) value));
+        }
+        else if (type == byte[].class)
+        {
+            output.write(BYTES);
+            output.write((byte[]) value);
+        }
+        else if (type == Boolean.class)
+        {
+            output.write(BOOLEAN);
+            output.write(((Boolean) value) ? 1 : 0);
+        }
+        else if (type == Byte.class)
+        {
+            output.write(BYTE);
+            output.write((Byte) value);
+        }
+        else if (type == Short.class)
+        {
+            output.write(SHORT);
+            output.writeZigZag((Short) value);
+        }
+        else if (type == Character.class)
+        {
+            output.write(CHARACTER);
+            output.writeVarLong((Character) value);
+        }
+        else if (type == Integer.class)
+        {
+            output.write(INTEGER);
+            output.writeZigZag((Integer) value);
+        }
+        else if (type == Long.class)
+        {
+            output.write(LONG);
+            output.writeZigZag((Long) value);
+        }
+        else if (type == Float.class)
+        {
+            output.write(FLOAT);
+            output.writeFixed(Float.floatToRawIntBits((Float) value), 4);
+        }
+        else if (type == Double.class)
+        {
+            output.write(DOUBLE);
+            output.writeFixed(Double.doubleToRawLongBits((Double) value), 8);
+        }
+        else if ((type == ArrayList.class) || (type == HashSet.class))
+        {
+            final Collection<?> collection = (Collection<?>) value;
+            output.write(type == ArrayList.class ? LIST : SET);
+            output.writeVarLong(collection.size());
+            for (final Object element : collection)
+            {
+                write(output, element);
+            }
+        }
+        else if (type == HashMap.class)
+        {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            output.write(MAP);
+            output.writeVarLong(map.size());
+            for (final Entry<?, ?> entry : map.entrySet())
+            {
+                write(output, entry.getKey());
+                write(output, entry.getValue());
+            }
+        }
+        else if (value instanceof Serializable)
+        {
+            output.write(CODEC);
+            output.write(codec.serialize((Serializable) value));
+        }
+        else
+        {
+            throw new IllegalArgumentException("Can't serialize a value of type: " + type.getName());
+        }
+    }
+
+    private Object read(final Input input)
+    {
+        final byte tag = input.read();
+
+        switch (tag)
+        {
+            case NULL :
+                return null;
+            case STRING :
+                return SafeEncoder.encode(input.readBytes());
+            case BYTES :
+                return input.readBytes();
+            case BOOLEAN :
+                return input.read() != 0;
+            case BYTE :
+                return input.read();
+            case SHORT :
+                return (short) input.readZigZag();
+            case CHARACTER :
+                return (char) input.readVarLong();
+            case INTEGER :
+                return (int) input.readZigZag();
+            case LONG :
+                return input.readZigZag();
+            case FLOAT :
+                return Float.intBitsToFloat((int) input.readFixed(4));
+            case DOUBLE :
+                return Double.longBitsToDouble(input.readFixed(8));
+            case LIST :
+            {
+                final int size = input.readLength();
+                final ArrayList<Object> list = new ArrayList<Object>(Math.min(size, input.bytes.length));
+                for (int i = 0; i < size; i++)
+                {
+                    list.add(read(input));
+                }
+                return list;
+            }
+            case SET :
+            {
+                final int size = input.readLength();
+                final HashSet<Object> set = new HashSet<Object>();
+                for (int i = 0; i < size; i++)
+                {
+                    set.add(read(input));
+                }
+                return set;
+            }
+            case MAP :
+            {
+                final int size = input.readLength();
+                final HashMap<Object, Object> map = new HashMap<Object, Object>();
+                for (int i = 0; i < size; i++)
+                {
+                    final Object key = read(input);
+                    map.put(key, read(input));
+                }
+                return map;
+            }
+            case CODEC :
+                return codec.deserialize(input.readBytes());
+            default :
+                throw new IllegalArgumentException("Unknown type tag: " + tag);
+        }
+    }
+}
@@ -8,27 +8,69 @@
 
 package org.mule.module.redis;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectStreamConstants;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.SerializationUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.commons.pool.impl.GenericObjectPool.Config;
+import org.mule.module.redis.RedisMetrics.MeteredJedisPool;
+import org.mule.util.StringUtils;
 
+import redis.clients.jedis.BinaryClient;
 import redis.clients.jedis.BinaryJedis;
+import redis.clients.jedis.Client;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.RedisInputStream;
+import redis.clients.util.RedisOutputStream;
 import redis.clients.util.SafeEncoder;
 
 public abstract class RedisUtils
 {
     public static abstract class RedisAction<R>
     {
+        private final String name;
+
         protected volatile BinaryJedis redis;
 
+        public RedisAction()
+        {
+            this(null);
+        }
+
+        /**
+         * @param name the name under which the latency of this action is recorded, if metrics are
+         *            enabled.
+         */
+        public RedisAction(final String name)
+        {
+            this.name = name;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
         R runWithJedis(final Jedis jedis)
         {
             redis = jedis;
@@ -36,10 +78,111 @@ public abstract class RedisUtils
         }
 
         public abstract R run();
+
+        /**
+         * @return true if the connection can go back to the pool once this action has completed
+         *         without a connection failure, false if it must be closed instead because it may
+         *         be left in a state that Jedis doesn't track.
+         */
+        public boolean isConnectionReusable()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * A {@link RedisAction} that can send its commands without waiting for their replies, which
+     * allows batching it with other actions in a single round trip. When run on its own, the
+     * commands are sent and their replies read right away.
+     */
+    public static abstract class QueueableRedisAction<R> extends RedisAction<R>
+    {
+        private volatile boolean queueFailed;
+
+        public QueueableRedisAction()
+        {
+            super();
+        }
+
+        public QueueableRedisAction(final String name)
+        {
+            super(name);
+        }
+
+        /**
+         * Sends the commands of this action without reading their replies. Implementations must
+         * prepare all the command arguments before sending anything, so that a failure doesn't
+         * leave a partial action on the wire.
+         * 
+         * @param client the client to send the commands with.
+         * @return the number of commands sent.
+         */
+        public abstract int queue(BinaryClient client);
+
+        /**
+         * Builds the result of this action from the raw replies to the commands sent by
+         * {@link #queue(BinaryClient)}, in the same order.
+         * 
+         * @param replies the raw replies, as read by {@link RedisUtils#readReplies(Client, int)}.
+         * @return the result of this action.
+         */
+        public abstract R fromReplies(List<Object> replies);
+
+        @Override
+        public R run()
+        {
+            final Client client = redis.getClient();
+            final int commands;
+
+            try
+            {
+                commands = queue(client);
+            }
+            catch (final RuntimeException re)
+            {
+                // some commands may have been sent, their replies would be read by the next user
+                queueFailed = true;
+                throw re;
+            }
+
+            return RedisUtils.fromReplies(this, readReplies(client, commands));
+        }
+
+        @Override
+        public boolean isConnectionReusable()
+        {
+            return !queueFailed;
+        }
     }
 
     private static final Log LOGGER = LogFactory.getLog(RedisUtils.class);
 
+    static final byte[] SCAN_START_CURSOR = SafeEncoder.encode("0");
+
+    private static final byte[] SCAN = SafeEncoder.encode("SCAN");
+    private static final byte[] HSCAN = SafeEncoder.encode("HSCAN");
+    private static final byte[] MATCH = SafeEncoder.encode("MATCH");
+    private static final byte[] COUNT = SafeEncoder.encode("COUNT");
+
+    // the servers, as host:port strings, older than Redis 2.8 which introduced the SCAN family
+    private static final Set<String> SCANLESS_SERVERS = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static
+    {
+        // CRC16-CCITT (XModem), as used by Redis Cluster to map keys to slots
+        for (int i = 0; i < CRC16_TABLE.length; i++)
+        {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++)
+            {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC16_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
     private RedisUtils()
     {
         throw new UnsupportedOperationException("do not instantiate");
@@ -59,6 +202,100 @@ public abstract class RedisUtils
         }
     }
 
+    /**
+     * @return the bytes of a byte array, {@link ByteBuffer}, {@link InputStream} or string value,
+     *         or null for any other type. Byte arrays are returned as-is and streams are read until
+     *         their end, then closed.
+     */
+    public static byte[] toBytes(final Object value, final String encoding) throws IOException
+    {
+        if (value instanceof byte[])
+        {
+            return (byte[]) value;
+        }
+
+        if (value instanceof String)
+        {
+            return toBytes((String) value, encoding);
+        }
+
+        if (value instanceof ByteBuffer)
+        {
+            // leave the position of the caller's buffer untouched
+            final ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        if (value instanceof InputStream)
+        {
+            final InputStream stream = (InputStream) value;
+            try
+            {
+                return readFully(stream);
+            }
+            finally
+            {
+                stream.close();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads from the stream until the buffer is full or the stream ends.
+     * 
+     * @return the number of bytes read, less than the length of the buffer only if the stream
+     *         has ended.
+     */
+    public static int readChunk(final InputStream stream, final byte[] buffer) throws IOException
+    {
+        return readChunk(stream, buffer, 0);
+    }
+
+    private static int readChunk(final InputStream stream, final byte[] buffer, final int offset)
+        throws IOException
+    {
+        int length = 0;
+        while (offset + length < buffer.length)
+        {
+            final int read = stream.read(buffer, offset + length, buffer.length - offset - length);
+            if (read < 0)
+            {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
+    private static byte[] readFully(final InputStream stream) throws IOException
+    {
+        // sized after the stream when it can tell, so that most reads don't copy the bytes again
+        byte[] buffer = new byte[Math.max(stream.available(), 8192)];
+        int length = 0;
+
+        while (true)
+        {
+            length += readChunk(stream, buffer, length);
+            if (length < buffer.length)
+            {
+                return Arrays.copyOf(buffer, length);
+            }
+
+            final int next = stream.read();
+            if (next < 0)
+            {
+                return buffer;
+            }
+
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            buffer[length++] = (byte) next;
+        }
+    }
+
     public static byte[] toBytes(final Serializable serializable)
     {
         if (serializable == null)
@@ -102,7 +339,167 @@ public abstract class RedisUtils
 
     public static byte[] getPartitionHashKey(final String partitionName)
     {
-        return SafeEncoder.encode(RedisConstants.OBJECTSTORE_HASH_KEY_PREFIX + partitionName);
+        return getPartitionHashKey(partitionName, false);
+    }
+
+    /**
+     * @param hashTagged if true, the partition name is used as the hash tag of the key so that all
+     *            the keys related to a partition map to the same Redis Cluster slot.
+     */
+    public static byte[] getPartitionHashKey(final String partitionName, final boolean hashTagged)
+    {
+        return SafeEncoder.encode(RedisConstants.OBJECTSTORE_HASH_KEY_PREFIX
+                                  + (hashTagged ? "{" + partitionName + "}" : partitionName));
+    }
+
+    /**
+     * @return the key of the sorted set that indexes the entries of a partition by insertion time,
+     *         hash tagged like the partition hash key.
+     */
+    public static byte[] getPartitionIndexKey(final String partitionName, final boolean hashTagged)
+    {
+        return SafeEncoder.encode(RedisConstants.OBJECTSTORE_INDEX_KEY_PREFIX
+                                  + (hashTagged ? "{" + partitionName + "}" : partitionName));
+    }
+
+    /**
+     * @return the name of a bucket of a partition, used in place of the partition name in the keys
+     *         of the bucket. The separators found in the partition name are doubled, so that the
+     *         bucket suffix can't be mistaken for a part of the name.
+     */
+    public static String getBucketName(final String partitionName, final int bucket)
+    {
+        return StringUtils.replace(partitionName, RedisConstants.OBJECTSTORE_BUCKET_SEPARATOR,
+            RedisConstants.OBJECTSTORE_BUCKET_SEPARATOR + RedisConstants.OBJECTSTORE_BUCKET_SEPARATOR)
+               + RedisConstants.OBJECTSTORE_BUCKET_SEPARATOR + bucket;
+    }
+
+    /**
+     * @return the partition name of a partition hash key.
+     */
+    public static String getPartitionName(final String partitionHashKey, final boolean hashTagged)
+    {
+        return getPartitionName(partitionHashKey, hashTagged, false);
+    }
+
+    /**
+     * @param bucketed if true, the name found in the key is a bucket name: its bucket suffix is
+     *            removed and its doubled separators restored.
+     */
+    public static String getPartitionName(final String partitionHashKey,
+                                          final boolean hashTagged,
+                                          final boolean bucketed)
+    {
+        String partitionName = StringUtils.substringAfter(partitionHashKey,
+            RedisConstants.OBJECTSTORE_HASH_KEY_PREFIX);
+
+        if (hashTagged && partitionName.startsWith("{") && partitionName.endsWith("}"))
+        {
+            partitionName = partitionName.substring(1, partitionName.length() - 1);
+        }
+
+        final int separatorIndex = partitionName.lastIndexOf(RedisConstants.OBJECTSTORE_BUCKET_SEPARATOR);
+        if (bucketed && (separatorIndex != -1) && (separatorIndex < partitionName.length() - 1)
+            && StringUtils.isNumeric(partitionName.substring(separatorIndex + 1)))
+        {
+            return StringUtils.replace(partitionName.substring(0, separatorIndex),
+                RedisConstants.OBJECTSTORE_BUCKET_SEPARATOR + RedisConstants.OBJECTSTORE_BUCKET_SEPARATOR,
+                RedisConstants.OBJECTSTORE_BUCKET_SEPARATOR);
+        }
+        return partitionName;
+    }
+
+    /**
+     * @return the Redis Cluster slot of the key, which only depends on its hash tag if it has one:
+     *         the part between the first opening brace and the next closing brace, if not empty.
+     */
+    public static int getSlot(final byte[] key)
+    {
+        int start = 0;
+        int end = key.length;
+
+        for (int i = 0; i < key.length; i++)
+        {
+            if (key[i] == '{')
+            {
+                for (int j = i + 1; j < key.length; j++)
+                {
+                    if (key[j] == '}')
+                    {
+                        if (j > i + 1)
+                        {
+                            start = i + 1;
+                            end = j;
+                        }
+                        break;
+                    }
+                }
+                break;
+            }
+        }
+
+        int crc = 0;
+        for (int i = start; i < end; i++)
+        {
+            crc = ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ key[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc % RedisCluster.SLOTS;
+    }
+
+    /**
+     * @return the host of a host:port endpoint.
+     */
+    public static String getHost(final String endpoint)
+    {
+        final int colon = endpoint.lastIndexOf(':');
+        return colon == -1 ? endpoint.trim() : endpoint.substring(0, colon).trim();
+    }
+
+    /**
+     * @return the port of a host:port endpoint, or the default Redis port if none is specified.
+     */
+    public static int getPort(final String endpoint)
+    {
+        final int colon = endpoint.lastIndexOf(':');
+        return colon == -1 ? Protocol.DEFAULT_PORT : Integer.parseInt(endpoint.substring(colon + 1).trim());
+    }
+
+    /**
+     * @param endpoint the server, as a host:port string.
+     * @param metrics the metrics the pool reports to, null if metrics are disabled.
+     */
+    public static JedisPool newJedisPool(final Config poolConfig,
+                                         final String endpoint,
+                                         final int connectionTimeout,
+                                         final String password,
+                                         final RedisMetrics metrics)
+    {
+        if (metrics == null)
+        {
+            return new JedisPool(poolConfig, getHost(endpoint), getPort(endpoint), connectionTimeout, password);
+        }
+
+        return new MeteredJedisPool(metrics, poolConfig, getHost(endpoint), getPort(endpoint), connectionTimeout,
+            password);
+    }
+
+    public static String getNearCacheKey(final String key)
+    {
+        return "s:" + key;
+    }
+
+    public static String getNearCacheKey(final String key, final String field)
+    {
+        return "h:" + key + '\u0000' + field;
+    }
+
+    /**
+     * @return true if the channel contains glob-style special characters, and must be subscribed to
+     *         with PSUBSCRIBE.
+     */
+    public static boolean isPattern(final String channel)
+    {
+        return StringUtils.containsAny(channel, "*?[\\");
     }
 
     public static byte[][] getPatternsFromChannels(final List<String> channels)
@@ -115,32 +512,372 @@ public abstract class RedisUtils
         return patterns;
     }
 
+    /**
+     * @return the channels that are globbing patterns.
+     */
+    public static byte[][] getPatterns(final List<String> channels)
+    {
+        return getChannels(channels, true);
+    }
+
+    /**
+     * @return the channels that are plain channel names.
+     */
+    public static byte[][] getLiteralChannels(final List<String> channels)
+    {
+        return getChannels(channels, false);
+    }
+
+    private static byte[][] getChannels(final List<String> channels, final boolean patterns)
+    {
+        final List<byte[]> selectedChannels = new ArrayList<byte[]>(channels.size());
+        for (final String channel : channels)
+        {
+            if (isPattern(channel) == patterns)
+            {
+                selectedChannels.add(SafeEncoder.encode(channel));
+            }
+        }
+        return selectedChannels.toArray(new byte[selectedChannels.size()][]);
+    }
+
+    /**
+     * Raw replies read in pipelined mode carry errors as {@link JedisDataException} instances
+     * instead of throwing them: this method throws them back.
+     */
+    public static Object checkReply(final Object reply)
+    {
+        if (reply instanceof JedisDataException)
+        {
+            throw (JedisDataException) reply;
+        }
+        return reply;
+    }
+
+    public static byte[] toBulkReply(final Object reply)
+    {
+        return (byte[]) checkReply(reply);
+    }
+
+    public static Long toIntegerReply(final Object reply)
+    {
+        return (Long) checkReply(reply);
+    }
+
+    public static Boolean toBooleanReply(final Object reply)
+    {
+        final Long result = toIntegerReply(reply);
+        return result == null ? null : result == 1L;
+    }
+
+    public static Double toDoubleReply(final Object reply)
+    {
+        final byte[] result = toBulkReply(reply);
+        return result == null ? null : Double.valueOf(SafeEncoder.encode(result));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<byte[]> toMultiBulkReply(final Object reply)
+    {
+        final List<Object> result = (List<Object>) checkReply(reply);
+        if (result == null)
+        {
+            return null;
+        }
+
+        final List<byte[]> bulks = new ArrayList<byte[]>(result.size());
+        for (final Object element : result)
+        {
+            bulks.add((byte[]) element);
+        }
+        return bulks;
+    }
+
+    public static Set<byte[]> toMultiBulkSetReply(final Object reply)
+    {
+        final List<byte[]> result = toMultiBulkReply(reply);
+        return result == null ? null : new LinkedHashSet<byte[]>(result);
+    }
+
+    /**
+     * @return the indexes of the keys, grouped by the route provided by the key router, so that
+     *         each group can be used in a multi-key command.
+     */
+    public static Map<Object, List<Integer>> getIndexesByRoute(final List<String> keys, final RedisKeyRouter keyRouter)
+    {
+        final Map<Object, List<Integer>> indexesByRoute = new LinkedHashMap<Object, List<Integer>>();
+        for (int i = 0; i < keys.size(); i++)
+        {
+            final Object route = keyRouter.getRoute(SafeEncoder.encode(keys.get(i)));
+            List<Integer> indexes = indexesByRoute.get(route);
+            if (indexes == null)
+            {
+                indexes = new ArrayList<Integer>();
+                indexesByRoute.put(route, indexes);
+            }
+            indexes.add(i);
+        }
+        return indexesByRoute;
+    }
+
+    /**
+     * Reads the replies to commands sent without reading their replies. Unlike
+     * {@link Client#getAll()}, which reads as many replies as the connection counts pending, this
+     * doesn't depend on how earlier users of a pooled connection have kept that count.
+     * 
+     * @param count the number of commands sent.
+     * @return the raw replies, error replies as {@link JedisDataException}s.
+     */
+    public static List<Object> readReplies(final Client client, final int count)
+    {
+        final List<Object> replies = new ArrayList<Object>(count);
+        for (int i = 0; i < count; i++)
+        {
+            try
+            {
+                replies.add(client.getOne());
+            }
+            catch (final JedisDataException jde)
+            {
+                replies.add(jde);
+            }
+        }
+        return replies;
+    }
+
+    /**
+     * Builds the result of a queueable action from the replies to its commands.
+     * 
+     * @throws JedisConnectionException if the replies don't match the commands of the action,
+     *             which means they have been read out of step and the connection can't be reused.
+     */
+    public static <R> R fromReplies(final QueueableRedisAction<R> action, final List<Object> replies)
+    {
+        try
+        {
+            return action.fromReplies(replies);
+        }
+        catch (final IndexOutOfBoundsException ioobe)
+        {
+            throw new JedisConnectionException("Unexpected replies to: " + action.getName(), ioobe);
+        }
+        catch (final ClassCastException cce)
+        {
+            throw new JedisConnectionException("Unexpected replies to: " + action.getName(), cce);
+        }
+    }
+
+    /**
+     * Sends a command that isn't supported by the Jedis client and reads its reply. The connection
+     * must not have any pending reply.
+     * 
+     * @return the raw reply, see {@link #readReplies(Client, int)}.
+     * @throws JedisDataException if Redis replies with an error.
+     */
+    public static Object sendRawCommand(final BinaryJedis jedis, final byte[]... args)
+    {
+        final Client client = jedis.getClient();
+        if (!client.isConnected())
+        {
+            client.connect();
+        }
+
+        try
+        {
+            final Socket socket = client.getSocket();
+            final RedisOutputStream os = new RedisOutputStream(socket.getOutputStream());
+            os.write(Protocol.ASTERISK_BYTE);
+            os.writeIntCrLf(args.length);
+            for (final byte[] arg : args)
+            {
+                os.write(Protocol.DOLLAR_BYTE);
+                os.writeIntCrLf(arg.length);
+                os.write(arg);
+                os.writeCrLf();
+            }
+            os.flush();
+
+            // nothing else is on the wire, so this stream can't read past the reply
+            return Protocol.read(new RedisInputStream(socket.getInputStream()));
+        }
+        catch (final IOException ioe)
+        {
+            throw new JedisConnectionException(ioe);
+        }
+    }
+
+    /**
+     * Lists the keys matching a pattern with SCAN which, unlike KEYS, doesn't block the server for
+     * the whole walk of the keyspace: each command only inspects about count keys. Servers older
+     * than Redis 2.8 are sent a KEYS command instead.
+     * 
+     * @return the matching keys, with possible duplicates if the keyspace is resized meanwhile.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<byte[]> scan(final BinaryJedis jedis, final byte[] pattern, final int count)
+    {
+        final List<byte[]> keys = new ArrayList<byte[]>();
+        final byte[] countAsBytes = Protocol.toByteArray(count);
+        byte[] cursor = SCAN_START_CURSOR;
+
+        if (!isScanSupported(jedis))
+        {
+            keys.addAll(jedis.keys(pattern));
+            return keys;
+        }
+
+        do
+        {
+            final List<Object> reply;
+
+            try
+            {
+                reply = (List<Object>) sendRawCommand(jedis, SCAN, cursor, MATCH, pattern, COUNT, countAsBytes);
+            }
+            catch (final JedisDataException jde)
+            {
+                if (!isUnknownScanCommand(jedis, jde))
+                {
+                    throw jde;
+                }
+                keys.addAll(jedis.keys(pattern));
+                return keys;
+            }
+
+            cursor = (byte[]) reply.get(0);
+
+            for (final Object key : (List<Object>) reply.get(1))
+            {
+                keys.add((byte[]) key);
+            }
+        }
+        while (!Arrays.equals(cursor, SCAN_START_CURSOR));
+
+        return keys;
+    }
+
+    /**
+     * Runs one step of the walk of a hash with HSCAN, which inspects about count fields. Servers
+     * older than Redis 2.8 are sent a HKEYS command instead, which walks the whole hash at once.
+     * 
+     * @param fields receives the fields returned by this step.
+     * @return the cursor of the next step, {@link #SCAN_START_CURSOR} once the walk is complete.
+     */
+    @SuppressWarnings("unchecked")
+    public static byte[] hscan(final BinaryJedis jedis,
+                               final byte[] key,
+                               final byte[] cursor,
+                               final int count,
+                               final List<byte[]> fields)
+    {
+        if (!isScanSupported(jedis))
+        {
+            fields.addAll(jedis.hkeys(key));
+            return SCAN_START_CURSOR;
+        }
+
+        final List<Object> reply;
+
+        try
+        {
+            reply = (List<Object>) sendRawCommand(jedis, HSCAN, key, cursor, COUNT, Protocol.toByteArray(count));
+        }
+        catch (final JedisDataException jde)
+        {
+            if (!isUnknownScanCommand(jedis, jde))
+            {
+                throw jde;
+            }
+            fields.addAll(jedis.hkeys(key));
+            return SCAN_START_CURSOR;
+        }
+
+        // fields and values alternate
+        final List<Object> fieldsAndValues = (List<Object>) reply.get(1);
+        for (int i = 0; i < fieldsAndValues.size(); i += 2)
+        {
+            fields.add((byte[]) fieldsAndValues.get(i));
+        }
+        return (byte[]) reply.get(0);
+    }
+
+    private static boolean isScanSupported(final BinaryJedis jedis)
+    {
+        return !SCANLESS_SERVERS.contains(getAddress(jedis));
+    }
+
+    /**
+     * @return true if the error means that the server doesn't know the SCAN family of commands,
+     *         which is then remembered for the server.
+     */
+    private static boolean isUnknownScanCommand(final BinaryJedis jedis, final JedisDataException jde)
+    {
+        if ((jde.getMessage() == null) || (!jde.getMessage().startsWith("ERR unknown command")))
+        {
+            return false;
+        }
+
+        final String address = getAddress(jedis);
+        if (SCANLESS_SERVERS.add(address))
+        {
+            LOGGER.warn("Redis at " + address + " is older than 2.8 and doesn't support SCAN and HSCAN, "
+                        + "falling back to KEYS and HKEYS, which block it while they walk all the keys");
+        }
+        return true;
+    }
+
+    private static String getAddress(final BinaryJedis jedis)
+    {
+        final Client client = jedis.getClient();
+        return client.getHost() + ":" + client.getPort();
+    }
+
     public static <R> R run(final JedisPool jedisPool, final RedisAction<R> action)
     {
-        final Jedis jedis = jedisPool.getResource();
-        boolean brokenResource = false;
+        final RedisPipeline pipeline = RedisPipeline.getCurrent(jedisPool);
+        if (pipeline != null)
+        {
+            return pipeline.run(action);
+        }
+
+        final RedisMetrics metrics = RedisMetrics.of(jedisPool);
+        final long start = System.nanoTime();
+        boolean failed = true;
 
         try
         {
+            final Jedis jedis = jedisPool.getResource();
+            boolean brokenResource = false;
+
             try
             {
-                return action.runWithJedis(jedis);
+                final R result = action.runWithJedis(jedis);
+                failed = false;
+                return result;
             }
             catch (final JedisConnectionException jce)
             {
                 brokenResource = true;
                 throw jce;
             }
+            finally
+            {
+                if (brokenResource || !action.isConnectionReusable())
+                {
+                    jedisPool.returnBrokenResource(jedis);
+                }
+                else
+                {
+                    jedisPool.returnResource(jedis);
+                }
+            }
         }
         finally
         {
-            if (brokenResource)
-            {
-                jedisPool.returnBrokenResource(jedis);
-            }
-            else
+            if (metrics != null)
             {
-                jedisPool.returnResource(jedis);
+                // includes the time spent waiting for a connection
+                metrics.record(action.getName(), start, failed);
             }
         }
 
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mule.module.redis.RedisBloomFilters.Presence;
+
+public class RedisBloomFilterTest
+{
+    @Test
+    public void addedValuesAreAlwaysFound()
+    {
+        final RedisBloomFilter filter = new RedisBloomFilter(10000L, 0.01d);
+
+        for (int i = 0; i < 10000; i++)
+        {
+            filter.put(RedisUtils.toBytes("key-" + i, "UTF-8"));
+        }
+
+        for (int i = 0; i < 10000; i++)
+        {
+            assertTrue(filter.mightContain(RedisUtils.toBytes("key-" + i, "UTF-8")));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateIsNearTheTarget()
+    {
+        final RedisBloomFilter filter = new RedisBloomFilter(10000L, 0.01d);
+        assertEquals(7, filter.getHashCount());
+
+        for (int i = 0; i < 10000; i++)
+        {
+            filter.put(RedisUtils.toBytes("key-" + i, "UTF-8"));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++)
+        {
+            if (filter.mightContain(RedisUtils.toBytes("other-key-" + i, "UTF-8")))
+            {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 1500);
+    }
+
+    @Test
+    public void invalidSizesAreRejected()
+    {
+        try
+        {
+            new RedisBloomFilter(0L, 0.01d);
+            fail("should have got an IllegalArgumentException");
+        }
+        catch (final IllegalArgumentException iae)
+        {
+            // expected
+        }
+
+        try
+        {
+            new RedisBloomFilter(1000L, 1.0d);
+            fail("should have got an IllegalArgumentException");
+        }
+        catch (final IllegalArgumentException iae)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void partitionFiltersAreBuiltFromTheLoadedKeys() throws Exception
+    {
+        final List<byte[]> keysInRedis = new ArrayList<byte[]>(Arrays.asList(
+            RedisUtils.toBytes("stored-1", "UTF-8"), RedisUtils.toBytes("stored-2", "UTF-8")));
+        final CountDownLatch loaded = new CountDownLatch(1);
+
+        final RedisBloomFilters filters = new RedisBloomFilters(1000L, 0.01d)
+        {
+            @Override
+            protected void loadKeys(final String partitionName, final RedisBloomFilter filter)
+            {
+                for (final byte[] key : keysInRedis)
+                {
+                    filter.put(key);
+                }
+                loaded.countDown();
+            }
+        };
+
+        try
+        {
+            final byte[] newKey = RedisUtils.toBytes("new", "UTF-8");
+
+            // unknown until the first build completes
+            assertEquals(Presence.UNKNOWN, filters.check("p", newKey));
+            assertTrue(loaded.await(5L, TimeUnit.SECONDS));
+
+            // the build completes right after loading the keys
+            Presence presence = filters.check("p", newKey);
+            for (int i = 0; (presence == Presence.UNKNOWN) && (i < 100); i++)
+            {
+                Thread.sleep(10L);
+                presence = filters.check("p", newKey);
+            }
+
+            assertEquals(Presence.ABSENT, presence);
+            assertEquals(Presence.PROBABLE, filters.check("p", RedisUtils.toBytes("stored-1", "UTF-8")));
+            filters.recordProbableHit(true);
+
+            filters.put("p", newKey);
+            assertEquals(Presence.PROBABLE, filters.check("p", newKey));
+
+            // keys of partitions that haven't been checked are ignored
+            filters.put("other", newKey);
+            assertEquals(Presence.UNKNOWN, filters.check("other", newKey));
+
+            assertEquals(2, filters.getPartitions());
+            assertEquals(1L, filters.getAbsentKeys());
+            assertEquals(1L, filters.getProbableHits());
+            assertEquals(0.0d, filters.getFalsePositiveRate(), 0.0d);
+            assertFalse(filters.getRebuilds() == 0L);
+        }
+        finally
+        {
+            filters.stop();
+        }
+    }
+}
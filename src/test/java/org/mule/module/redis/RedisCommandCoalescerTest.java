@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mule.module.redis.RedisUtils.QueueableRedisAction;
+
+import redis.clients.jedis.BinaryClient;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+public class RedisCommandCoalescerTest
+{
+    private Client clientMock;
+    private Jedis jedisMock;
+    private JedisPool poolMock;
+    private RedisCommandCoalescer commandCoalescer;
+
+    @Before
+    public void setup()
+    {
+        clientMock = mock(Client.class);
+        jedisMock = mock(Jedis.class);
+        when(jedisMock.getClient()).thenReturn(clientMock);
+        poolMock = mock(JedisPool.class);
+        when(poolMock.getResource()).thenReturn(jedisMock);
+
+        commandCoalescer = new RedisCommandCoalescer(poolMock, 10, 0L);
+        commandCoalescer.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        commandCoalescer.stop();
+    }
+
+    @Test
+    public void actionResultIsBuiltFromItsReplies() throws Exception
+    {
+        when(clientMock.getOne()).thenReturn(1L, 2L);
+
+        assertEquals(Long.valueOf(3L), commandCoalescer.run(new SumAction(2)));
+        verify(clientMock, never()).getAll();
+    }
+
+    @Test
+    public void actionFailureIsThrownToTheCaller() throws Exception
+    {
+        when(clientMock.getOne()).thenThrow(new JedisDataException("ERR"));
+
+        try
+        {
+            commandCoalescer.run(new SumAction(1));
+            fail();
+        }
+        catch (final JedisDataException jde)
+        {
+            // OK
+        }
+    }
+
+    @Test
+    public void actionFailingToQueueDiscardsTheConnection() throws Exception
+    {
+        try
+        {
+            commandCoalescer.run(new SumAction(-1));
+            fail();
+        }
+        catch (final IllegalStateException ise)
+        {
+            // OK
+        }
+
+        verify(clientMock, never()).getOne();
+        verify(poolMock, timeout(1000)).returnBrokenResource(jedisMock);
+    }
+
+    private static class SumAction extends QueueableRedisAction<Long>
+    {
+        private final int commands;
+
+        SumAction(final int commands)
+        {
+            this.commands = commands;
+        }
+
+        @Override
+        public int queue(final BinaryClient client)
+        {
+            if (commands < 0)
+            {
+                throw new IllegalStateException("Failed to send");
+            }
+            return commands;
+        }
+
+        @Override
+        public Long fromReplies(final List<Object> replies)
+        {
+            long sum = 0L;
+            for (final Object reply : replies)
+            {
+                sum += RedisUtils.toIntegerReply(reply);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RedisCompressorTest
+{
+    private final RedisCompressor compressor = new RedisCompressor(1024, 1);
+
+    @Test
+    public void largeValuesAreCompressed()
+    {
+        final StringBuilder json = new StringBuilder();
+        for (int i = 0; json.length() < 10000; i++)
+        {
+            json.append("{\"id\":").append(i).append(",\"name\":\"item\",\"tags\":[\"a\",\"b\"]},");
+        }
+        final byte[] value = RedisUtils.toBytes(json.toString(), "UTF-8");
+
+        final byte[] compressed = compressor.compress(value);
+
+        assertTrue(RedisCompressor.isCompressed(compressed));
+        assertTrue(compressed.length < value.length / 4);
+        assertArrayEquals(value, compressor.decompress(compressed));
+        assertEquals(1L, compressor.getCompressedValues());
+        assertTrue(compressor.getCompressionRatio() > 4.0d);
+    }
+
+    @Test
+    public void smallValuesAreNotCompressed()
+    {
+        final byte[] value = new byte[1023];
+        assertSame(value, compressor.compress(value));
+    }
+
+    @Test
+    public void incompressibleValuesAreNotCompressed()
+    {
+        final byte[] value = new byte[4096];
+        new Random(42L).nextBytes(value);
+
+        assertSame(value, compressor.compress(value));
+        assertEquals(1L, compressor.getIncompressibleValues());
+    }
+
+    @Test
+    public void uncompressedValuesAreReadAsIs()
+    {
+        final byte[] value = RedisUtils.toBytes("plain", "UTF-8");
+
+        assertFalse(RedisCompressor.isCompressed(value));
+        assertSame(value, new RedisCompressor(0, 1).decompress(value));
+    }
+
+    @Test
+    public void rawValuesStartingWithTheHeaderAreReadAsIs()
+    {
+        final byte[] value = new byte[64];
+        new Random(42L).nextBytes(value);
+        value[0] = (byte) 0xFF;
+        value[1] = 0x00;
+        value[2] = 'R';
+        value[3] = 'Z';
+
+        assertFalse(RedisCompressor.isCompressed(value));
+        assertSame(value, compressor.decompress(value));
+    }
+
+    @Test
+    public void compressedStreamsAreDecompressed() throws Exception
+    {
+        final byte[] value = new byte[8192];
+        final byte[] compressed = compressor.compress(value);
+
+        assertArrayEquals(value, RedisUtils.toBytes(
+            RedisCompressor.decompress(new ByteArrayInputStream(compressed)), "UTF-8"));
+    }
+
+    @Test
+    public void uncompressedStreamsAreRejected() throws Exception
+    {
+        try
+        {
+            RedisCompressor.decompress(new ByteArrayInputStream(RedisUtils.toBytes("plain value", "UTF-8")));
+            fail("should have got an IOException");
+        }
+        catch (final IOException ioe)
+        {
+            // expected
+        }
+    }
+}
@@ -10,24 +10,35 @@ package org.mule.module.redis;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.apache.commons.lang.RandomStringUtils;
 import org.junit.Test;
+import org.mule.api.MuleEvent;
 import org.mule.api.MuleMessage;
 import org.mule.api.MuleMessageCollection;
+import org.mule.api.NestedProcessor;
 import org.mule.module.client.MuleClient;
 import org.mule.tck.junit4.FunctionalTestCase;
 import org.mule.transport.NullPayload;
 import org.mule.util.MapUtils;
 import org.mule.util.UUID;
 
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
 public class RedisDataStructureITCase extends FunctionalTestCase
 {
     private static final String SIDE_PROP = "side";
@@ -94,6 +105,81 @@ public class RedisDataStructureITCase extends FunctionalTestCase
                 Collections.singletonMap(KEY_PROP, testKey + ".value")).getPayloadAsString());
     }
 
+    @Test
+    public void testBinaryStrings() throws Exception
+    {
+        final String testKey = TEST_KEY_PREFIX + UUID.getUUID();
+        final Random random = new Random();
+
+        // not valid UTF-8, would be altered if converted to a string
+        final byte[] smallValue = new byte[256];
+        random.nextBytes(smallValue);
+
+        assertTrue(Arrays.equals(smallValue,
+            muleClient.send("vm://binary-writer.in", smallValue, Collections.singletonMap(KEY_PROP, testKey))
+                .getPayload(byte[].class)));
+        assertTrue(Arrays.equals(smallValue,
+            muleClient.send("vm://strings-reader.in", "ignored", Collections.singletonMap(KEY_PROP, testKey))
+                .getPayload(byte[].class)));
+
+        // larger than a chunk: streamed with SET and APPEND
+        final byte[] largeValue = new byte[200000];
+        random.nextBytes(largeValue);
+
+        // the consumed stream is returned, rather than a value read back from Redis
+        assertTrue(muleClient.send("vm://binary-writer.in", new ByteArrayInputStream(largeValue),
+            Collections.singletonMap(KEY_PROP, testKey)).getPayload() instanceof ByteArrayInputStream);
+        assertTrue(Arrays.equals(largeValue,
+            muleClient.send("vm://strings-reader.in", "ignored", Collections.singletonMap(KEY_PROP, testKey))
+                .getPayload(byte[].class)));
+
+        // read back by ranges, over several round trips
+        assertTrue(Arrays.equals(largeValue,
+            muleClient.send("vm://stream-reader.in", "ignored", Collections.singletonMap(KEY_PROP, testKey))
+                .getPayload(byte[].class)));
+        assertEquals(
+            NullPayload.getInstance(),
+            muleClient.send("vm://stream-reader.in", "ignored",
+                Collections.singletonMap(KEY_PROP, testKey + ".missing")).getPayload());
+    }
+
+    @Test
+    public void testMultiStrings() throws Exception
+    {
+        final String testKey = TEST_KEY_PREFIX + UUID.getUUID();
+
+        final Map<String, String> values = new LinkedHashMap<String, String>();
+        for (int i = 0; i < 5; i++)
+        {
+            values.put(testKey + "." + i, RandomStringUtils.randomAlphanumeric(20));
+        }
+
+        muleClient.send("vm://multi-strings-writer.in", values, null);
+
+        final List<String> keys = new ArrayList<String>(values.keySet());
+        keys.add(2, testKey + ".missing");
+
+        final List<?> results = muleClient.send("vm://multi-strings-reader.in", keys, null).getPayload(
+            List.class);
+
+        assertEquals(keys.size(), results.size());
+        for (int i = 0; i < keys.size(); i++)
+        {
+            final byte[] result = (byte[]) results.get(i);
+            assertEquals(values.get(keys.get(i)), result == null ? null : new String(result));
+        }
+
+        // binary values are written as-is
+        final byte[] binaryValue = new byte[256];
+        new Random().nextBytes(binaryValue);
+        muleClient.send("vm://multi-strings-writer.in",
+            Collections.<String, Object> singletonMap(testKey + ".binary", binaryValue), null);
+
+        final List<?> binaryResults = muleClient.send("vm://multi-strings-reader.in",
+            Collections.singletonList(testKey + ".binary"), null).getPayload(List.class);
+        assertTrue(Arrays.equals(binaryValue, (byte[]) binaryResults.get(0)));
+    }
+
     @Test
     public void testIncrementDecrement() throws Exception
     {
@@ -259,4 +345,96 @@ public class RedisDataStructureITCase extends FunctionalTestCase
             assertEquals(expectedResults[i], keyVolatilityResults.getMessage(i).getPayload());
         }
     }
+
+    @Test
+    public void testPipeline() throws Exception
+    {
+        final String testPayload = RandomStringUtils.randomAlphanumeric(20);
+        final String testKey = TEST_KEY_PREFIX + UUID.getUUID();
+        final String testField = UUID.getUUID();
+
+        final Map<String, String> props = new HashMap<String, String>();
+        props.put(KEY_PROP, testKey);
+        props.put(FIELD_PROP, testField);
+
+        final List<?> results = muleClient.send("vm://pipeline.in", testPayload, props).getPayload(
+            List.class);
+
+        assertEquals(5, results.size());
+        assertEquals(testPayload, new String((byte[]) results.get(0)));
+        assertNull(results.get(1));
+        assertEquals(1L, results.get(2));
+        assertEquals(testPayload, new String((byte[]) results.get(3)));
+        assertEquals(testPayload, new String((byte[]) results.get(4)));
+
+        assertEquals(testPayload, muleClient.send("vm://hashes-reader.in", "ignored", props)
+            .getPayloadAsString());
+    }
+
+    @Test
+    public void testPipelineFailsOnMasterSwitch() throws Exception
+    {
+        final RedisModule redisModule = muleContext.getRegistry().lookupObject(RedisModule.class);
+        final String testKey = TEST_KEY_PREFIX + UUID.getUUID();
+        final MuleEvent testEvent = getTestEvent("ignored");
+
+        final List<NestedProcessor> operations = Arrays.<NestedProcessor> asList(new TestOperation()
+        {
+            @Override
+            public Object process() throws Exception
+            {
+                return redisModule.set(testKey, null, false, "before", testEvent);
+            }
+        }, new TestOperation()
+        {
+            @Override
+            public Object process() throws Exception
+            {
+                // what a failover reported by the sentinels does, here to the same server
+                redisModule.switchMaster(redisModule.getHost() + ":" + redisModule.getPort());
+                return null;
+            }
+        }, new TestOperation()
+        {
+            @Override
+            public Object process() throws Exception
+            {
+                return redisModule.set(testKey + ".after", null, false, "after", testEvent);
+            }
+        });
+
+        try
+        {
+            redisModule.pipeline(operations);
+            fail("The pipeline should have failed");
+        }
+        catch (final JedisConnectionException jce)
+        {
+            // expected
+        }
+
+        // nothing escaped the pipeline to run on the new master
+        assertNull(redisModule.get(testKey + ".after"));
+    }
+
+    private abstract static class TestOperation implements NestedProcessor
+    {
+        @Override
+        public Object process(final Object payload) throws Exception
+        {
+            return process();
+        }
+
+        @Override
+        public Object process(final Object payload, final Map<String, Object> properties) throws Exception
+        {
+            return process();
+        }
+
+        @Override
+        public Object processWithExtraProperties(final Map<String, Object> properties) throws Exception
+        {
+            return process();
+        }
+    }
 }
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.mule.module.redis.RedisModule.LocalCacheEviction;
+
+public class RedisLocalCacheTest
+{
+    @Test
+    public void hitsAndMissesAreCounted()
+    {
+        final RedisLocalCache<String, String> cache = new RedisLocalCache<String, String>(10, 0L,
+            LocalCacheEviction.LRU);
+
+        assertNull(cache.get("k1"));
+        cache.put("k1", "v1", cache.startRead("k1"));
+        assertEquals("v1", cache.get("k1"));
+
+        assertEquals(1L, cache.getHits());
+        assertEquals(1L, cache.getMisses());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted()
+    {
+        final RedisLocalCache<String, String> cache = new RedisLocalCache<String, String>(2, 0L,
+            LocalCacheEviction.LRU);
+
+        cache.put("k1", "v1", cache.startRead("k1"));
+        cache.put("k2", "v2", cache.startRead("k2"));
+        cache.get("k1");
+        cache.put("k3", "v3", cache.startRead("k3"));
+
+        assertEquals("v1", cache.get("k1"));
+        assertNull(cache.get("k2"));
+        assertEquals("v3", cache.get("k3"));
+        assertEquals(1L, cache.getEvictions());
+    }
+
+    @Test
+    public void leastFrequentlyUsedIsEvicted()
+    {
+        final RedisLocalCache<String, String> cache = new RedisLocalCache<String, String>(2, 0L,
+            LocalCacheEviction.LFU);
+
+        cache.put("k1", "v1", cache.startRead("k1"));
+        cache.put("k2", "v2", cache.startRead("k2"));
+        cache.get("k1");
+        cache.get("k1");
+        cache.get("k2");
+        cache.put("k3", "v3", cache.startRead("k3"));
+
+        assertEquals("v1", cache.get("k1"));
+        assertNull(cache.get("k2"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void expiredValuesAreNotServed() throws Exception
+    {
+        final RedisLocalCache<String, String> cache = new RedisLocalCache<String, String>(10, 1L,
+            LocalCacheEviction.LRU);
+
+        cache.put("k1", "v1", cache.startRead("k1"));
+        Thread.sleep(10L);
+
+        assertNull(cache.get("k1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void valuesReadBeforeAnInvalidationAreNotCached()
+    {
+        final RedisLocalCache<String, String> cache = new RedisLocalCache<String, String>(10, 0L,
+            LocalCacheEviction.LRU);
+
+        final Object readToken = cache.startRead("k1");
+        cache.invalidate("k1");
+        cache.put("k1", "stale", readToken);
+
+        assertNull(cache.get("k1"));
+    }
+
+    @Test
+    public void invalidationsOfOtherKeysDontPreventCaching()
+    {
+        final RedisLocalCache<String, String> cache = new RedisLocalCache<String, String>(10, 0L,
+            LocalCacheEviction.LRU);
+
+        final Object readToken = cache.startRead("k1");
+        cache.invalidate("k2");
+        cache.put("k1", "v1", readToken);
+
+        assertEquals("v1", cache.get("k1"));
+    }
+
+    @Test
+    public void valuesReadAfterAnInvalidationAreCached()
+    {
+        final RedisLocalCache<String, String> cache = new RedisLocalCache<String, String>(10, 0L,
+            LocalCacheEviction.LRU);
+
+        final Object staleReadToken = cache.startRead("k1");
+        cache.invalidate("k1");
+        final Object readToken = cache.startRead("k1");
+        cache.put("k1", "stale", staleReadToken);
+        cache.put("k1", "v1", readToken);
+
+        assertEquals("v1", cache.get("k1"));
+    }
+}
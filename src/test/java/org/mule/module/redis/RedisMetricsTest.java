@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class RedisMetricsTest
+{
+    @Test
+    public void percentilesAreBoundedByBuckets()
+    {
+        final RedisLatencyHistogram histogram = new RedisLatencyHistogram();
+        for (long micros = 1L; micros <= 1000L; micros++)
+        {
+            histogram.record(micros);
+        }
+
+        assertEquals(1000L, histogram.getCount());
+        assertEquals(1000L, histogram.getMax());
+        assertEquals(500L, histogram.getMean());
+
+        final long p50 = histogram.getPercentile(50.0d);
+        assertTrue("p50: " + p50, (p50 >= 500L) && (p50 <= 500L * 9 / 8));
+        final long p99 = histogram.getPercentile(99.0d);
+        assertTrue("p99: " + p99, (p99 >= 990L) && (p99 <= 1000L));
+        assertEquals(1000L, histogram.getPercentile(100.0d));
+    }
+
+    @Test
+    public void bucketsCoverAllValues()
+    {
+        for (long value = 0L; value < 100000L; value++)
+        {
+            final int bucket = RedisLatencyHistogram.getBucket(value);
+            assertTrue(RedisLatencyHistogram.getBucketUpperBound(bucket) >= value);
+            assertTrue((bucket == 0) || (RedisLatencyHistogram.getBucketUpperBound(bucket - 1) < value));
+        }
+
+        RedisLatencyHistogram.getBucket(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void commandMetricsArePublished() throws Exception
+    {
+        final MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        final RedisMetrics metrics = new RedisMetrics("test", mBeanServer);
+        final ObjectName getMetricsName = new ObjectName(RedisMetrics.JMX_DOMAIN
+                                                         + ":type=Command,config=\"test\",command=\"get\"");
+
+        metrics.register();
+        assertTrue(mBeanServer.isRegistered(new ObjectName(RedisMetrics.JMX_DOMAIN
+                                                           + ":type=Pool,config=\"test\"")));
+
+        metrics.record("get", System.nanoTime(), false);
+        metrics.record("get", System.nanoTime(), true);
+        metrics.record(null, System.nanoTime(), false);
+
+        assertEquals(Long.valueOf(2L), mBeanServer.getAttribute(getMetricsName, "Count"));
+        assertEquals(Long.valueOf(1L), mBeanServer.getAttribute(getMetricsName, "Errors"));
+
+        metrics.unregister();
+        assertFalse(mBeanServer.isRegistered(getMetricsName));
+    }
+}
@@ -13,8 +13,13 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -24,10 +29,13 @@ import org.mule.api.store.ObjectAlreadyExistsException;
 import org.mule.api.store.ObjectDoesNotExistException;
 import org.mule.api.store.ObjectStoreException;
 import org.mule.api.store.PartitionableObjectStore;
+import org.mule.module.redis.RedisBloomFilters.Presence;
 import org.mule.tck.functional.CountdownCallback;
 import org.mule.tck.functional.FunctionalTestComponent;
 import org.mule.tck.junit4.FunctionalTestCase;
 
+import redis.clients.jedis.Jedis;
+
 public class RedisObjectStoreITCase extends FunctionalTestCase
 {
     private PartitionableObjectStore<String> stringObjectStore;
@@ -168,6 +176,284 @@ public class RedisObjectStoreITCase extends FunctionalTestCase
         assertFalse(stringObjectStore.allPartitions().contains(testPartition));
     }
 
+    @Test
+    public void testKeysPaging() throws ObjectStoreException
+    {
+        final RedisModule redisModule = (RedisModule) stringObjectStore;
+        final String testPartition = "paging." + RandomStringUtils.randomAlphanumeric(20);
+
+        // large enough for Redis to use a real hash table, walked in several HSCAN steps
+        final Set<String> testKeys = new HashSet<String>();
+        for (int i = 0; i < 250; i++)
+        {
+            final String testKey = RandomStringUtils.randomAlphanumeric(20);
+            testKeys.add(testKey);
+            stringObjectStore.store(testKey, "value", testPartition);
+        }
+
+        final Set<Serializable> iteratedKeys = new HashSet<Serializable>();
+        for (final Serializable key : redisModule.iterateKeys(testPartition))
+        {
+            iteratedKeys.add(key);
+        }
+        assertEquals(testKeys, iteratedKeys);
+
+        final Set<Serializable> pagedKeys = new HashSet<Serializable>();
+        for (int offset = 0; offset < testKeys.size(); offset += 100)
+        {
+            pagedKeys.addAll(redisModule.allKeys(testPartition, offset, 100));
+        }
+        assertEquals(testKeys, pagedKeys);
+        assertEquals(50, redisModule.allKeys(testPartition, 200, 100).size());
+        assertEquals(testKeys, new HashSet<Serializable>(stringObjectStore.allKeys(testPartition)));
+
+        stringObjectStore.disposePartition(testPartition);
+        assertFalse(redisModule.iterateKeys(testPartition).iterator().hasNext());
+    }
+
+    @Test
+    public void testBulkOperations() throws ObjectStoreException
+    {
+        final RedisModule redisModule = muleContext.getRegistry().lookupObject("expiringRedisObjectStore");
+        final String testPartition = "bulk." + RandomStringUtils.randomAlphanumeric(20);
+        final int chunkSize = redisModule.getObjectStoreBulkChunkSize();
+
+        // several chunks per operation
+        redisModule.setObjectStoreBulkChunkSize(2);
+
+        try
+        {
+            redisModule.store("k1", "existing", testPartition);
+
+            final Map<Serializable, Serializable> entries = new LinkedHashMap<Serializable, Serializable>();
+            entries.put("k1", "v1");
+            entries.put("k2", "v2");
+            entries.put("k3", "v3");
+            entries.put("k4", "v4");
+            entries.put("k5", "v5");
+
+            final Map<Serializable, Boolean> stored = redisModule.storeAll(entries, testPartition);
+            assertEquals(Arrays.<Serializable> asList("k1", "k2", "k3", "k4", "k5"),
+                new ArrayList<Serializable>(stored.keySet()));
+            assertFalse(stored.get("k1"));
+            assertTrue(stored.get("k2"));
+            assertTrue(stored.get("k5"));
+
+            final List<String> testKeys = Arrays.asList("k1", "k2", "k3", "k4", "k5", "k6");
+
+            final Map<Serializable, Serializable> retrieved = redisModule.retrieveAll(testKeys, testPartition);
+            assertEquals(5, retrieved.size());
+            assertEquals("existing", retrieved.get("k1"));
+            assertEquals("v4", retrieved.get("k4"));
+            assertFalse(retrieved.containsKey("k6"));
+
+            final Map<Serializable, Boolean> contained = redisModule.containsAll(testKeys, testPartition);
+            assertEquals(6, contained.size());
+            assertTrue(contained.get("k3"));
+            assertFalse(contained.get("k6"));
+
+            final Map<Serializable, Serializable> removed = redisModule.removeAll(
+                Arrays.asList("k2", "k3", "k6"), testPartition);
+            assertEquals(2, removed.size());
+            assertEquals("v2", removed.get("k2"));
+            assertEquals("v3", removed.get("k3"));
+
+            assertEquals(new HashSet<Serializable>(Arrays.asList("k1", "k4", "k5")), new HashSet<Serializable>(
+                redisModule.allKeys(testPartition)));
+
+            // removed entries leave the expiry index too
+            redisModule.expire(0, 3, testPartition);
+            assertEquals(3, redisModule.allKeys(testPartition).size());
+        }
+        finally
+        {
+            redisModule.setObjectStoreBulkChunkSize(chunkSize);
+            redisModule.disposePartition(testPartition);
+        }
+    }
+
+    @Test
+    public void testExpiry() throws Exception
+    {
+        final RedisModule redisModule = muleContext.getRegistry().lookupObject("expiringRedisObjectStore");
+        final String testPartition = "expiry." + RandomStringUtils.randomAlphanumeric(20);
+
+        for (int i = 0; i < 10; i++)
+        {
+            redisModule.store(RandomStringUtils.randomAlphanumeric(20), "value", testPartition);
+        }
+
+        // neither too old nor too many
+        redisModule.expire(60000, 10, testPartition);
+        assertEquals(10, redisModule.allKeys(testPartition).size());
+
+        redisModule.expire(0, 4, testPartition);
+        final List<Serializable> remainingKeys = redisModule.allKeys(testPartition);
+        assertEquals(4, remainingKeys.size());
+
+        final String testKey = (String) remainingKeys.get(0);
+        redisModule.remove(testKey, testPartition);
+        Thread.sleep(200L);
+        redisModule.store(testKey, "value", testPartition);
+
+        redisModule.expire(100, 0, testPartition);
+        assertEquals(Arrays.<Serializable> asList(testKey), redisModule.allKeys(testPartition));
+
+        redisModule.disposePartition(testPartition);
+    }
+
+    @Test
+    public void testNoExpiryIndexWithoutExpiry() throws Exception
+    {
+        final RedisModule redisModule = (RedisModule) stringObjectStore;
+        final String testPartition = "unindexed." + RandomStringUtils.randomAlphanumeric(20);
+
+        stringObjectStore.store("k1", "v1", testPartition);
+        assertEquals("v1", stringObjectStore.retrieve("k1", testPartition));
+
+        final Map<Serializable, Serializable> entries = new LinkedHashMap<Serializable, Serializable>();
+        entries.put("k1", "other");
+        entries.put("k2", "v2");
+        final Map<Serializable, Boolean> stored = redisModule.storeAll(entries, testPartition);
+        assertFalse(stored.get("k1"));
+        assertTrue(stored.get("k2"));
+        assertEquals("v1", stringObjectStore.retrieve("k1", testPartition));
+        assertEquals("v2", stringObjectStore.retrieve("k2", testPartition));
+
+        final Jedis jedis = redisModule.getJedisPool().getResource();
+        try
+        {
+            assertFalse(jedis.exists(RedisConstants.OBJECTSTORE_INDEX_KEY_PREFIX + testPartition));
+        }
+        finally
+        {
+            redisModule.getJedisPool().returnResource(jedis);
+            stringObjectStore.disposePartition(testPartition);
+        }
+    }
+
+    @Test
+    public void testBloomFilter() throws Exception
+    {
+        final RedisModule redisModule = muleContext.getRegistry().lookupObject("bloomFilteredRedisObjectStore");
+        final RedisBloomFilters bloomFilters = redisModule.getObjectStoreBloomFilters();
+        final String testPartition = "bloom." + RandomStringUtils.randomAlphanumeric(20);
+
+        // stored by another Mule instance before the filter is built
+        stringObjectStore.store("existing", "value", testPartition);
+        assertFalse(redisModule.contains("new", testPartition));
+
+        while (bloomFilters.check(testPartition, RedisUtils.toBytes("probe")) == Presence.UNKNOWN)
+        {
+            Thread.sleep(10L);
+        }
+
+        final long absentKeys = bloomFilters.getAbsentKeys();
+        assertFalse(redisModule.contains("new", testPartition));
+        assertEquals(absentKeys + 1L, bloomFilters.getAbsentKeys());
+        assertTrue(redisModule.contains("existing", testPartition));
+
+        // bulk checks skip Redis for the keys known to be absent too
+        final Map<Serializable, Boolean> contained = redisModule.containsAll(
+            Arrays.asList("existing", "new", "other"), testPartition);
+        assertTrue(contained.get("existing"));
+        assertFalse(contained.get("new"));
+        assertFalse(contained.get("other"));
+        assertEquals(absentKeys + 3L, bloomFilters.getAbsentKeys());
+
+        // stored keys are added to the filter right away
+        redisModule.store("new", "value", testPartition);
+        assertTrue(redisModule.contains("new", testPartition));
+
+        redisModule.disposePartition(testPartition);
+        assertFalse(redisModule.contains("new", testPartition));
+    }
+
+    @Test
+    public void testBuckets() throws Exception
+    {
+        final RedisModule redisModule = muleContext.getRegistry().lookupObject("bucketedRedisObjectStore");
+        final String testPartition = "buckets." + RandomStringUtils.randomAlphanumeric(20);
+
+        final Map<Serializable, Serializable> entries = new LinkedHashMap<Serializable, Serializable>();
+        for (int i = 0; i < 40; i++)
+        {
+            entries.put("key-" + i, "value-" + i);
+        }
+        redisModule.storeAll(entries, testPartition);
+        redisModule.store("single", "value", testPartition);
+
+        assertTrue(redisModule.contains("key-7", testPartition));
+        assertEquals("value-7", redisModule.retrieve("key-7", testPartition));
+        assertEquals(entries, redisModule.retrieveAll(entries.keySet(), testPartition));
+        assertEquals("value", redisModule.remove("single", testPartition));
+
+        // the entries are spread over the buckets, each bucket listed once
+        assertEquals(entries.keySet(), new HashSet<Serializable>(redisModule.allKeys(testPartition)));
+        assertEquals(40, redisModule.allKeys(testPartition).size());
+
+        final Set<Serializable> iteratedKeys = new HashSet<Serializable>();
+        for (final Serializable key : redisModule.iterateKeys(testPartition))
+        {
+            iteratedKeys.add(key);
+        }
+        assertEquals(entries.keySet(), iteratedKeys);
+
+        final List<String> partitions = redisModule.allPartitions();
+        assertEquals(partitions.indexOf(testPartition), partitions.lastIndexOf(testPartition));
+        assertTrue(partitions.contains(testPartition));
+
+        // the limit is shared by the buckets
+        redisModule.expire(0, 16, testPartition);
+        assertTrue(redisModule.allKeys(testPartition).size() <= 16 + 8);
+
+        redisModule.disposePartition(testPartition);
+        assertTrue(redisModule.allKeys(testPartition).isEmpty());
+        assertFalse(redisModule.allPartitions().contains(testPartition));
+    }
+
+    @Test
+    public void testShardedNearCache() throws Exception
+    {
+        final RedisModule writer = muleContext.getRegistry().lookupObject("shardedNearCachedRedis");
+        final RedisModule reader = muleContext.getRegistry().lookupObject("reverseShardedNearCachedRedis");
+
+        // invalidations are published on the node of their key, so each node is listened to
+        final Set<String> threadNames = new HashSet<String>();
+        for (final Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            threadNames.add(thread.getName());
+        }
+        assertTrue(threadNames.containsAll(Arrays.asList("redis-near-cache-invalidator-0",
+            "redis-near-cache-invalidator-1")));
+
+        final List<String> testKeys = new ArrayList<String>();
+        for (int i = 0; i < 10; i++)
+        {
+            final String testKey = "mule.tests.sharded." + RandomStringUtils.randomAlphanumeric(20);
+            testKeys.add(testKey);
+            writer.set(testKey, null, false, "v1", getTestEvent(""));
+            assertEquals("v1", new String(reader.get(testKey)));
+        }
+
+        for (final String testKey : testKeys)
+        {
+            writer.set(testKey, null, false, "v2", getTestEvent(""));
+        }
+
+        for (final String testKey : testKeys)
+        {
+            for (int attempt = 0; !"v2".equals(new String(reader.get(testKey))); attempt++)
+            {
+                if (attempt == 100)
+                {
+                    fail("Near cache not invalidated for: " + testKey);
+                }
+                Thread.sleep(10L);
+            }
+        }
+    }
+
     @Test
     public void testIdempotentFlow() throws Exception
     {
@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.mule.api.callback.SourceCallback;
+
+import redis.clients.util.SafeEncoder;
+
+@SuppressWarnings("unchecked")
+public class RedisPubSubBatcherTest
+{
+    private static final String FLUSHER_THREAD_NAME = "test-flusher";
+
+    private SourceCallback sourceCallbackMock;
+    private ScheduledExecutorService flusher;
+
+    @Before
+    public void setup()
+    {
+        sourceCallbackMock = mock(SourceCallback.class);
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(final Runnable runnable)
+            {
+                return new Thread(runnable, FLUSHER_THREAD_NAME);
+            }
+        });
+    }
+
+    @After
+    public void teardown()
+    {
+        flusher.shutdownNow();
+    }
+
+    @Test
+    public void fullBatchesAreDeliveredAtOnce() throws Exception
+    {
+        final RedisPubSubBatcher batcher = new RedisPubSubBatcher(sourceCallbackMock, 3, 60000L, null, flusher);
+
+        add(batcher, "Channel01", "m1");
+        add(batcher, "Channel02", "m2");
+        verify(sourceCallbackMock, never()).process(anyObject(), anyMap());
+
+        add(batcher, "Channel01", "m3");
+        final List<RedisPubSubMessage> batch = captureBatch(3);
+
+        assertEquals("m1", new String(batch.get(0).getPayload()));
+        assertEquals("Channel02", batch.get(1).getChannel());
+        assertEquals("m3", new String(batch.get(2).getPayload()));
+    }
+
+    @Test
+    public void incompleteBatchesAreDeliveredAfterLinger() throws Exception
+    {
+        final RedisPubSubBatcher batcher = new RedisPubSubBatcher(sourceCallbackMock, 100, 10L, null, flusher);
+
+        add(batcher, "Channel01", "m1");
+        add(batcher, "Channel01", "m2");
+
+        assertEquals(2, captureBatch(2).size());
+    }
+
+    @Test
+    public void pendingBatchesAreDeliveredWhenFlushed() throws Exception
+    {
+        final RedisPubSubBatcher batcher = new RedisPubSubBatcher(sourceCallbackMock, 100, 60000L, null, flusher);
+
+        add(batcher, "Channel01", "m1");
+        batcher.flushAll();
+
+        assertEquals("m1", new String(captureBatch(1).get(0).getPayload()));
+    }
+
+    @Test
+    public void batchesAreNotDeliveredByTheFlusher() throws Exception
+    {
+        final RedisPubSubBatcher batcher = new RedisPubSubBatcher(sourceCallbackMock, 100, 10L, null, flusher);
+        final AtomicReference<String> deliveryThreadName = new AtomicReference<String>();
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(final InvocationOnMock invocation)
+            {
+                deliveryThreadName.set(Thread.currentThread().getName());
+                return null;
+            }
+        }).when(sourceCallbackMock).process(anyObject(), anyMap());
+
+        add(batcher, "Channel01", "m1");
+
+        captureBatch(1);
+        assertFalse(FLUSHER_THREAD_NAME.equals(deliveryThreadName.get()));
+    }
+
+    @Test
+    public void slowDeliveriesDontBlockTheBatching() throws Exception
+    {
+        final RedisPubSubBatcher batcher = new RedisPubSubBatcher(sourceCallbackMock, 1, 60000L, null, flusher);
+        final CountDownLatch delivered = new CountDownLatch(1);
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws InterruptedException
+            {
+                delivered.await();
+                return null;
+            }
+        }).when(sourceCallbackMock).process(anyObject(), anyMap());
+
+        // the first batch is being delivered while the next ones are batched and queued
+        add(batcher, "Channel01", "m1");
+        add(batcher, "Channel01", "m2");
+        add(batcher, "Channel01", "m3");
+        delivered.countDown();
+
+        verify(sourceCallbackMock, timeout(5000L).times(3)).process(anyObject(), anyMap());
+        batcher.stop();
+    }
+
+    private static void add(final RedisPubSubBatcher batcher, final String channel, final String message)
+    {
+        batcher.add(SafeEncoder.encode(channel), new RedisPubSubMessage(SafeEncoder.encode(message),
+            Collections.<String, Object> singletonMap(RedisConstants.REDIS_PUBSUB_CHANNEL, channel)));
+    }
+
+    private List<RedisPubSubMessage> captureBatch(final int size) throws Exception
+    {
+        final ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        final Map<String, Object> properties = Collections.<String, Object> singletonMap(
+            RedisConstants.REDIS_PUBSUB_BATCH_SIZE, size);
+
+        // batches are delivered by another thread
+        verify(sourceCallbackMock, timeout(5000L)).process(payload.capture(), eq(properties));
+        return (List<RedisPubSubMessage>) payload.getValue();
+    }
+}
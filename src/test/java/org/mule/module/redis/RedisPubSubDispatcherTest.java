@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mule.module.redis.RedisModule.PubSubOverflow;
+
+import redis.clients.util.SafeEncoder;
+
+public class RedisPubSubDispatcherTest
+{
+    private static final byte[] CHANNEL = SafeEncoder.encode("news");
+
+    @Test
+    public void messagesOfAChannelAreDeliveredInOrder() throws Exception
+    {
+        final RedisPubSubDispatcher dispatcher = new RedisPubSubDispatcher(4, 100, PubSubOverflow.BLOCK);
+        dispatcher.start();
+
+        final List<List<Integer>> delivered = new ArrayList<List<Integer>>();
+        final CountDownLatch done = new CountDownLatch(3 * 1000);
+
+        try
+        {
+            for (int c = 0; c < 3; c++)
+            {
+                delivered.add(Collections.synchronizedList(new ArrayList<Integer>()));
+            }
+
+            for (int i = 0; i < 1000; i++)
+            {
+                for (int c = 0; c < 3; c++)
+                {
+                    dispatcher.dispatch(SafeEncoder.encode("channel" + c), newDelivery(delivered.get(c), i, done));
+                }
+            }
+
+            assertTrue(done.await(10L, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            dispatcher.stop();
+        }
+
+        for (final List<Integer> channelDelivered : delivered)
+        {
+            for (int i = 0; i < 1000; i++)
+            {
+                assertEquals(Integer.valueOf(i), channelDelivered.get(i));
+            }
+        }
+        assertEquals(3000L, dispatcher.getDispatched());
+        assertEquals(0L, dispatcher.getDropped());
+    }
+
+    @Test
+    public void newestMessageIsDroppedWhenQueueIsFull() throws Exception
+    {
+        final List<Integer> delivered = dispatchToStalledWorker(PubSubOverflow.DROP_NEWEST);
+
+        assertEquals(Arrays.asList(1, 2), delivered);
+    }
+
+    @Test
+    public void oldestMessageIsDroppedWhenQueueIsFull() throws Exception
+    {
+        final List<Integer> delivered = dispatchToStalledWorker(PubSubOverflow.DROP_OLDEST);
+
+        assertEquals(Arrays.asList(2, 3), delivered);
+    }
+
+    @Test
+    public void subscriptionIsBlockedWhenQueueIsFull() throws Exception
+    {
+        final List<Integer> delivered = dispatchToStalledWorker(PubSubOverflow.BLOCK);
+
+        assertEquals(Arrays.asList(1, 2, 3), delivered);
+    }
+
+    /**
+     * Dispatches 3 messages while the only worker, whose queue holds 2 messages, is stalled.
+     * 
+     * @return the messages that have been delivered once the worker has resumed.
+     */
+    private static List<Integer> dispatchToStalledWorker(final PubSubOverflow overflow) throws Exception
+    {
+        final RedisPubSubDispatcher dispatcher = new RedisPubSubDispatcher(1, 2, overflow);
+        dispatcher.start();
+
+        final List<Integer> delivered = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch stalled = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+
+        try
+        {
+            dispatcher.dispatch(CHANNEL, new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    stalled.countDown();
+                    try
+                    {
+                        resume.await();
+                    }
+                    catch (final InterruptedException ie)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            assertTrue(stalled.await(10L, TimeUnit.SECONDS));
+
+            final CountDownLatch done = new CountDownLatch(overflow == PubSubOverflow.BLOCK ? 3 : 2);
+            dispatcher.dispatch(CHANNEL, newDelivery(delivered, 1, done));
+            dispatcher.dispatch(CHANNEL, newDelivery(delivered, 2, done));
+            assertEquals(2, dispatcher.getQueueDepth());
+
+            final Thread subscriber = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    dispatcher.dispatch(CHANNEL, newDelivery(delivered, 3, done));
+                }
+            });
+            subscriber.start();
+            subscriber.join(100L);
+            assertEquals(overflow == PubSubOverflow.BLOCK, subscriber.isAlive());
+
+            resume.countDown();
+            subscriber.join(10000L);
+            assertTrue(done.await(10L, TimeUnit.SECONDS));
+
+            assertEquals(overflow == PubSubOverflow.BLOCK ? 0L : 1L, dispatcher.getDropped());
+            return new ArrayList<Integer>(delivered);
+        }
+        finally
+        {
+            resume.countDown();
+            dispatcher.stop();
+        }
+    }
+
+    private static Runnable newDelivery(final List<Integer> delivered, final int message, final CountDownLatch done)
+    {
+        return new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                delivered.add(message);
+                done.countDown();
+            }
+        };
+    }
+}
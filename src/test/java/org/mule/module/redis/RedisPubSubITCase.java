@@ -10,16 +10,20 @@ package org.mule.module.redis;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.RandomStringUtils;
 import org.junit.Test;
 import org.mule.api.MuleException;
+import org.mule.construct.Flow;
 import org.mule.module.client.MuleClient;
 import org.mule.tck.functional.CountdownCallback;
 import org.mule.tck.functional.FunctionalTestComponent;
 import org.mule.tck.junit4.FunctionalTestCase;
+import org.mule.util.UUID;
 
 public class RedisPubSubITCase extends FunctionalTestCase
 {
@@ -41,16 +45,88 @@ public class RedisPubSubITCase extends FunctionalTestCase
         testPubSub("mule.test.multi.channel.abc");
     }
 
-    private void testPubSub(final String targetChannel) throws MuleException, Exception, InterruptedException
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBatchedPubSub() throws Exception
     {
         final String testPayload1 = RandomStringUtils.randomAlphanumeric(20);
         final String testPayload2 = RandomStringUtils.randomAlphanumeric(20);
 
-        final Map<String, Object> props = new HashMap<String, Object>();
-        props.put("target-channel", targetChannel);
-        props.put("second-message-payload", testPayload2);
+        final CountdownCallback cc = new CountdownCallback(1);
+        final FunctionalTestComponent ftc = getFunctionalTestComponent("batchedSubscriber");
+        ftc.setEventCallback(cc);
 
-        new MuleClient(muleContext).dispatch("vm://publisher.in", testPayload1, props);
+        publish("mule.test.batched.channel", testPayload1, testPayload2);
+
+        cc.await(1000L * getTestTimeoutSecs());
+        final List<RedisPubSubMessage> batch = (List<RedisPubSubMessage>) ftc.getReceivedMessage(1);
+        assertEquals(2, batch.size());
+        assertEquals(testPayload1, new String(batch.get(0).getPayload()));
+        assertEquals(testPayload2, new String(batch.get(1).getPayload()));
+        assertEquals("mule.test.batched.channel", batch.get(1).getChannel());
+    }
+
+    @Test
+    public void testPoolReusableAfterStoppingSubscriber() throws Exception
+    {
+        final CountdownCallback cc = new CountdownCallback(1);
+        getFunctionalTestComponent("batchedSubscriber").setEventCallback(cc);
+
+        publish("mule.test.batched.channel", RandomStringUtils.randomAlphanumeric(20),
+            RandomStringUtils.randomAlphanumeric(20));
+        cc.await(1000L * getTestTimeoutSecs());
+
+        stopFlowAndUsePool("batchedSubscriber");
+    }
+
+    @Test
+    public void testPoolReusableAfterStoppingChannelAndPatternSubscriber() throws Exception
+    {
+        final CountdownCallback cc = new CountdownCallback(4);
+        getFunctionalTestComponent("subscriber").setEventCallback(cc);
+
+        // messages received through both SUBSCRIBE and PSUBSCRIBE
+        publish("mule.test.single.channel", RandomStringUtils.randomAlphanumeric(20),
+            RandomStringUtils.randomAlphanumeric(20));
+        publish("mule.test.multi.channel.abc", RandomStringUtils.randomAlphanumeric(20),
+            RandomStringUtils.randomAlphanumeric(20));
+        cc.await(1000L * getTestTimeoutSecs());
+
+        stopFlowAndUsePool("subscriber");
+    }
+
+    /**
+     * Stops the flow, which ends its subscription, then uses the pool the subscription connection
+     * was borrowed from until that connection is back in the pool, with single commands and with
+     * a pipeline, which read as many replies as Jedis believes pending.
+     */
+    private void stopFlowAndUsePool(final String flowName) throws Exception
+    {
+        ((Flow) muleContext.getRegistry().lookupFlowConstruct(flowName)).stop();
+
+        final MuleClient muleClient = new MuleClient(muleContext);
+        for (int i = 0; i < 20; i++)
+        {
+            final String testPayload = RandomStringUtils.randomAlphanumeric(20);
+            final String testKey = "mule.tests." + UUID.getUUID();
+
+            final List<?> results = muleClient.send("vm://poolUser.in", testPayload,
+                Collections.singletonMap("key", testKey)).getPayload(List.class);
+
+            assertEquals(3, results.size());
+            assertEquals(testPayload, new String((byte[]) results.get(1)));
+            assertEquals(testPayload, new String((byte[]) results.get(2)));
+
+            Thread.sleep(50L);
+        }
+    }
+
+    private void testPubSub(final String targetChannel) throws MuleException, Exception, InterruptedException
+    {
+        final String testPayload1 = RandomStringUtils.randomAlphanumeric(20);
+        final String testPayload2 = RandomStringUtils.randomAlphanumeric(20);
+
+        publish(targetChannel, testPayload1, testPayload2);
 
         final CountdownCallback cc = new CountdownCallback(2);
         final FunctionalTestComponent ftc = getFunctionalTestComponent("subscriber");
@@ -60,4 +136,14 @@ public class RedisPubSubITCase extends FunctionalTestCase
         assertEquals(testPayload1, new String((byte[]) ftc.getReceivedMessage(1)));
         assertEquals(testPayload2, new String((byte[]) ftc.getReceivedMessage(2)));
     }
+
+    private void publish(final String targetChannel, final String testPayload1, final String testPayload2)
+        throws MuleException
+    {
+        final Map<String, Object> props = new HashMap<String, Object>();
+        props.put("target-channel", targetChannel);
+        props.put("second-message-payload", testPayload2);
+
+        new MuleClient(muleContext).dispatch("vm://publisher.in", testPayload1, props);
+    }
 }
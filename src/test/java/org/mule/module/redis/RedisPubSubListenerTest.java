@@ -14,6 +14,10 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mule.api.callback.SourceCallback;
@@ -31,7 +35,8 @@ public class RedisPubSubListenerTest
     public void setup()
     {
         sourceCallbackMock = mock(SourceCallback.class);
-        redisPubSubListener = new RedisPubSubListener(sourceCallbackMock);
+        redisPubSubListener = new RedisPubSubListener(sourceCallbackMock, Arrays.asList("Channel01", "Pattern*"),
+            null, null);
     }
 
     @Test
@@ -45,9 +50,20 @@ public class RedisPubSubListenerTest
     @Test
     public void pMessagesAreProcessedByCallback() throws Exception
     {
-        redisPubSubListener.onPMessage("Pattern".getBytes(), "Channel01".getBytes(), "Hello World".getBytes());
+        redisPubSubListener.onPMessage("Pattern*".getBytes(), "Pattern01".getBytes(), "Hello World".getBytes());
 
         verify(sourceCallbackMock).process(eq("Hello World".getBytes()), anyMap());
     }
 
+    @Test
+    public void literalChannelMessagesHaveChannelAsPattern() throws Exception
+    {
+        redisPubSubListener.onMessage("Channel01".getBytes(), "Hello World".getBytes());
+
+        final Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(RedisConstants.REDIS_PUBSUB_CHANNEL, "Channel01");
+        properties.put(RedisConstants.REDIS_PUBSUB_PATTERN, "Channel01");
+        verify(sourceCallbackMock).process(eq("Hello World".getBytes()), eq(properties));
+    }
+
 }
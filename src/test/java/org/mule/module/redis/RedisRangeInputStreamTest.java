@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RedisRangeInputStreamTest
+{
+    private static class InMemoryRangeInputStream extends RedisRangeInputStream
+    {
+        private final int chunkSize;
+        private byte[] value;
+        private int fetches;
+
+        InMemoryRangeInputStream(final byte[] value, final int chunkSize, final int readAhead)
+        {
+            super(value.length, chunkSize, readAhead, Collections.<byte[]> emptyList());
+            this.value = value;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected List<byte[]> fetch(final long offset, final int count)
+        {
+            fetches++;
+
+            if (value.length != getLength())
+            {
+                return null;
+            }
+
+            final List<byte[]> chunks = new ArrayList<byte[]>(count);
+            for (int i = 0; i < count; i++)
+            {
+                final int start = (int) offset + i * chunkSize;
+                chunks.add(Arrays.copyOfRange(value, start, Math.min(start + chunkSize, value.length)));
+            }
+            return chunks;
+        }
+    }
+
+    @Test
+    public void valuesAreReadByChunks() throws Exception
+    {
+        final byte[] value = newValue(1000);
+        final InMemoryRangeInputStream stream = new InMemoryRangeInputStream(value, 64, 4);
+
+        assertArrayEquals(value, RedisUtils.toBytes(stream, "UTF-8"));
+        // 16 chunks, 4 per fetch
+        assertEquals(4, stream.fetches);
+    }
+
+    @Test
+    public void singleBytesAreRead() throws Exception
+    {
+        final byte[] value = newValue(100);
+        final InputStream stream = new InMemoryRangeInputStream(value, 16, 2);
+
+        for (final byte b : value)
+        {
+            assertEquals(b & 0xFF, stream.read());
+        }
+        assertEquals(-1, stream.read());
+    }
+
+    @Test
+    public void firstChunksAreNotFetchedAgain() throws Exception
+    {
+        final byte[] value = newValue(40);
+        final List<byte[]> firstChunks = Arrays.asList(Arrays.copyOfRange(value, 0, 16),
+            Arrays.copyOfRange(value, 16, 32));
+
+        final InputStream stream = new RedisRangeInputStream(value.length, 16, 2, firstChunks)
+        {
+            @Override
+            protected List<byte[]> fetch(final long offset, final int count)
+            {
+                assertEquals(32L, offset);
+                assertEquals(1, count);
+                return Collections.singletonList(Arrays.copyOfRange(value, 32, 40));
+            }
+        };
+
+        assertArrayEquals(value, RedisUtils.toBytes(stream, "UTF-8"));
+    }
+
+    @Test
+    public void modifiedValuesFailTheStream() throws Exception
+    {
+        final InMemoryRangeInputStream stream = new InMemoryRangeInputStream(newValue(100), 16, 2);
+        assertEquals(16, stream.read(new byte[32]));
+        assertEquals(16, stream.read(new byte[32]));
+
+        stream.value = newValue(50);
+        try
+        {
+            stream.read(new byte[32]);
+            fail("should have got an IOException");
+        }
+        catch (final IOException ioe)
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void closedStreamsCantBeRead() throws Exception
+    {
+        final InputStream stream = new InMemoryRangeInputStream(newValue(100), 16, 2);
+        stream.close();
+
+        try
+        {
+            stream.read();
+            fail("should have got an IOException");
+        }
+        catch (final IOException ioe)
+        {
+            // expected
+        }
+    }
+
+    private static byte[] newValue(final int length)
+    {
+        final byte[] value = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            value[i] = (byte) (i * 31);
+        }
+        return value;
+    }
+}
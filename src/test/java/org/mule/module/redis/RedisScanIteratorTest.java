@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import redis.clients.util.SafeEncoder;
+
+public class RedisScanIteratorTest
+{
+    /**
+     * Walks pages of a list, the cursor being the index of the next page.
+     */
+    private static class PagesIterator extends RedisScanIterator<String>
+    {
+        private final List<List<String>> pages;
+        private int fetches;
+
+        PagesIterator(final List<List<String>> pages)
+        {
+            this.pages = pages;
+        }
+
+        @Override
+        protected byte[] fetchPage(final byte[] cursor, final List<String> elements)
+        {
+            fetches++;
+            final int index = Integer.parseInt(SafeEncoder.encode(cursor));
+            elements.addAll(pages.get(index));
+            return SafeEncoder.encode(String.valueOf(index + 1 == pages.size() ? 0 : index + 1));
+        }
+    }
+
+    @Test
+    public void pagesAreFetchedLazily()
+    {
+        final List<String> firstPage = Arrays.asList("a", "b");
+        final List<String> emptyPage = Collections.emptyList();
+        final List<String> lastPage = Arrays.asList("c");
+        final PagesIterator iterator = new PagesIterator(Arrays.asList(firstPage, emptyPage, lastPage));
+
+        assertEquals("a", iterator.next());
+        assertEquals(1, iterator.fetches);
+        assertEquals("b", iterator.next());
+        assertEquals(1, iterator.fetches);
+
+        final List<String> remaining = new ArrayList<String>();
+        while (iterator.hasNext())
+        {
+            remaining.add(iterator.next());
+        }
+
+        assertEquals(Arrays.asList("c"), remaining);
+        assertEquals(3, iterator.fetches);
+    }
+
+    @Test
+    public void emptyWalksEndAfterOneFetch()
+    {
+        final List<String> emptyPage = Collections.emptyList();
+        final PagesIterator iterator = new PagesIterator(Collections.singletonList(emptyPage));
+
+        assertFalse(iterator.hasNext());
+        assertFalse(iterator.hasNext());
+        assertEquals(1, iterator.fetches);
+
+        try
+        {
+            iterator.next();
+            fail("should have got a NoSuchElementException");
+        }
+        catch (final NoSuchElementException nsee)
+        {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+/**
+ * Runs the pub/sub tests with subscriptions multiplexed on a shared connection.
+ */
+public class RedisSharedPubSubITCase extends RedisPubSubITCase
+{
+    @Override
+    protected String getConfigResources()
+    {
+        return "redis-shared-pubsub-tests-config.xml";
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mule.api.callback.SourceCallback;
+
+@SuppressWarnings("unchecked")
+public class RedisSubscriptionManagerTest
+{
+    private SourceCallback sourceCallbackMock1;
+    private SourceCallback sourceCallbackMock2;
+    private RedisPubSubListener listener1;
+    private RedisPubSubListener listener2;
+    private RedisSubscriptionManager subscriptionManager;
+
+    @Before
+    public void setup()
+    {
+        sourceCallbackMock1 = mock(SourceCallback.class);
+        sourceCallbackMock2 = mock(SourceCallback.class);
+        listener1 = new RedisPubSubListener(sourceCallbackMock1, Arrays.asList("Channel01", "Pattern*"), null,
+            null);
+        listener2 = new RedisPubSubListener(sourceCallbackMock2, Arrays.asList("Channel01", "Channel02"), null,
+            null);
+
+        subscriptionManager = new RedisSubscriptionManager();
+        subscriptionManager.add(listener1);
+        subscriptionManager.add(listener2);
+    }
+
+    @Test
+    public void channelsAndPatternsAreSharedByListeners() throws Exception
+    {
+        assertEquals(2, subscriptionManager.getChannels());
+        assertEquals(1, subscriptionManager.getPatterns());
+
+        subscriptionManager.remove(listener1);
+
+        assertEquals(2, subscriptionManager.getChannels());
+        assertEquals(0, subscriptionManager.getPatterns());
+
+        subscriptionManager.remove(listener2);
+
+        assertEquals(0, subscriptionManager.getChannels());
+    }
+
+    @Test
+    public void messagesAreRoutedToListenersOfChannel() throws Exception
+    {
+        subscriptionManager.onMessage("Channel01".getBytes(), "Hello World".getBytes());
+        subscriptionManager.onMessage("Channel02".getBytes(), "Hello Channel02".getBytes());
+
+        verify(sourceCallbackMock1).process(eq("Hello World".getBytes()), anyMap());
+        verify(sourceCallbackMock2).process(eq("Hello World".getBytes()), anyMap());
+        verify(sourceCallbackMock1, never()).process(eq("Hello Channel02".getBytes()), anyMap());
+        verify(sourceCallbackMock2).process(eq("Hello Channel02".getBytes()), anyMap());
+    }
+
+    @Test
+    public void pMessagesAreRoutedToListenersOfPattern() throws Exception
+    {
+        subscriptionManager.onPMessage("Pattern*".getBytes(), "Pattern01".getBytes(), "Hello World".getBytes());
+
+        verify(sourceCallbackMock1).process(eq("Hello World".getBytes()), anyMap());
+        verify(sourceCallbackMock2, never()).process(anyObject(), anyMap());
+    }
+
+    @Test
+    public void removedListenersDontReceiveMessages() throws Exception
+    {
+        subscriptionManager.remove(listener2);
+        subscriptionManager.onMessage("Channel01".getBytes(), "Hello World".getBytes());
+
+        verify(sourceCallbackMock1).process(eq("Hello World".getBytes()), anyMap());
+        verify(sourceCallbackMock2, never()).process(anyObject(), anyMap());
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) MuleSoft, Inc. All rights reserved. http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.md file.
+ */
+
+package org.mule.module.redis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class RedisTaggedSerializerTest
+{
+    private final RedisTaggedSerializer serializer = new RedisTaggedSerializer();
+
+    @Test
+    public void primitivesRoundTrip()
+    {
+        for (final Serializable value : Arrays.<Serializable> asList(Boolean.TRUE, (byte) -3, (short) -300,
+            'x', Integer.MIN_VALUE, Long.MAX_VALUE, -1L, 1.5f, Math.PI))
+        {
+            assertEquals(value, roundTrip(value));
+        }
+    }
+
+    @Test
+    public void bytesRoundTrip()
+    {
+        final byte[] value = {0, 1, (byte) 0xAC, (byte) 0x81};
+        assertArrayEquals(value, (byte[]) roundTrip(value));
+    }
+
+    @Test
+    public void collectionsRoundTrip()
+    {
+        final ArrayList<Object> list = new ArrayList<Object>(Arrays.<Object> asList("a", 1, null, 2L));
+        final HashSet<Object> set = new HashSet<Object>(Arrays.<Object> asList("b", 3));
+        final HashMap<Object, Object> map = new HashMap<Object, Object>();
+        map.put("list", list);
+        map.put("set", set);
+        map.put(4, "d");
+
+        assertEquals(map, roundTrip(map));
+    }
+
+    @Test
+    public void otherValuesUseTheCodec()
+    {
+        final Date value = new Date(1234567890L);
+        assertEquals(value, roundTrip(value));
+    }
+
+    @Test
+    public void stringsAreStoredAsIs()
+    {
+        assertArrayEquals(RedisUtils.toBytes("caf\u00e9"), serializer.serialize("caf\u00e9"));
+        assertEquals("caf\u00e9", roundTrip("caf\u00e9"));
+    }
+
+    @Test
+    public void javaSerializedValuesAreReadable()
+    {
+        final HashMap<String, Long> value = new HashMap<String, Long>();
+        value.put("counter", 42L);
+
+        assertEquals(value, serializer.deserialize(new RedisJavaSerializer().serialize(value)));
+        assertNull(serializer.deserialize(new byte[0]));
+    }
+
+    @Test
+    public void valuesAreSmallerThanWithJavaSerialization()
+    {
+        final ArrayList<Long> value = new ArrayList<Long>(Arrays.asList(1L, 2L, 3L));
+        assertTrue(serializer.serialize(value).length * 10 < RedisUtils.toBytes(value).length);
+    }
+
+    private Serializable roundTrip(final Serializable value)
+    {
+        final byte[] bytes = serializer.serialize(value);
+        return serializer.deserialize(bytes);
+    }
+}
@@ -8,26 +8,45 @@
 
 package org.mule.module.redis;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.pool.impl.GenericObjectPool.Config;
 import org.junit.Test;
 import org.junit.experimental.theories.DataPoints;
 import org.junit.experimental.theories.Theories;
 import org.junit.experimental.theories.Theory;
 import org.junit.runner.RunWith;
+import org.mule.module.redis.RedisUtils.QueueableRedisAction;
 import org.mule.module.redis.RedisUtils.RedisAction;
 
+import redis.clients.jedis.BinaryClient;
+import redis.clients.jedis.Client;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.util.SafeEncoder;
 
 /**
  * @author flbulgarelli
@@ -86,4 +105,296 @@ public class RedisUtilsTest
         verify(poolMock).returnBrokenResource(any(Jedis.class));
     }
 
+    @Test
+    public void runDiscardsConnectionsThatAreNotReusable() throws Exception
+    {
+        JedisPool poolMock = mock(JedisPool.class);
+        RedisUtils.run(poolMock, new RedisAction<String>()
+        {
+            @Override
+            public String run()
+            {
+                return "Hello";
+            }
+
+            @Override
+            public boolean isConnectionReusable()
+            {
+                return false;
+            }
+        });
+        verify(poolMock).getResource();
+        verify(poolMock).returnBrokenResource(any(Jedis.class));
+    }
+
+    @Test
+    public void queueableActionsReadOneReplyPerCommand() throws Exception
+    {
+        Client clientMock = mock(Client.class);
+        JedisPool poolMock = mockPool(clientMock);
+        when(clientMock.getOne()).thenReturn(1L, 2L);
+
+        assertEquals(Arrays.<Object> asList(1L, 2L), RedisUtils.run(poolMock, new RepliesAction(2, 2)));
+        verify(clientMock, times(2)).getOne();
+        verify(clientMock, never()).getAll();
+        verify(poolMock).returnResource(any(Jedis.class));
+    }
+
+    @Test
+    public void queueableActionsDiscardConnectionsOnUnexpectedReplies() throws Exception
+    {
+        Client clientMock = mock(Client.class);
+        JedisPool poolMock = mockPool(clientMock);
+        when(clientMock.getOne()).thenReturn(1L);
+
+        try
+        {
+            RedisUtils.run(poolMock, new RepliesAction(1, 2));
+            fail();
+        }
+        catch (JedisConnectionException jce)
+        {
+            //OK
+        }
+        verify(poolMock).returnBrokenResource(any(Jedis.class));
+    }
+
+    @Test
+    public void queueableActionsDiscardConnectionsWhenQueueingFails() throws Exception
+    {
+        Client clientMock = mock(Client.class);
+        JedisPool poolMock = mockPool(clientMock);
+
+        try
+        {
+            RedisUtils.run(poolMock, new RepliesAction(-1, 0));
+            fail();
+        }
+        catch (IllegalStateException ise)
+        {
+            //OK
+        }
+        verify(clientMock, never()).getOne();
+        verify(poolMock).returnBrokenResource(any(Jedis.class));
+    }
+
+    @Test
+    public void endpointsAreParsed()
+    {
+        assertEquals("replica1", RedisUtils.getHost("replica1:6380"));
+        assertEquals(6380, RedisUtils.getPort("replica1:6380"));
+        assertEquals("replica2", RedisUtils.getHost("replica2"));
+        assertEquals(6379, RedisUtils.getPort("replica2"));
+    }
+
+    @Test
+    public void scanFallsBackToKeysOnServersWithoutScan() throws Exception
+    {
+        Socket socketMock = mock(Socket.class);
+        when(socketMock.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(socketMock.getInputStream()).thenReturn(
+            new ByteArrayInputStream(SafeEncoder.encode("-ERR unknown command 'SCAN'\r\n")));
+        Client clientMock = mock(Client.class);
+        when(clientMock.isConnected()).thenReturn(true);
+        when(clientMock.getSocket()).thenReturn(socketMock);
+        when(clientMock.getHost()).thenReturn("redis-2.6");
+        when(clientMock.getPort()).thenReturn(6379);
+        Jedis jedisMock = mock(Jedis.class);
+        when(jedisMock.getClient()).thenReturn(clientMock);
+        byte[] pattern = SafeEncoder.encode("mule.objectstore.*");
+        byte[] key = SafeEncoder.encode("mule.objectstore.{ospn}");
+        when(jedisMock.keys(pattern)).thenReturn(Collections.singleton(key));
+
+        assertArrayEquals(key, RedisUtils.scan(jedisMock, pattern, 10).get(0));
+        // known from now on, SCAN isn't sent anymore
+        assertArrayEquals(key, RedisUtils.scan(jedisMock, pattern, 10).get(0));
+        verify(clientMock).getSocket();
+        verify(jedisMock, times(2)).keys(pattern);
+    }
+
+    @Test
+    public void slotsAreComputedWithHashTags()
+    {
+        assertEquals(12739, RedisUtils.getSlot("123456789".getBytes()));
+        assertEquals(RedisUtils.getSlot("user1000".getBytes()), RedisUtils.getSlot("{user1000}.following".getBytes()));
+        assertEquals(RedisUtils.getSlot("{}.following".getBytes()), RedisUtils.getSlot("{}.following".getBytes()));
+        assertEquals(RedisUtils.getSlot("partition".getBytes()),
+            RedisUtils.getSlot(RedisUtils.getPartitionHashKey("partition", true)));
+    }
+
+    @Test
+    public void partitionNamesAreExtractedFromHashKeys()
+    {
+        assertEquals("p1", RedisUtils.getPartitionName("mule.objectstore.p1", false));
+        assertEquals("p1", RedisUtils.getPartitionName("mule.objectstore.{p1}", true));
+        assertEquals("{p1}", RedisUtils.getPartitionName("mule.objectstore.{p1}", false));
+    }
+
+    @Test
+    public void bucketSuffixesAreRemovedFromPartitionNames()
+    {
+        assertEquals("mule.objectstore.p1#3", new String(RedisUtils.getPartitionHashKey(
+            RedisUtils.getBucketName("p1", 3), false)));
+        assertEquals("p1", RedisUtils.getPartitionName("mule.objectstore.p1#3", false, true));
+        assertEquals("p1", RedisUtils.getPartitionName("mule.objectstore.{p1#12}", true, true));
+        assertEquals("p#1", RedisUtils.getPartitionName("mule.objectstore.p##1#0", false, true));
+        assertEquals("p1#", RedisUtils.getPartitionName("mule.objectstore.p1#", false, true));
+        assertEquals("p1#x", RedisUtils.getPartitionName("mule.objectstore.p1#x", false, true));
+        assertEquals("p1#3", RedisUtils.getPartitionName("mule.objectstore.p1#3", false, false));
+    }
+
+    @Test
+    public void bucketNamesDontMergePartitionsWithSeparators()
+    {
+        assertEquals("orders##1#0", RedisUtils.getBucketName("orders#1", 0));
+
+        for (final String partitionName : Arrays.asList("orders", "orders#1", "orders#", "#", "a##b#2"))
+        {
+            final String bucketHashKey = new String(RedisUtils.getPartitionHashKey(
+                RedisUtils.getBucketName(partitionName, 1), false));
+            assertEquals(partitionName, RedisUtils.getPartitionName(bucketHashKey, false, true));
+        }
+    }
+
+    @Test
+    public void keysAreGroupedBySlot()
+    {
+        final RedisCluster cluster = new RedisCluster(Arrays.asList("localhost:7000"), new Config(), 2000, null, null);
+        final Map<Object, List<Integer>> indexesBySlot = RedisUtils.getIndexesByRoute(Arrays.asList("{a}1", "b",
+            "{a}2"), cluster);
+
+        assertEquals(2, indexesBySlot.size());
+        assertEquals(Arrays.asList(0, 2), indexesBySlot.get(RedisUtils.getSlot("a".getBytes())));
+        assertEquals(Arrays.asList(1), indexesBySlot.get(RedisUtils.getSlot("b".getBytes())));
+    }
+
+    @Test
+    public void valuesAreConvertedToBytes() throws Exception
+    {
+        final byte[] bytes = {1, 2, (byte) 0xFF};
+        assertSame(bytes, RedisUtils.toBytes((Object) bytes, "UTF-8"));
+        assertArrayEquals(SafeEncoder.encode("caf\u00e9"), RedisUtils.toBytes((Object) "caf\u00e9", "UTF-8"));
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, 2);
+        assertArrayEquals(new byte[]{2, (byte) 0xFF}, RedisUtils.toBytes(buffer, "UTF-8"));
+        assertEquals(1, buffer.position());
+
+        assertArrayEquals(bytes, RedisUtils.toBytes(new ByteArrayInputStream(bytes), "UTF-8"));
+        assertNull(RedisUtils.toBytes(new Object(), "UTF-8"));
+    }
+
+    @Test
+    public void streamsAreReadFully() throws Exception
+    {
+        final byte[] bytes = newBytes(20000);
+        assertArrayEquals(bytes, RedisUtils.toBytes(newTricklingStream(bytes), "UTF-8"));
+        assertArrayEquals(new byte[0], RedisUtils.toBytes(newTricklingStream(new byte[0]), "UTF-8"));
+    }
+
+    @Test
+    public void streamsAreReadInFullChunks() throws Exception
+    {
+        final byte[] bytes = newBytes(10);
+        final InputStream stream = newTricklingStream(bytes);
+        final byte[] chunk = new byte[4];
+
+        assertEquals(4, RedisUtils.readChunk(stream, chunk));
+        assertArrayEquals(Arrays.copyOfRange(bytes, 0, 4), chunk);
+        assertEquals(4, RedisUtils.readChunk(stream, chunk));
+        assertArrayEquals(Arrays.copyOfRange(bytes, 4, 8), chunk);
+        assertEquals(2, RedisUtils.readChunk(stream, chunk));
+        assertEquals(0, RedisUtils.readChunk(stream, chunk));
+    }
+
+    @Test
+    public void channelsAreSplitIntoLiteralsAndPatterns() throws Exception
+    {
+        final List<String> channels = Arrays.asList("news.sport.hockey", "news.art.*", "news.?", "news.[ab]",
+            "news\\.x");
+
+        final byte[][] literals = RedisUtils.getLiteralChannels(channels);
+        assertEquals(1, literals.length);
+        assertEquals("news.sport.hockey", SafeEncoder.encode(literals[0]));
+
+        final byte[][] patterns = RedisUtils.getPatterns(channels);
+        assertEquals(4, patterns.length);
+        assertEquals("news.art.*", SafeEncoder.encode(patterns[0]));
+        assertEquals("news\\.x", SafeEncoder.encode(patterns[3]));
+
+        // all the channels, whatever their kind
+        final byte[][] allChannels = RedisUtils.getPatternsFromChannels(channels);
+        assertEquals(5, allChannels.length);
+        assertEquals("news.sport.hockey", SafeEncoder.encode(allChannels[0]));
+    }
+
+    private static byte[] newBytes(final int length)
+    {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return a stream that reads at most 3 bytes at a time and can't tell how many are available.
+     */
+    private static InputStream newTricklingStream(final byte[] bytes)
+    {
+        return new ByteArrayInputStream(bytes)
+        {
+            @Override
+            public synchronized int read(final byte[] b, final int off, final int len)
+            {
+                return super.read(b, off, Math.min(len, 3));
+            }
+
+            @Override
+            public synchronized int available()
+            {
+                return 0;
+            }
+        };
+    }
+
+    private static JedisPool mockPool(Client clientMock)
+    {
+        Jedis jedisMock = mock(Jedis.class);
+        when(jedisMock.getClient()).thenReturn(clientMock);
+        JedisPool poolMock = mock(JedisPool.class);
+        when(poolMock.getResource()).thenReturn(jedisMock);
+        return poolMock;
+    }
+
+    /**
+     * Sends commands, or fails to if negative, and answers the expected number of replies.
+     */
+    private static class RepliesAction extends QueueableRedisAction<List<Object>>
+    {
+        private final int commands;
+        private final int expectedReplies;
+
+        private RepliesAction(int commands, int expectedReplies)
+        {
+            this.commands = commands;
+            this.expectedReplies = expectedReplies;
+        }
+
+        @Override
+        public int queue(BinaryClient client)
+        {
+            if (commands < 0)
+            {
+                throw new IllegalStateException("ups!");
+            }
+            return commands;
+        }
+
+        @Override
+        public List<Object> fromReplies(List<Object> replies)
+        {
+            return replies.subList(0, expectedReplies);
+        }
+    }
 }